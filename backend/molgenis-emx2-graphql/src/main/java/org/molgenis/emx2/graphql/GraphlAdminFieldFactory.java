@@ -21,7 +21,7 @@ public class GraphlAdminFieldFactory {
           .build();
 
   // retrieve user list, user count
-  public static GraphQLFieldDefinition queryAdminField(Database db) {
+  public static GraphQLFieldDefinition queryAdminField(Database database) {
     GraphQLOutputType adminType =
         GraphQLObjectType.newObject()
             .name("_AdminType")
@@ -38,7 +38,8 @@ public class GraphlAdminFieldFactory {
                     .type(Scalars.GraphQLInt)
                     .dataFetcher(
                         dataFetchingEnvironment -> {
-                          return db.countUsers();
+                          return GraphqlApiFactory.getDatabase(dataFetchingEnvironment, database)
+                              .countUsers();
                         })
                     .build())
             .build();
@@ -47,6 +48,7 @@ public class GraphlAdminFieldFactory {
         .name("_admin")
         .dataFetcher(
             dataFetchingEnvironment -> {
+              Database db = GraphqlApiFactory.getDatabase(dataFetchingEnvironment, database);
               Map<String, Object> result = new LinkedHashMap<>();
               int limit = 100;
               int offset = 0;
@@ -3,11 +3,17 @@ package org.molgenis.emx2.graphql;
 import static org.molgenis.emx2.ColumnType.REF;
 import static org.molgenis.emx2.sql.SqlDatabase.ADMIN;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.RawValue;
 import graphql.ExecutionResult;
 import graphql.GraphQL;
 import graphql.execution.AsyncExecutionStrategy;
+import graphql.schema.DataFetchingEnvironment;
 import graphql.schema.GraphQLObjectType;
 import graphql.schema.GraphQLSchema;
 import java.io.IOException;
@@ -19,6 +25,9 @@ import org.slf4j.LoggerFactory;
 
 public class GraphqlApiFactory {
   private static Logger logger = LoggerFactory.getLogger(GraphqlApiFactory.class);
+  // thread safe, so shared between requests
+  private static final ObjectReader mapReader = new ObjectMapper().readerFor(Map.class);
+  private static final JsonFactory jsonFactory = new JsonFactory();
 
   static Iterable<Row> convertToRows(TableMetadata metadata, List<Map<String, Object>> map) {
     List<Row> rows = new ArrayList<>();
@@ -101,16 +110,87 @@ public class GraphqlApiFactory {
     return JsonUtil.getWriter().writeValueAsString(toSpecificationResult);
   }
 
+  /** Also copies the json of top level table fields that was collected in the context, as is */
+  public static String convertExecutionResultToJson(
+      ExecutionResult executionResult, GraphqlExecutionContext context)
+      throws JsonProcessingException {
+    Map<String, Object> toSpecificationResult = executionResult.toSpecification();
+    Map<String, Object> data = (Map<String, Object>) toSpecificationResult.get("data");
+    if (data != null) {
+      Map<String, Object> splicedData = new LinkedHashMap<>();
+      for (Map.Entry<String, Object> entry : data.entrySet()) {
+        String json = context.getRawJson(entry.getKey());
+        splicedData.put(entry.getKey(), json != null ? new RawValue(json) : entry.getValue());
+      }
+      toSpecificationResult.put("data", splicedData);
+    }
+    return JsonUtil.getWriter().writeValueAsString(toSpecificationResult);
+  }
+
   /** bit unfortunate that we have to convert from json to map and back */
   static Object transform(String json) throws IOException {
     // benchmark shows this only takes a few ms so not a large performance issue
     if (json != null) {
-      return new ObjectMapper().readValue(json, Map.class);
+      return mapReader.readValue(json);
     } else {
       return null;
     }
   }
 
+  /** Returns the json of the value of a field of a json object, without parsing that value */
+  static String getFieldJson(String json, String field) throws IOException {
+    try (JsonParser parser = jsonFactory.createParser(json)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        return null;
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        boolean found = field.equals(parser.getCurrentName());
+        parser.nextToken();
+        int start = (int) parser.getTokenLocation().getCharOffset();
+        parser.skipChildren();
+        if (found) {
+          return json.substring(start, (int) parser.getCurrentLocation().getCharOffset());
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Schema to run a data fetcher against. This is the schema passed as execution context, so a
+   * graphql instance created for one session can be shared by sessions having the same roles.
+   * Without context the schema the instance was created for is used.
+   */
+  static Schema getSchema(DataFetchingEnvironment environment, Schema schema) {
+    Object context = environment.getContext();
+    if (context instanceof GraphqlExecutionContext
+        && ((GraphqlExecutionContext) context).getSchema() != null) {
+      return ((GraphqlExecutionContext) context).getSchema();
+    }
+    return context instanceof Schema ? (Schema) context : schema;
+  }
+
+  /** Database to run a data fetcher against, see {@link #getSchema} */
+  static Database getDatabase(DataFetchingEnvironment environment, Database database) {
+    Object context = environment.getContext();
+    if (context instanceof GraphqlExecutionContext) {
+      return ((GraphqlExecutionContext) context).getDatabase();
+    }
+    if (context instanceof Schema) {
+      return ((Schema) context).getDatabase();
+    }
+    return context instanceof Database ? (Database) context : database;
+  }
+
+  /** Table to run a data fetcher against, might be in another schema, see {@link #getSchema} */
+  static Table getTable(DataFetchingEnvironment environment, Table table) {
+    Schema schema = getSchema(environment, table.getSchema());
+    if (!schema.getName().equals(table.getSchema().getName())) {
+      schema = schema.getDatabase().getSchema(table.getSchema().getName());
+    }
+    return schema.getTable(table.getName());
+  }
+
   public GraphQL createGraphqlForDatabase(Database database) {
 
     GraphQLObjectType.Builder queryBuilder = GraphQLObjectType.newObject().name("Query");
@@ -33,6 +33,7 @@ public class GraphqlConstants {
   public static final String DETAIL = "detail";
   public static final String LIMIT = "limit";
   public static final String OFFSET = "offset";
+  public static final String AFTER = "after";
   public static final String SEARCH = "search";
   public static final String ORDERBY = "orderby";
   static final String COUNT = "count";
@@ -1,14 +1,22 @@
 package org.molgenis.emx2.graphql;
 
+import static org.molgenis.emx2.ColumnType.INT;
+import static org.molgenis.emx2.Constants.MOLGENIS_UPLOAD_THRESHOLD;
+
 import graphql.schema.*;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import javax.servlet.http.Part;
 import org.molgenis.emx2.BinaryFileWrapper;
+import org.molgenis.emx2.utils.EnvironmentProperty;
 
 public class GraphqlCustomTypes {
 
+  /** uploads larger than this are streamed into the database, smaller ones are read in memory */
+  public static final int UPLOAD_THRESHOLD =
+      (Integer) EnvironmentProperty.getParameter(MOLGENIS_UPLOAD_THRESHOLD, 1024 * 1024, INT);
+
   private GraphqlCustomTypes() {
     // hide constructor
   }
@@ -28,7 +36,15 @@ public class GraphqlCustomTypes {
 
                 @Override
                 public BinaryFileWrapper parseValue(Object input) {
-                  if (input instanceof Part) {
+                  if (input instanceof Part && ((Part) input).getSize() > UPLOAD_THRESHOLD) {
+                    // stream into database on insert; part is deleted when request completes
+                    Part part = (Part) input;
+                    return new BinaryFileWrapper(
+                        part.getContentType(),
+                        part.getSubmittedFileName(),
+                        part.getSize(),
+                        part::getInputStream);
+                  } else if (input instanceof Part) {
                     Part part = (Part) input;
                     try (InputStream is = part.getInputStream(); ) {
                       String contentType = part.getContentType();
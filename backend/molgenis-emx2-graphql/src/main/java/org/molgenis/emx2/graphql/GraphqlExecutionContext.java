@@ -0,0 +1,43 @@
+package org.molgenis.emx2.graphql;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.molgenis.emx2.Database;
+import org.molgenis.emx2.Schema;
+
+/**
+ * Context to execute graphql with. Holds the schema or database of the session, and collects the
+ * json that postgres produced for top level table fields. That json is copied into the response
+ * as is by {@link GraphqlApiFactory#convertExecutionResultToJson(graphql.ExecutionResult,
+ * GraphqlExecutionContext)}, instead of parsing it into maps and serializing those again.
+ */
+public class GraphqlExecutionContext {
+  private Schema schema;
+  private Database database;
+  private Map<String, String> rawJson = new ConcurrentHashMap<>();
+
+  public GraphqlExecutionContext(Schema schema) {
+    this.schema = schema;
+    this.database = schema.getDatabase();
+  }
+
+  public GraphqlExecutionContext(Database database) {
+    this.database = database;
+  }
+
+  public Schema getSchema() {
+    return schema;
+  }
+
+  public Database getDatabase() {
+    return database;
+  }
+
+  void putRawJson(String field, String json) {
+    rawJson.put(field, json);
+  }
+
+  String getRawJson(String field) {
+    return rawJson.get(field);
+  }
+}
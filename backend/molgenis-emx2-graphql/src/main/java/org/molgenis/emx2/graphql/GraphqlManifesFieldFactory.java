@@ -22,7 +22,9 @@ public class GraphqlManifesFieldFactory {
               Map<String, String> result = new HashMap<>();
               result.put(IMPLEMENTATION_VERSION, Version.getImplementationVersion());
               result.put(SPECIFICATION_VERSION, Version.getSpecificationVersion());
-              result.put(DATABASE_VERSION, db.getDatabaseVersion());
+              result.put(
+                  DATABASE_VERSION,
+                  GraphqlApiFactory.getDatabase(dataFetchingEnvironment, db).getDatabaseVersion());
               return result;
             })
         .type(
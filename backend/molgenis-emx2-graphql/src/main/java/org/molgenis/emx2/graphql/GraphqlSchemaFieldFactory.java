@@ -324,8 +324,9 @@ public class GraphqlSchemaFieldFactory {
     // hide constructor
   }
 
-  private static DataFetcher<?> queryFetcher(Schema schema) {
+  private static DataFetcher<?> queryFetcher(Schema aSchema) {
     return dataFetchingEnvironment -> {
+      Schema schema = GraphqlApiFactory.getSchema(dataFetchingEnvironment, aSchema);
 
       // add tables
       String json = JsonUtil.schemaToJson(schema.getMetadata());
@@ -350,8 +351,9 @@ public class GraphqlSchemaFieldFactory {
     };
   }
 
-  private static DataFetcher<?> dropFetcher(Schema schema) {
+  private static DataFetcher<?> dropFetcher(Schema aSchema) {
     return dataFetchingEnvironment -> {
+      Schema schema = GraphqlApiFactory.getSchema(dataFetchingEnvironment, aSchema);
       StringBuilder message = new StringBuilder();
       schema.tx(
           db -> {
@@ -436,7 +438,10 @@ public class GraphqlSchemaFieldFactory {
         .dataFetcher(
             dataFetchingEnvironment ->
                 // add settings
-                schema.getMetadata().getSettings().stream()
+                GraphqlApiFactory.getSchema(dataFetchingEnvironment, schema)
+                    .getMetadata()
+                    .getSettings()
+                    .stream()
                     .map(entry -> Map.of("key", entry.getKey(), VALUE, entry.getValue()))
                     .collect(Collectors.toList()));
   }
@@ -465,8 +470,9 @@ public class GraphqlSchemaFieldFactory {
         .build();
   }
 
-  private DataFetcher<?> changeFetcher(Schema schema) {
+  private DataFetcher<?> changeFetcher(Schema aSchema) {
     return dataFetchingEnvironment -> {
+      Schema schema = GraphqlApiFactory.getSchema(dataFetchingEnvironment, aSchema);
       schema.tx(
           db -> {
             try {
@@ -9,6 +9,8 @@ import static org.molgenis.emx2.graphql.GraphqlConstants.*;
 import static org.molgenis.emx2.sql.SqlQuery.*;
 
 import graphql.Scalars;
+import graphql.language.Field;
+import graphql.language.Selection;
 import graphql.schema.*;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -64,6 +66,11 @@ public class GraphqlTableFieldFactory {
                 .name(GraphqlConstants.OFFSET)
                 .type(Scalars.GraphQLInt)
                 .build())
+        .argument(
+            GraphQLArgument.newArgument()
+                .name(GraphqlConstants.AFTER)
+                .type(Scalars.GraphQLString)
+                .build())
         .argument(
             GraphQLArgument.newArgument()
                 .name(GraphqlConstants.ORDERBY)
@@ -178,6 +185,11 @@ public class GraphqlTableFieldFactory {
                           .name(GraphqlConstants.OFFSET)
                           .type(Scalars.GraphQLInt)
                           .build())
+                  .argument(
+                      GraphQLArgument.newArgument()
+                          .name(GraphqlConstants.AFTER)
+                          .type(Scalars.GraphQLString)
+                          .build())
                   .argument(
                       GraphQLArgument.newArgument()
                           .name(GraphqlConstants.ORDERBY)
@@ -194,6 +206,11 @@ public class GraphqlTableFieldFactory {
           throw new UnsupportedOperationException(
               "Not yet implemented type " + col.getColumnType());
       }
+    // to continue after this row, using the 'after' argument
+    tableBuilder.field(
+        GraphQLFieldDefinition.newFieldDefinition()
+            .name(Constants.CURSOR)
+            .type(Scalars.GraphQLString));
     return tableBuilder.build();
   }
 
@@ -297,6 +314,11 @@ public class GraphqlTableFieldFactory {
             GraphQLInputObjectField.newInputObjectField().name(col.getName()).type(orderByEnum));
       }
     }
+    // relevance when searching
+    orderByBuilder.field(
+        GraphQLInputObjectField.newInputObjectField()
+            .name(Constants.SEARCH_RANK)
+            .type(orderByEnum));
     return orderByBuilder.build();
   }
 
@@ -451,6 +473,9 @@ public class GraphqlTableFieldFactory {
           if (args.containsKey(GraphqlConstants.OFFSET)) {
             sc.setOffset((int) args.get(GraphqlConstants.OFFSET));
           }
+          if (args.containsKey(GraphqlConstants.AFTER)) {
+            sc.setAfter((String) args.get(GraphqlConstants.AFTER));
+          }
           if (args.containsKey(GraphqlConstants.ORDERBY)) {
             sc.setOrderBy((Map<String, Order>) args.get(GraphqlConstants.ORDERBY));
           }
@@ -462,7 +487,7 @@ public class GraphqlTableFieldFactory {
 
   private DataFetcher fetcherForTableQueryField(Table aTable) {
     return dataFetchingEnvironment -> {
-      Table table = aTable;
+      Table table = GraphqlApiFactory.getTable(dataFetchingEnvironment, aTable);
       Query q = table.query();
       String fieldName = dataFetchingEnvironment.getField().getName();
       if (fieldName.endsWith("_agg")) {
@@ -481,6 +506,9 @@ public class GraphqlTableFieldFactory {
       if (args.containsKey(GraphqlConstants.OFFSET)) {
         q.offset((int) args.get(GraphqlConstants.OFFSET));
       }
+      if (args.containsKey(GraphqlConstants.AFTER)) {
+        q.after((String) args.get(GraphqlConstants.AFTER));
+      }
       if (args.containsKey(GraphqlConstants.ORDERBY)) {
         q.orderBy((Map<String, Order>) args.get(GraphqlConstants.ORDERBY));
       }
@@ -490,13 +518,47 @@ public class GraphqlTableFieldFactory {
         q.search(search);
       }
 
-      Object result = transform(q.retrieveJSON());
+      String json = q.retrieveJSON();
+      Object context = dataFetchingEnvironment.getContext();
+      if (context instanceof GraphqlExecutionContext
+          && isRawJsonPossible(dataFetchingEnvironment)) {
+        // copied into the response as is, so graphql has nothing to resolve
+        ((GraphqlExecutionContext) context)
+            .putRawJson(
+                fieldName, json != null ? GraphqlApiFactory.getFieldJson(json, fieldName) : "null");
+        return null;
+      }
+      Object result = transform(json);
       // bit silly, we have to remove root field here. Some refactoring makes this look nicer
       if (result != null) return ((Map<String, Object>) result).get(fieldName);
       return null;
     };
   }
 
+  /**
+   * Json of postgres equals the graphql result only for top level fields that don't use aliases,
+   * fragments or __typename, because the json uses the column names of the selection.
+   */
+  private static boolean isRawJsonPossible(DataFetchingEnvironment dataFetchingEnvironment) {
+    return dataFetchingEnvironment.getExecutionStepInfo().getPath().getLevel() == 1
+        && dataFetchingEnvironment.getMergedField().getFields().size() == 1
+        && isPlainSelection(dataFetchingEnvironment.getField());
+  }
+
+  private static boolean isPlainSelection(Field field) {
+    if (field.getAlias() != null || field.getName().startsWith("__")) {
+      return false;
+    }
+    if (field.getSelectionSet() != null) {
+      for (Selection selection : field.getSelectionSet().getSelections()) {
+        if (!(selection instanceof Field) || !isPlainSelection((Field) selection)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
   private GraphQLFieldDefinition getMutationDefinition(Schema schema, MutationType type) {
     GraphQLFieldDefinition.Builder fieldBuilder =
         GraphQLFieldDefinition.newFieldDefinition()
@@ -547,8 +609,9 @@ public class GraphqlTableFieldFactory {
     return fieldBuilder.build();
   }
 
-  private DataFetcher fetcher(Schema schema, MutationType mutationType) {
+  private DataFetcher fetcher(Schema aSchema, MutationType mutationType) {
     return dataFetchingEnvironment -> {
+      Schema schema = GraphqlApiFactory.getSchema(dataFetchingEnvironment, aSchema);
       StringBuilder result = new StringBuilder();
       boolean any = false;
       for (String tableName : schema.getTableNames()) {
@@ -0,0 +1,67 @@
+package org.molgenis.emx2.graphql;
+
+import static org.molgenis.emx2.Column.column;
+import static org.molgenis.emx2.ColumnType.DECIMAL;
+import static org.molgenis.emx2.ColumnType.INT;
+import static org.molgenis.emx2.TableMetadata.table;
+import static org.molgenis.emx2.graphql.GraphqlApiFactory.convertExecutionResultToJson;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import graphql.ExecutionInput;
+import graphql.GraphQL;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import org.molgenis.emx2.Database;
+import org.molgenis.emx2.Row;
+import org.molgenis.emx2.Schema;
+import org.molgenis.emx2.sql.TestDatabaseFactory;
+import org.molgenis.emx2.utils.StopWatch;
+
+public class Benchmark {
+
+  public void testRawJsonVersusParsedJson() throws JsonProcessingException {
+    Database database = TestDatabaseFactory.getTestDatabase();
+    Schema schema = database.dropCreateSchema(Benchmark.class.getSimpleName());
+    int size = 10000;
+    int repeat = 20;
+
+    List<Row> rows = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      rows.add(new Row().set("id", i).set("name", "row" + i).set("value", i / 3.0));
+    }
+    schema
+        .create(
+            table("Rows")
+                .add(column("id").setType(INT).setPkey())
+                .add(column("name"))
+                .add(column("value").setType(DECIMAL)))
+        .copyIn(rows);
+    GraphQL graphql = new GraphqlApiFactory().createGraphqlForSchema(schema);
+    String query = "{Rows(limit:" + size + "){id,name,value}}";
+
+    for (int round = 0; round < 2; round++) {
+      // first round warms up
+      long allocated = allocatedBytes();
+      StopWatch.start("parsed json");
+      for (int i = 0; i < repeat; i++) {
+        convertExecutionResultToJson(graphql.execute(query));
+      }
+      StopWatch.print("parsed json, " + (allocatedBytes() - allocated) / repeat + " bytes", repeat);
+
+      allocated = allocatedBytes();
+      StopWatch.start("raw json");
+      for (int i = 0; i < repeat; i++) {
+        GraphqlExecutionContext context = new GraphqlExecutionContext(schema);
+        convertExecutionResultToJson(
+            graphql.execute(ExecutionInput.newExecutionInput(query).context(context)), context);
+      }
+      StopWatch.print("raw json, " + (allocatedBytes() - allocated) / repeat + " bytes", repeat);
+    }
+  }
+
+  private static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
@@ -2,18 +2,25 @@ package org.molgenis.emx2.graphql;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.molgenis.emx2.Column.column;
+import static org.molgenis.emx2.TableMetadata.table;
 import static org.molgenis.emx2.graphql.GraphqlApiFactory.convertExecutionResultToJson;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import graphql.ExecutionInput;
 import graphql.GraphQL;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import junit.framework.TestCase;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.molgenis.emx2.ColumnType;
+import org.molgenis.emx2.Constants;
 import org.molgenis.emx2.Database;
 import org.molgenis.emx2.MolgenisException;
+import org.molgenis.emx2.Row;
 import org.molgenis.emx2.Schema;
 import org.molgenis.emx2.examples.PetStoreExample;
 import org.molgenis.emx2.sql.TestDatabaseFactory;
@@ -300,7 +307,76 @@ public class TestGraphqSchemaFields {
     TestCase.assertEquals(5, execute("{_schema{tables{name}}}").at("/_schema/tables").size());
   }
 
+  @Test
+  public void testRawJsonEqualsParsedJson() throws IOException {
+    for (String query :
+        new String[] {
+          "{Pet{name,category{name},tags{name}}}",
+          "{Pet_agg{count},Tag{name}}",
+          "{Pet(filter:{name:{equals:\"pooky\"}}){name}}",
+          "{pets:Pet{name}}",
+          "{Pet{name,__typename}}"
+        }) {
+      GraphqlExecutionContext context = new GraphqlExecutionContext(database.getSchema(schemaName));
+      String raw =
+          convertExecutionResultToJson(
+              grapql.execute(ExecutionInput.newExecutionInput(query).context(context)), context);
+      assertEquals(
+          new ObjectMapper().readTree(convertExecutionResultToJson(grapql.execute(query))),
+          new ObjectMapper().readTree(raw));
+    }
+  }
+
+  @Test
+  public void testCursorPagination() throws IOException {
+    Schema schema = database.dropCreateSchema(schemaName + "Cursor");
+    schema.create(
+        table("Person")
+            .add(column("id").setType(ColumnType.INT).setPkey())
+            .add(column("nickname")));
+    schema
+        .getTable("Person")
+        .insert(
+            new Row().set("id", 1).set("nickname", "b"),
+            new Row().set("id", 2),
+            new Row().set("id", 3).set("nickname", "a"),
+            new Row().set("id", 4).set("nickname", "b"),
+            new Row().set("id", 5));
+    GraphQL graphql = new GraphqlApiFactory().createGraphqlForSchema(schema);
+
+    // nickname is null for 2 and 5, these come last ascending and first descending, ties on id
+    assertEquals(List.of(3, 1, 4, 2, 5), pageWithCursor(graphql, "nickname:ASC"));
+    assertEquals(List.of(2, 5, 1, 4, 3), pageWithCursor(graphql, "nickname:DESC"));
+    assertEquals(List.of(1, 2, 3, 4, 5), pageWithCursor(graphql, "id:ASC"));
+  }
+
+  private List<Integer> pageWithCursor(GraphQL graphql, String orderBy) throws IOException {
+    List<Integer> ids = new ArrayList<>();
+    String after = "";
+    JsonNode page;
+    do {
+      page =
+          execute(
+                  graphql,
+                  "{Person(limit:2,orderby:{" + orderBy + "}" + after + "){id,nickname,_cursor}}")
+              .at("/Person");
+      for (JsonNode row : page) {
+        ids.add(row.get("id").intValue());
+      }
+      if (page.size() > 0) {
+        // the cursor is passed back as is
+        String cursor = page.get(page.size() - 1).get(Constants.CURSOR).textValue();
+        after = ",after:" + new ObjectMapper().writeValueAsString(cursor);
+      }
+    } while (page.size() > 0);
+    return ids;
+  }
+
   private JsonNode execute(String query) throws IOException {
+    return execute(grapql, query);
+  }
+
+  private JsonNode execute(GraphQL grapql, String query) throws IOException {
     String result = convertExecutionResultToJson(grapql.execute(query));
     JsonNode node = new ObjectMapper().readTree(result);
     if (node.get("errors") != null) {
@@ -1,9 +1,11 @@
 package org.molgenis.emx2.graphql;
 
 import static org.molgenis.emx2.graphql.GraphqlApiFactory.convertExecutionResultToJson;
+import static org.molgenis.emx2.sql.SqlDatabase.ADMIN;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import graphql.ExecutionInput;
 import graphql.GraphQL;
 import java.io.IOException;
 import org.junit.Assert;
@@ -13,6 +15,7 @@ import org.molgenis.emx2.Database;
 import org.molgenis.emx2.MolgenisException;
 import org.molgenis.emx2.Schema;
 import org.molgenis.emx2.examples.CrossSchemaReferenceExample;
+import org.molgenis.emx2.sql.SqlDatabase;
 import org.molgenis.emx2.sql.TestDatabaseFactory;
 
 public class TestGraphqlCrossSchemaRefs {
@@ -49,8 +52,29 @@ public class TestGraphqlCrossSchemaRefs {
             .contains("Parent"));
   }
 
+  @Test
+  public void testExecuteWithOtherSessionAsContext() throws IOException {
+    // graphql can be shared between sessions, fetchers then use the schema passed as context
+    Database other = new SqlDatabase(TestDatabaseFactory.getDataSource(), false);
+    Schema context = other.getSchema(schemaName2);
+    Assert.assertEquals(
+        "parent1",
+        execute("{Child{name,parent{name}}}", context).at("/Child/0/parent/name").asText());
+
+    other.setActiveUser(ADMIN);
+    Assert.assertEquals(
+        ADMIN, execute("{_session{email}}", context).at("/_session/email").asText());
+    Assert.assertEquals("anonymous", execute("{_session{email}}").at("/_session/email").asText());
+  }
+
   private JsonNode execute(String query) throws IOException {
-    String result = convertExecutionResultToJson(graphql.execute(query));
+    return execute(query, null);
+  }
+
+  private JsonNode execute(String query, Schema context) throws IOException {
+    String result =
+        convertExecutionResultToJson(
+            graphql.execute(ExecutionInput.newExecutionInput(query).context(context)));
     JsonNode node = new ObjectMapper().readTree(result);
     if (node.get("errors") != null) {
       throw new MolgenisException(node.get("errors").get(0).get("message").asText(), "");
@@ -5,7 +5,28 @@ import org.molgenis.emx2.Schema;
 import org.molgenis.emx2.io.tablestore.TableStoreForCsvInZipFile;
 
 public class ImportCsvZipTask extends ImportSchemaTask {
+  private final TableStoreForCsvInZipFile store;
+
   public ImportCsvZipTask(Path zipFile, Schema schema) {
-    super("Import csv file", new TableStoreForCsvInZipFile(zipFile), schema);
+    this(new TableStoreForCsvInZipFile(zipFile), schema, false);
+  }
+
+  public ImportCsvZipTask(Path zipFile, Schema schema, boolean fastLoad) {
+    this(new TableStoreForCsvInZipFile(zipFile), schema, fastLoad);
+  }
+
+  private ImportCsvZipTask(TableStoreForCsvInZipFile store, Schema schema, boolean fastLoad) {
+    super("Import csv file", store, schema, fastLoad);
+    this.store = store;
+  }
+
+  @Override
+  public void run() {
+    try {
+      super.run();
+    } finally {
+      // the zip file is kept open while importing, so tables can be read in parallel
+      store.close();
+    }
   }
 }
@@ -2,10 +2,8 @@ package org.molgenis.emx2.io;
 
 import static org.molgenis.emx2.tasks.StepStatus.*;
 
-import java.util.Collection;
-import org.molgenis.emx2.MolgenisException;
-import org.molgenis.emx2.Schema;
-import org.molgenis.emx2.Table;
+import java.util.*;
+import org.molgenis.emx2.*;
 import org.molgenis.emx2.io.tablestore.TableStore;
 import org.molgenis.emx2.tasks.Step;
 import org.molgenis.emx2.tasks.Task;
@@ -13,66 +11,85 @@ import org.molgenis.emx2.tasks.Task;
 public class ImportSchemaTask extends Task {
   private TableStore store;
   private Schema schema;
+  private boolean fastLoad;
+  private int parallelism = 1;
+  private boolean validateFirst;
 
   public ImportSchemaTask(String description, TableStore store, Schema schema) {
     super(description);
     this.store = store;
     this.schema = schema;
+    this.setSchemaName(schema.getName());
+  }
+
+  public ImportSchemaTask(String description, TableStore store, Schema schema, boolean fastLoad) {
+    this(description, store, schema);
+    this.fastLoad = fastLoad;
   }
 
   public ImportSchemaTask(TableStore store, Schema schema) {
     super("Import from store");
     this.store = store;
     this.schema = schema;
+    this.setSchemaName(schema.getName());
+  }
+
+  /**
+   * Number of tables whose source is read at the same time. The import runs in one transaction, so
+   * a failed import leaves no metadata or rows behind. Rows are therefore written by one connection,
+   * one table after the other, while the sources of the next tables are already read and checked
+   * for duplicate keys on their own threads. Has no effect if validateFirst is set.
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new MolgenisException(
+          "Import failed: parallelism should be 1 or larger but was " + parallelism);
+    }
+    this.parallelism = parallelism;
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * If true each table is first validated as a dry run before any of its rows are written. This
+   * reads the source twice, otherwise reading, validation and loading are pipelined in one pass.
+   */
+  public void setValidateFirst(boolean validateFirst) {
+    this.validateFirst = validateFirst;
   }
 
   public void run() {
     this.start();
 
     try {
+      // one transaction, so a failed import doesn't leave part of the tables loaded
       schema.tx(
           s -> {
-            // import metadata, if any
-            Task metadataTask = new ImportMetadataTask(schema, store);
-            this.add(metadataTask);
-            metadataTask.run();
-
-            // in case of emx1
-            boolean skipped = true;
-            if (store.containsTable("attributes")) {
-
-            } else {
-
-              // create task for the import, including subtasks for each sheet
-              for (Table table : schema.getTablesSorted()) {
-                if (store.containsTable(table.getName())) {
-                  ImportTableTask importTableTask = new ImportTableTask(store, table);
-                  this.add(importTableTask);
-                  importTableTask.run();
-                  skipped = false;
-                }
-              }
-
-              // warn for unknown sheet names
-              Collection<String> tableNames = schema.getTableNames();
-              for (String sheet : store.tableNames()) {
-                if (!"molgenis".equals(sheet)
-                    && !"molgenis_settings".equals(sheet)
-                    && !"molgenis_members".equals(sheet)
-                    && !tableNames.contains(sheet)) {
-                  this.step(
-                          "Sheet with name '"
-                              + sheet
-                              + "' was skipped: no table with that name found")
-                      .skipped();
+            importMetadata();
+            List<String> tableNames = getTableNamesToImport();
+            // create task for the import, including subtasks for each sheet
+            List<ImportTableTask> tableTasks = new ArrayList<>();
+            for (String tableName : tableNames) {
+              ImportTableTask importTableTask =
+                  new ImportTableTask(store, schema.getTable(tableName), fastLoad, validateFirst);
+              this.add(importTableTask);
+              tableTasks.add(importTableTask);
+            }
+            try {
+              for (int i = 0; i < tableTasks.size(); i++) {
+                // read the next tables while this one is loaded
+                for (int next = i; next < Math.min(i + parallelism, tableTasks.size()); next++) {
+                  tableTasks.get(next).readAhead();
                 }
+                tableTasks.get(i).run();
               }
+            } finally {
+              // tables read ahead but not loaded because of an error
+              tableTasks.forEach(ImportTableTask::stopReading);
             }
-
-            // execute the import tasks
-            if (skipped) {
-              this.step("Import data skipped: No data sheet included").skipped();
-            }
+            warnForUnknownSheets(tableNames.isEmpty());
           });
     } catch (Exception e) {
       this.error(e.getMessage());
@@ -82,6 +99,47 @@ public class ImportSchemaTask extends Task {
     this.complete();
   }
 
+  private void importMetadata() {
+    // import metadata, if any
+    Task metadataTask = new ImportMetadataTask(schema, store);
+    this.add(metadataTask);
+    metadataTask.run();
+  }
+
+  /** returns names of tables that have a sheet in the store, sorted by dependency */
+  private List<String> getTableNamesToImport() {
+    List<String> result = new ArrayList<>();
+    // in case of emx1
+    if (!store.containsTable("attributes")) {
+      for (Table table : schema.getTablesSorted()) {
+        if (store.containsTable(table.getName())) {
+          result.add(table.getName());
+        }
+      }
+    }
+    return result;
+  }
+
+  private void warnForUnknownSheets(boolean skipped) {
+    if (!store.containsTable("attributes")) {
+      // warn for unknown sheet names
+      Collection<String> tableNames = schema.getTableNames();
+      for (String sheet : store.tableNames()) {
+        if (!"molgenis".equals(sheet)
+            && !"molgenis_settings".equals(sheet)
+            && !"molgenis_members".equals(sheet)
+            && !tableNames.contains(sheet)) {
+          this.step("Sheet with name '" + sheet + "' was skipped: no table with that name found")
+              .skipped();
+        }
+      }
+    }
+
+    if (skipped) {
+      this.step("Import data skipped: No data sheet included").skipped();
+    }
+  }
+
   private void rollback(Task task) {
     for (Step step : task.getSteps()) {
       if (step.getStatus().equals(COMPLETED)) {
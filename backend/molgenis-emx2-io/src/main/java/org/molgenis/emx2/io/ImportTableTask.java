@@ -1,8 +1,14 @@
 package org.molgenis.emx2.io;
 
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import org.jooq.Field;
+import org.molgenis.emx2.MolgenisException;
 import org.molgenis.emx2.Row;
 import org.molgenis.emx2.Table;
 import org.molgenis.emx2.TableMetadata;
@@ -11,29 +17,73 @@ import org.molgenis.emx2.io.tablestore.TableStore;
 import org.molgenis.emx2.tasks.Task;
 
 public class ImportTableTask extends Task {
+  static final int BATCH_SIZE = 1000;
+  // number of batches the reader may run ahead of the loader
+  static final int QUEUE_SIZE = 4;
   private Table table;
   private TableStore source;
+  private boolean fastLoad;
+  private boolean validateFirst;
+  // started by readAhead, so reading can start before the rows of this table are loaded
+  private PipelinedRowReader reader;
 
   public ImportTableTask(TableStore source, Table table) {
+    this(source, table, false);
+  }
+
+  /**
+   * @param fastLoad if true rows are bulk loaded using copyIn instead of save. Much faster for
+   *     large tables but only works for rows that don't yet exist in the table.
+   */
+  public ImportTableTask(TableStore source, Table table, boolean fastLoad) {
+    this(source, table, fastLoad, false);
+  }
+
+  /**
+   * @param validateFirst if true all rows are first validated as a dry run, before any row is
+   *     written, which means the source is read twice. Otherwise reading and key validation run on
+   *     a separate thread, pipelined with the loading, so the source is read only once.
+   */
+  public ImportTableTask(TableStore source, Table table, boolean fastLoad, boolean validateFirst) {
     super("Import table " + table.getName());
     this.table = table;
     this.source = source;
+    this.fastLoad = fastLoad;
+    this.validateFirst = validateFirst;
   }
 
   public void run() {
+    // one transaction, so rows saved before a duplicate key is found are rolled back; joins the
+    // transaction of the caller, if any
+    table.getSchema().tx(db -> load());
+  }
+
+  private void load() {
     this.start();
 
-    // validate column names, provide warning if some columns will be ignored
+    if (validateFirst) {
+      // validate column names, provide warning if some columns will be ignored
 
-    // validate uniqueness of the keys in the set
-    this.setDescription(
-        "Table " + table.getName() + ": Counting rows & checking that all key columns are unique");
-    source.processTable(table.getName(), new ValidatePkeyProcessor(table.getMetadata(), this));
+      // validate uniqueness of the keys in the set
+      this.setDescription(
+          "Table "
+              + table.getName()
+              + ": Counting rows & checking that all key columns are unique");
+      source.processTable(table.getName(), new ValidatePkeyProcessor(table.getMetadata(), this));
 
-    // execute the actual loading
-    this.setTotal(this.getIndex());
-    this.setDescription("Importing rows into " + table.getName());
-    source.processTable(table.getName(), new ImportRowProcesssor(table, this));
+      // execute the actual loading
+      this.setTotal(this.getIndex());
+      this.setDescription("Importing rows into " + table.getName());
+      source.processTable(table.getName(), getImportProcessor());
+    } else {
+      this.setDescription("Importing rows into " + table.getName());
+      readAhead();
+      try {
+        getImportProcessor().process(reader);
+      } finally {
+        stopReading();
+      }
+    }
 
     // done
     if (getIndex() > 0) {
@@ -43,6 +93,28 @@ public class ImportTableTask extends Task {
     }
   }
 
+  /**
+   * Starts reading the source on its own thread, before this task runs, e.g. while the previous
+   * table is loaded. No effect if validateFirst is set, or if reading already started.
+   */
+  void readAhead() {
+    if (!validateFirst && reader == null) {
+      reader = new PipelinedRowReader(source, table.getMetadata(), this);
+    }
+  }
+
+  /** stops reading the source, e.g. if this task will not run because an earlier table failed */
+  void stopReading() {
+    if (reader != null) {
+      reader.close();
+      reader = null;
+    }
+  }
+
+  private RowProcessor getImportProcessor() {
+    return fastLoad ? new CopyRowProcessor(table, this) : new ImportRowProcesssor(table, this);
+  }
+
   public static class ValidatePkeyProcessor implements RowProcessor {
 
     Set<String> duplicates = new HashSet<>();
@@ -78,6 +150,9 @@ public class ImportTableTask extends Task {
           keys.add(keyValue);
         }
         task.setIndex(task.getIndex());
+        if (keys.size() % BATCH_SIZE == 0) {
+          task.checkCancelled();
+        }
       }
       if (duplicates.size() > 0) {
         task.completeWithError(
@@ -105,7 +180,8 @@ public class ImportTableTask extends Task {
       while (iterator.hasNext()) {
         batch.add(iterator.next());
         index++;
-        if (batch.size() >= 1000) {
+        if (batch.size() >= BATCH_SIZE) {
+          task.checkCancelled();
           table.save(batch);
           task.setIndex(index);
           task.setDescription("Imported " + task.getIndex() + " rows into " + table.getName());
@@ -119,4 +195,275 @@ public class ImportTableTask extends Task {
       }
     }
   }
+
+  /** executes the import as one bulk copy, updating progress while rows are being streamed */
+  private static class CopyRowProcessor implements RowProcessor {
+    private final Table table;
+    private final Task task;
+
+    public CopyRowProcessor(Table table, Task task) {
+      this.table = table;
+      this.task = task;
+    }
+
+    @Override
+    public void process(Iterator<Row> iterator) {
+      task.setIndex(0);
+      AtomicInteger index = new AtomicInteger(0);
+      table.copyIn(
+          () ->
+              new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                  return iterator.hasNext();
+                }
+
+                @Override
+                public Row next() {
+                  Row row = iterator.next();
+                  if (index.incrementAndGet() % BATCH_SIZE == 0) {
+                    // aborts the copy, so the transaction is rolled back
+                    task.checkCancelled();
+                    task.setIndex(index.get());
+                    task.setDescription(
+                        "Imported " + task.getIndex() + " rows into " + table.getName());
+                  }
+                  return row;
+                }
+              });
+      task.setIndex(index.get());
+    }
+  }
+
+  /**
+   * Reads the source on its own thread and checks primary keys for duplicates while the calling
+   * thread loads the rows. Rows are handed over in batches via a bounded queue, so the reader never
+   * runs more than QUEUE_SIZE batches ahead. On duplicate keys no further rows are handed over, the
+   * remaining rows are only checked so all duplicates can be reported. The reader thread doesn't
+   * touch the task, duplicates and row count are reported to it by the consuming thread.
+   */
+  static class PipelinedRowReader implements Iterator<Row>, AutoCloseable {
+    private static final List<Row> END = new ArrayList<>();
+    private static final long POLL_MILLIS = 100;
+    private final BlockingQueue<List<Row>> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final AtomicReference<RuntimeException> error = new AtomicReference<>();
+    // written by the reader before it puts END, so complete when the consumer takes END
+    private final List<String> duplicateMessages = new ArrayList<>();
+    private final Set<String> duplicates = new LinkedHashSet<>();
+    // number of rows in the source, known once the reader read all of them
+    private volatile int total = -1;
+    private final TableMetadata metadata;
+    private final Task task;
+    private final Thread reader;
+    private Iterator<Row> current = Collections.emptyIterator();
+    private boolean totalReported = false;
+    private boolean done = false;
+
+    PipelinedRowReader(TableStore source, TableMetadata metadata, Task task) {
+      this.metadata = metadata;
+      this.task = task;
+      this.reader =
+          new Thread(
+              () -> {
+                try {
+                  source.processTable(metadata.getTableName(), this::read);
+                } catch (RuntimeException e) {
+                  error.set(e);
+                } finally {
+                  try {
+                    queue.put(END);
+                  } catch (InterruptedException e) {
+                    // closed by the consumer, so nobody is waiting for END
+                    Thread.currentThread().interrupt();
+                  }
+                }
+              },
+              "import-" + metadata.getTableName());
+      this.reader.start();
+    }
+
+    private void read(Iterator<Row> iterator) {
+      List<Field> keyFields = metadata.getPrimaryKeyFields();
+      String keyNames = keyFields.stream().map(Field::getName).collect(Collectors.joining(","));
+      KeyHashSet keys = new KeyHashSet();
+      List<Row> batch = new ArrayList<>();
+      int count = 0;
+      while (iterator.hasNext()) {
+        Row row = iterator.next();
+        count++;
+        if (!keyFields.isEmpty() && !keys.add(hashKey(row, keyFields))) {
+          String keyValue =
+              keyFields.stream()
+                  .map(f -> row.getString(f.getName()))
+                  .collect(Collectors.joining(","));
+          duplicateMessages.add("Found duplicate Key (" + keyNames + ")=(" + keyValue + ")");
+          duplicates.add(keyValue);
+        } else if (duplicates.isEmpty()) {
+          batch.add(row);
+          if (batch.size() >= BATCH_SIZE) {
+            put(batch);
+            batch = new ArrayList<>();
+          }
+        }
+      }
+      total = count;
+      if (!batch.isEmpty() && duplicates.isEmpty()) {
+        put(batch);
+      }
+    }
+
+    private void put(List<Row> batch) {
+      try {
+        queue.put(batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new MolgenisException("Import cancelled", e);
+      }
+    }
+
+    private List<Row> take() {
+      try {
+        List<Row> batch;
+        // polls, so cancel is noticed also while the reader checks the keys of remaining rows
+        while ((batch = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+          task.checkCancelled();
+        }
+        return batch;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new MolgenisException("Import cancelled", e);
+      }
+    }
+
+    private void reportTotal() {
+      if (!totalReported && total >= 0) {
+        totalReported = true;
+        task.setTotal(total);
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (!current.hasNext()) {
+        if (done) {
+          return false;
+        }
+        List<Row> batch = take();
+        reportTotal();
+        if (batch == END) {
+          done = true;
+          if (error.get() != null) {
+            throw error.get();
+          }
+          if (!duplicates.isEmpty()) {
+            duplicateMessages.forEach(message -> task.step(message).error());
+            task.completeWithError(
+                "Duplicate keys found in table " + metadata.getTableName() + ": " + duplicates);
+          }
+          return false;
+        }
+        current = batch.iterator();
+      }
+      return true;
+    }
+
+    @Override
+    public Row next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return current.next();
+    }
+
+    /** stops the reader in case the loading ended before all rows were read, e.g. on error */
+    @Override
+    public void close() {
+      reader.interrupt();
+      queue.clear();
+      try {
+        reader.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Hashes the typed key values into 128 bits, so e.g. '1' and '01' are the same integer key. The
+   * chance of two different keys colliding is negligible, also for tables of many millions of rows.
+   */
+  static long[] hashKey(Row row, List<Field> keyFields) {
+    long h1 = 0xcbf29ce484222325L;
+    long h2 = 0x9e3779b97f4a7c15L;
+    for (Field field : keyFields) {
+      Object value = row.get(field.getName(), field.getType());
+      if (value == null) {
+        h1 = (h1 ^ 0x10000) * 0x100000001b3L;
+        h2 = (h2 ^ 0x10000) * 0xff51afd7ed558ccdL;
+      } else {
+        String text =
+            value instanceof Object[] ? Arrays.deepToString((Object[]) value) : value.toString();
+        for (int i = 0; i < text.length(); i++) {
+          h1 = (h1 ^ text.charAt(i)) * 0x100000001b3L;
+          h2 = (h2 ^ text.charAt(i)) * 0xff51afd7ed558ccdL;
+        }
+        // length separates the values, so ('ab','c') differs from ('a','bc')
+        h1 = (h1 ^ (0x20000L + text.length())) * 0x100000001b3L;
+        h2 = (h2 ^ (0x20000L + text.length())) * 0xff51afd7ed558ccdL;
+      }
+    }
+    return new long[] {mix(h1), mix(h2)};
+  }
+
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /** open addressing set of 128 bit hashes, i.e. 16 bytes per key instead of a String per key */
+  static class KeyHashSet {
+    private long[] slots = new long[2 * 1024];
+    private int size = 0;
+
+    /** returns false if the hash was already in the set */
+    boolean add(long[] hash) {
+      long h1 = hash[0];
+      // all zero marks an empty slot
+      long h2 = h1 == 0 && hash[1] == 0 ? 1 : hash[1];
+      if (4 * (size + 1) > slots.length) {
+        grow();
+      }
+      int mask = slots.length / 2 - 1;
+      int i = (int) h1 & mask;
+      while (slots[2 * i] != 0 || slots[2 * i + 1] != 0) {
+        if (slots[2 * i] == h1 && slots[2 * i + 1] == h2) {
+          return false;
+        }
+        i = (i + 1) & mask;
+      }
+      slots[2 * i] = h1;
+      slots[2 * i + 1] = h2;
+      size++;
+      return true;
+    }
+
+    int size() {
+      return size;
+    }
+
+    private void grow() {
+      long[] old = slots;
+      slots = new long[old.length * 2];
+      size = 0;
+      for (int i = 0; i < old.length; i += 2) {
+        if (old[i] != 0 || old[i + 1] != 0) {
+          add(new long[] {old[i], old[i + 1]});
+        }
+      }
+    }
+  }
 }
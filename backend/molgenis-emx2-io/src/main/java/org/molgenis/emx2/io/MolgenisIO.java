@@ -5,7 +5,11 @@ import static org.molgenis.emx2.io.emx2.Emx2Members.outputRoles;
 import static org.molgenis.emx2.io.emx2.Emx2Settings.outputSettings;
 import static org.molgenis.emx2.io.emx2.Emx2Tables.outputTable;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import org.molgenis.emx2.MolgenisException;
 import org.molgenis.emx2.Schema;
 import org.molgenis.emx2.Table;
 import org.molgenis.emx2.io.emx1.Emx1;
@@ -39,12 +43,42 @@ public class MolgenisIO {
     outputAll(new TableStoreForCsvInZipFile(zipFile), schema);
   }
 
+  /** writes zip to 'outputStream' while querying, leaves 'outputStream' open */
+  public static void toZipStream(OutputStream outputStream, Schema schema) {
+    TableStoreForCsvInZipStream store = new TableStoreForCsvInZipStream(outputStream);
+    outputAll(store, schema);
+    // only on success, so failed downloads don't look like complete zip files
+    store.finish();
+  }
+
   public static void toExcelFile(Path excelFile, Schema schema) {
-    outputAll(new TableStoreForXlsxFile(excelFile), schema);
+    try (OutputStream outputStream = Files.newOutputStream(excelFile)) {
+      toExcelStream(outputStream, schema);
+    } catch (IOException ioe) {
+      throw new MolgenisException("Export failed", ioe);
+    }
+  }
+
+  /** writes all sheets into one workbook that is written to 'outputStream', leaves it open */
+  public static void toExcelStream(OutputStream outputStream, Schema schema) {
+    TableStoreForXlsxStream store = new TableStoreForXlsxStream(outputStream);
+    outputAll(store, schema);
+    store.finish();
   }
 
   public static void toEmx1ExcelFile(Path excelFile, Schema schema) {
-    executeEmx1Export(new TableStoreForXlsxFile(excelFile), schema);
+    try (OutputStream outputStream = Files.newOutputStream(excelFile)) {
+      toEmx1ExcelStream(outputStream, schema);
+    } catch (IOException ioe) {
+      throw new MolgenisException("Export failed", ioe);
+    }
+  }
+
+  /** writes emx1 workbook to 'outputStream', leaves it open */
+  public static void toEmx1ExcelStream(OutputStream outputStream, Schema schema) {
+    TableStoreForXlsxStream store = new TableStoreForXlsxStream(outputStream);
+    executeEmx1Export(store, schema);
+    store.finish();
   }
 
   private static void executeEmx1Export(TableStore store, Schema schema) {
@@ -61,8 +95,26 @@ public class MolgenisIO {
     outputTable(new TableStoreForCsvInZipFile(zipFile), table);
   }
 
+  /** writes zip to 'outputStream' while querying, leaves 'outputStream' open */
+  public static void toZipStream(OutputStream outputStream, Table table) {
+    TableStoreForCsvInZipStream store = new TableStoreForCsvInZipStream(outputStream);
+    outputTable(store, table);
+    store.finish();
+  }
+
   public static void toExcelFile(Path excelFile, Table table) {
-    outputTable(new TableStoreForXlsxFile(excelFile), table);
+    try (OutputStream outputStream = Files.newOutputStream(excelFile)) {
+      toExcelStream(outputStream, table);
+    } catch (IOException ioe) {
+      throw new MolgenisException("Export failed", ioe);
+    }
+  }
+
+  /** writes workbook to 'outputStream', leaves it open */
+  public static void toExcelStream(OutputStream outputStream, Table table) {
+    TableStoreForXlsxStream store = new TableStoreForXlsxStream(outputStream);
+    outputTable(store, table);
+    store.finish();
   }
 
   public static void toCsvFile(Path csvFile, Table table) {
@@ -77,6 +129,10 @@ public class MolgenisIO {
     new ImportCsvZipTask(zipFile, schema).run();
   }
 
+  public static void fromZipFile(Path zipFile, Schema schema, boolean fastLoad) {
+    new ImportCsvZipTask(zipFile, schema, fastLoad).run();
+  }
+
   public static void importFromExcelFile(Path excelFile, Schema schema) {
     new ImportExcelTask(excelFile, schema).run();
   }
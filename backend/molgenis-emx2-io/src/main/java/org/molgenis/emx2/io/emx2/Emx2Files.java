@@ -1,44 +1,41 @@
 package org.molgenis.emx2.io.emx2;
 
 import static org.molgenis.emx2.ColumnType.FILE;
-import static org.molgenis.emx2.FilterBean.f;
 import static org.molgenis.emx2.SelectColumn.s;
 
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.molgenis.emx2.Column;
-import org.molgenis.emx2.Operator;
 import org.molgenis.emx2.Row;
 import org.molgenis.emx2.Table;
-import org.molgenis.emx2.io.tablestore.TableStoreForCsvInZipFile;
+import org.molgenis.emx2.io.tablestore.TableStoreForCsvAndFiles;
 
 public class Emx2Files {
-  public static void outputFiles(TableStoreForCsvInZipFile store, Table table) {
-    for (Column c : table.getMetadata().getColumns()) {
-      if (c.getColumnType().equals(FILE)) {
-        // query the identifiers of this, and then retrieve (slow, but scalable) and write
-        List<Row> rows = table.select(s(c.getName())).retrieveRows();
-        for (Row r : rows) {
-          if (r.notNull(c.getName())) {
-
-            // get the files one by one
-            List<Row> fileRows =
-                table
-                    .select(s(c.getName(), s("id"), s("contents"), s("mimetype"), s("extension")))
-                    .where(f(c.getName(), Operator.EQUALS, r.getString(c.getName())))
-                    .retrieveRows();
-
-            // only one row
-            for (Row f : fileRows) {
-              store.writeFile(
-                  "_files/"
-                      + f.getString(c.getName())
-                      + "."
-                      + f.getString(c.getName() + "_extension"),
-                  f.getBinary(c.getName() + "_contents"));
+  public static void outputFiles(TableStoreForCsvAndFiles store, Table table) {
+    List<Column> fileColumns =
+        table.getMetadata().getColumns().stream()
+            .filter(c -> c.getColumnType().equals(FILE))
+            .collect(Collectors.toList());
+    if (fileColumns.isEmpty()) {
+      return;
+    }
+    store.writeFiles(
+        files -> {
+          for (Column c : fileColumns) {
+            // query the identifiers of this column, then stream the contents of each file
+            try (Stream<Row> rows =
+                table.select(s(c.getName(), s("id"), s("extension"))).retrieveRowStream()) {
+              rows.filter(r -> r.notNull(c.getName()))
+                  .forEach(
+                      r -> {
+                        String id = r.getString(c.getName());
+                        files.writeFile(
+                            "_files/" + id + "." + r.getString(c.getName() + "_extension"),
+                            out -> table.readFile(c.getName(), id, 0, Long.MAX_VALUE, out));
+                      });
             }
           }
-        }
-      }
-    }
+        });
   }
 }
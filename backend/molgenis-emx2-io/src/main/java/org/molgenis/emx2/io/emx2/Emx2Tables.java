@@ -1,13 +1,16 @@
 package org.molgenis.emx2.io.emx2;
 
+import static org.molgenis.emx2.ColumnType.CONSTANT;
 import static org.molgenis.emx2.Constants.MG_TABLECLASS;
 import static org.molgenis.emx2.FilterBean.f;
 import static org.molgenis.emx2.SelectColumn.s;
 
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.molgenis.emx2.*;
 import org.molgenis.emx2.io.tablestore.TableStore;
-import org.molgenis.emx2.io.tablestore.TableStoreForCsvInZipFile;
+import org.molgenis.emx2.io.tablestore.TableStoreForCsvAndFiles;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,35 +22,44 @@ public class Emx2Tables {
   }
 
   public static void outputTable(TableStore store, Table table) {
-    SelectColumn[] select =
-        table.getMetadata().getDownloadColumnNames().stream()
-            .map(c -> c.getName())
-            .filter(n -> !n.startsWith("mg_"))
-            .map(c -> s(c))
-            .toArray(SelectColumn[]::new);
-
+    SelectColumn[] select = getDownloadColumns(table);
+    Query query = table.select(select);
     if (table.getMetadata().getColumnNames().contains(MG_TABLECLASS)) {
-      store.writeTable(
-          table.getName(),
-          table
-              .query()
-              .select(select)
-              .where(
-                  f(
-                      MG_TABLECLASS,
-                      Operator.EQUALS,
-                      table.getSchema().getName() + "." + table.getName()))
-              .retrieveRows());
+      query.where(
+          f(MG_TABLECLASS, Operator.EQUALS, table.getSchema().getName() + "." + table.getName()));
+    }
+
+    // csv in zip can be streamed straight from the database
+    if (store instanceof TableStoreForCsvAndFiles) {
+      ((TableStoreForCsvAndFiles) store)
+          .writeCsv(table.getName(), outputStream -> query.retrieveCSV(outputStream, ','));
     } else {
-      store.writeTable(table.getName(), table.select(select).retrieveRows());
+      List<String> columnNames =
+          Arrays.stream(select).map(SelectColumn::getColumn).collect(Collectors.toList());
+      try (Stream<Row> rows = query.retrieveRowStream()) {
+        store.writeTable(table.getName(), columnNames, rows::iterator);
+      }
     }
 
     // in case of zip file we include the attached files
-    if (store instanceof TableStoreForCsvInZipFile) {
-      Emx2Files.outputFiles((TableStoreForCsvInZipFile) store, table);
+    if (store instanceof TableStoreForCsvAndFiles) {
+      Emx2Files.outputFiles((TableStoreForCsvAndFiles) store, table);
     }
   }
 
+  /**
+   * download columns, i.e. all columns with composite keys expanded, except mg_, refback and
+   * constant
+   */
+  public static SelectColumn[] getDownloadColumns(Table table) {
+    return table.getMetadata().getDownloadColumnNames().stream()
+        .filter(c -> !CONSTANT.equals(c.getColumnType()))
+        .map(c -> c.getName())
+        .filter(n -> !n.startsWith("mg_"))
+        .map(c -> s(c))
+        .toArray(SelectColumn[]::new);
+  }
+
   /** validates foreign keys against table */
   //  private static class ValidationProcessor implements RowProcessor {
   //    private final Table table;
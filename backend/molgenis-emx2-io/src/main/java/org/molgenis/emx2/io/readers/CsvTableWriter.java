@@ -15,15 +15,13 @@ public class CsvTableWriter {
 
   public static void write(Iterable<Row> rows, Writer writer, Character seperator)
       throws IOException {
+    write(rows, getColumnNames(rows), writer, seperator);
+  }
 
-    // get most extensive headers
-    Set<String> columnNames = new LinkedHashSet<>();
-    for (Row r : rows) {
-      columnNames.addAll(r.getColumnNames());
-    }
-    // we filter mg_ columns. TODO make option to choose
-    columnNames =
-        columnNames.stream().filter(name -> !name.startsWith("mg_")).collect(Collectors.toSet());
+  /** write rows using known column names, so rows are iterated only once */
+  public static void write(
+      Iterable<Row> rows, Collection<String> columnNames, Writer writer, Character seperator)
+      throws IOException {
 
     CsvWriter.CsvWriterDSL<Map> writerDsl =
         CsvWriter.from(Map.class).columns(columnNames.toArray(new String[columnNames.size()]));
@@ -38,4 +36,14 @@ public class CsvTableWriter {
       csvWriter.append(values);
     }
   }
+
+  /** get most extensive headers */
+  public static Collection<String> getColumnNames(Iterable<Row> rows) {
+    Set<String> columnNames = new LinkedHashSet<>();
+    for (Row r : rows) {
+      columnNames.addAll(r.getColumnNames());
+    }
+    // we filter mg_ columns. TODO make option to choose
+    return columnNames.stream().filter(name -> !name.startsWith("mg_")).collect(Collectors.toSet());
+  }
 }
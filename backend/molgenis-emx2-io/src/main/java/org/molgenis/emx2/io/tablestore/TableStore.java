@@ -7,6 +7,9 @@ public interface TableStore {
 
   void writeTable(String name, Iterable<Row> rows);
 
+  /** write rows with known column names, allows rows to be streamed because read only once */
+  void writeTable(String name, Collection<String> columnNames, Iterable<Row> rows);
+
   Iterable<Row> readTable(String name);
 
   void processTable(String name, RowProcessor processor);
@@ -0,0 +1,18 @@
+package org.molgenis.emx2.io.tablestore;
+
+import java.io.OutputStream;
+import java.util.function.Consumer;
+
+/** table store that can receive csv and attached files as streams, e.g. zip */
+public interface TableStoreForCsvAndFiles extends TableStore {
+
+  /** write csv contents for table 'name' directly, e.g. using Query.retrieveCSV */
+  void writeCsv(String name, Consumer<OutputStream> contents);
+
+  /** write files, e.g. '_files/id.ext', contents are streamed so don't have to fit in memory */
+  void writeFiles(Consumer<FileWriter> files);
+
+  interface FileWriter {
+    void writeFile(String filePath, Consumer<OutputStream> contents);
+  }
+}
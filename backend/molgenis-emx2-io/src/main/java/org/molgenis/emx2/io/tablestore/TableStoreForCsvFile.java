@@ -21,9 +21,14 @@ public class TableStoreForCsvFile implements TableStore {
 
   @Override
   public void writeTable(String name, Iterable<Row> rows) {
+    writeTable(name, CsvTableWriter.getColumnNames(rows), rows);
+  }
+
+  @Override
+  public void writeTable(String name, Collection<String> columnNames, Iterable<Row> rows) {
     try {
       Writer writer = Files.newBufferedWriter(csvFile);
-      CsvTableWriter.write(rows, writer, ',');
+      CsvTableWriter.write(rows, columnNames, writer, ',');
       writer.close();
     } catch (IOException ioe) {
       throw new MolgenisException("Export failed", ioe);
@@ -32,10 +32,15 @@ public class TableStoreForCsvFilesDirectory implements TableStore {
 
   @Override
   public void writeTable(String name, Iterable<Row> rows) {
+    writeTable(name, CsvTableWriter.getColumnNames(rows), rows);
+  }
+
+  @Override
+  public void writeTable(String name, Collection<String> columnNames, Iterable<Row> rows) {
     Path relativePath = directoryPath.resolve(name + CSV_EXTENSION);
     try {
       Writer writer = Files.newBufferedWriter(relativePath);
-      CsvTableWriter.write(rows, writer, separator);
+      CsvTableWriter.write(rows, columnNames, writer, separator);
       writer.close();
     } catch (IOException ioe) {
       throw new MolgenisException("Impoart failed", ioe);
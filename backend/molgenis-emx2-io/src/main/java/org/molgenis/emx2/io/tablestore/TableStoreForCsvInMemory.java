@@ -20,12 +20,17 @@ public class TableStoreForCsvInMemory implements TableStore {
 
   @Override
   public void writeTable(String name, Iterable<Row> rows) {
+    writeTable(name, CsvTableWriter.getColumnNames(rows), rows);
+  }
+
+  @Override
+  public void writeTable(String name, Collection<String> columnNames, Iterable<Row> rows) {
     try {
       Writer writer = new StringWriter();
       Writer bufferedWriter = new BufferedWriter(writer);
       String existing = "";
       if (store.containsKey(name)) existing = store.get(name);
-      CsvTableWriter.write(rows, bufferedWriter, separator);
+      CsvTableWriter.write(rows, columnNames, bufferedWriter, separator);
       bufferedWriter.close();
       store.put(name, existing + writer.toString());
     } catch (IOException ioe) {
@@ -7,8 +7,7 @@ import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.function.Consumer;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import org.molgenis.emx2.MolgenisException;
@@ -16,12 +15,15 @@ import org.molgenis.emx2.Row;
 import org.molgenis.emx2.io.readers.CsvTableReader;
 import org.molgenis.emx2.io.readers.CsvTableWriter;
 
-public class TableStoreForCsvInZipFile implements TableStore {
+public class TableStoreForCsvInZipFile implements TableStoreForCsvAndFiles {
   static final String CSV_EXTENSION = ".csv";
   static final String TSV_EXTENSION = ".tsv";
   private final Path zipFilePath;
   private static final Character comma = ',';
   private static final Character tab = '\t';
+  // opened once for reading, see getIndex
+  private ZipFile zipFile;
+  private Map<String, List<ZipEntry>> index;
 
   public TableStoreForCsvInZipFile(Path zipFilePath) {
     this.zipFilePath = zipFilePath;
@@ -40,40 +42,71 @@ public class TableStoreForCsvInZipFile implements TableStore {
   }
 
   private FileSystem open() throws IOException {
-    Map<String, String> env = new HashMap<>();
+    Map<String, Object> env = new HashMap<>();
     env.put("create", "false");
+    // buffer new entries on disk instead of in memory until the zip is closed
+    env.put("useTempFile", Boolean.TRUE);
     final URI zipUri = URI.create("jar:" + zipFilePath.toUri());
     return FileSystems.newFileSystem(zipUri, env, null);
   }
 
   public void writeFile(String filePath, byte[] contents) {
     if (contents != null && contents.length > 0) {
-      try (FileSystem zipfs = open()) {
-        // dir exist?
-        Path dir = zipfs.getPath("_files");
-        if (!Files.exists(dir)) {
-          Files.createDirectories(dir);
-        }
-        Path pathInZipfile = zipfs.getPath(filePath);
-        OutputStream out = Files.newOutputStream(pathInZipfile);
-        out.write(contents);
-        out.flush();
-        out.close();
-      } catch (IOException ioe) {
-        throw new MolgenisException("File export failed", ioe);
-      }
+      writeFiles(files -> files.writeFile(filePath, out -> write(out, contents)));
+    }
+  }
+
+  /** writes all files while opening the zip file only once, because each close rewrites the zip */
+  @Override
+  public void writeFiles(Consumer<FileWriter> files) {
+    close();
+    if (!Files.exists(zipFilePath)) {
+      create();
+    }
+    try (FileSystem zipfs = open()) {
+      files.accept(
+          (filePath, contents) -> {
+            try {
+              Path pathInZipfile = zipfs.getPath(filePath);
+              if (pathInZipfile.getParent() != null) {
+                Files.createDirectories(pathInZipfile.getParent());
+              }
+              try (OutputStream out =
+                  new BufferedOutputStream(Files.newOutputStream(pathInZipfile))) {
+                contents.accept(out);
+              }
+            } catch (IOException ioe) {
+              throw new MolgenisException("File export failed", ioe);
+            }
+          });
+    } catch (IOException ioe) {
+      throw new MolgenisException("File export failed", ioe);
+    }
+  }
+
+  private static void write(OutputStream out, byte[] contents) {
+    try {
+      out.write(contents);
+    } catch (IOException ioe) {
+      throw new MolgenisException("File export failed", ioe);
     }
   }
 
   @Override
   public void writeTable(String name, Iterable<Row> rows) {
+    writeTable(name, CsvTableWriter.getColumnNames(rows), rows);
+  }
+
+  @Override
+  public void writeTable(String name, Collection<String> columnNames, Iterable<Row> rows) {
+    close();
     if (!Files.exists(zipFilePath)) {
       create();
     }
     try (FileSystem zipfs = open()) {
       Path pathInZipfile = zipfs.getPath(File.separator + name + CSV_EXTENSION);
       Writer writer = Files.newBufferedWriter(pathInZipfile);
-      CsvTableWriter.write(rows, writer, comma);
+      CsvTableWriter.write(rows, columnNames, writer, comma);
       writer.close();
     } catch (IOException ioe) {
       throw new MolgenisException("Import failed", ioe);
@@ -81,20 +114,31 @@ public class TableStoreForCsvInZipFile implements TableStore {
   }
 
   @Override
-  public void processTable(String name, RowProcessor processor) {
-    try (ZipFile zf = new ZipFile(zipFilePath.toFile())) {
-      ZipEntry entry = getEntry(zf, name);
-      Reader reader = new BufferedReader(new InputStreamReader(zf.getInputStream(entry)));
-      if (entry != null && entry.getName().endsWith(CSV_EXTENSION)) {
-        processor.process(CsvTableReader.read(reader).iterator());
-      } else if (entry != null && entry.getName().endsWith(TSV_EXTENSION)) {
-        processor.process(CsvTableReader.read(reader).iterator());
-      } else {
-        throw new MolgenisException(
-            "Import failed: Table '"
-                + name
-                + "' has unsupported extension (should be .csv or .tsv)");
+  public void writeCsv(String name, Consumer<OutputStream> contents) {
+    close();
+    if (!Files.exists(zipFilePath)) {
+      create();
+    }
+    try (FileSystem zipfs = open()) {
+      Path pathInZipfile = zipfs.getPath(File.separator + name + CSV_EXTENSION);
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(pathInZipfile))) {
+        contents.accept(out);
       }
+    } catch (IOException ioe) {
+      throw new MolgenisException("Export failed", ioe);
+    }
+  }
+
+  @Override
+  public void processTable(String name, RowProcessor processor) {
+    ZipEntry entry = getEntry(name);
+    if (entry == null) {
+      throw new MolgenisException("Import failed: Table '" + name + "' not found in file. ");
+    }
+    // zip file is shared, so tables can be decompressed in parallel
+    try (Reader reader =
+        new BufferedReader(new InputStreamReader(getZipFile().getInputStream(entry)))) {
+      processor.process(CsvTableReader.read(reader).iterator());
     } catch (IOException e) {
       throw new MolgenisException("Import failed: Table '" + name + "' not found in file. ", e);
     }
@@ -102,73 +146,72 @@ public class TableStoreForCsvInZipFile implements TableStore {
 
   @Override
   public Iterable<Row> readTable(String name) {
-    try (ZipFile zf = new ZipFile(zipFilePath.toFile())) {
-      ZipEntry entry = getEntry(zf, name);
-      Reader reader = new BufferedReader(new InputStreamReader(zf.getInputStream(entry)));
-      if (entry != null && entry.getName().endsWith(CSV_EXTENSION)) {
-        return StreamSupport.stream(CsvTableReader.read(reader).spliterator(), false)
-            .collect(Collectors.toList());
-      } else if (entry != null && entry.getName().endsWith(TSV_EXTENSION)) {
-        return StreamSupport.stream(CsvTableReader.read(reader).spliterator(), false)
-            .collect(Collectors.toList());
-      } else {
-        throw new MolgenisException(
-            "Import failed: Table '"
-                + name
-                + "' has unsupported extension (should be .csv or .tsv)");
-      }
-    } catch (Exception e) {
-      throw new MolgenisException("Import failed: Table '" + name + "' not found in file. ", e);
-    }
+    List<Row> result = new ArrayList<>();
+    processTable(name, iterator -> iterator.forEachRemaining(result::add));
+    return result;
   }
 
   @Override
   public boolean containsTable(String name) {
-    try (ZipFile zf = new ZipFile(zipFilePath.toFile())) {
-      ZipEntry entry = getEntry(zf, name);
-      return entry != null;
-    } catch (IOException ioe) {
-      throw new MolgenisException("Import failed: ", ioe);
-    }
+    return getEntry(name) != null;
   }
 
   @Override
   public Collection<String> tableNames() {
-    List<String> result = new ArrayList<>();
-    try (ZipFile zf = new ZipFile(zipFilePath.toFile())) {
-      zf.stream()
+    return new ArrayList<>(getIndex().keySet());
+  }
+
+  /** closes the zip file opened for reading, it will be reopened when needed */
+  public synchronized void close() {
+    if (zipFile != null) {
+      try {
+        zipFile.close();
+      } catch (IOException ioe) {
+        throw new MolgenisException("Closing zip file failed", ioe);
+      }
+    }
+    zipFile = null;
+    index = null;
+  }
+
+  private synchronized ZipFile getZipFile() {
+    getIndex();
+    return zipFile;
+  }
+
+  /**
+   * table name to csv/tsv entries, build once instead of scanning all entries on each lookup. Names
+   * are without subfolder so files in a subfolder can be found.
+   */
+  private synchronized Map<String, List<ZipEntry>> getIndex() {
+    if (index == null) {
+      try {
+        zipFile = new ZipFile(zipFilePath.toFile());
+      } catch (IOException ioe) {
+        throw new MolgenisException("Import failed: ", ioe);
+      }
+      index = new LinkedHashMap<>();
+      zipFile.stream()
+          .filter(e -> e.getName().endsWith(CSV_EXTENSION) || e.getName().endsWith(TSV_EXTENSION))
           .forEach(
               e -> {
-                String name = e.getName();
-                if (name.toLowerCase().endsWith(".csv") || name.toLowerCase().endsWith(".tsv")) {
-                  name = name.substring(0, name.length() - 4);
-                }
-                result.add(name);
+                String name = e.getName().substring(e.getName().lastIndexOf('/') + 1);
+                name = name.substring(0, name.length() - CSV_EXTENSION.length());
+                index.computeIfAbsent(name, n -> new ArrayList<>()).add(e);
               });
-    } catch (IOException ioe) {
-      throw new MolgenisException("Import failed: ", ioe);
     }
-    return result;
+    return index;
   }
 
-  // magic function to allow file in subfolder
-  private ZipEntry getEntry(ZipFile zf, String name) {
-    List<ZipEntry> result =
-        zf.stream()
-            .filter(
-                e ->
-                    e.getName().equals(name + CSV_EXTENSION)
-                        || e.getName().endsWith(File.separator + name + CSV_EXTENSION)
-                        || e.getName().equals(name + TSV_EXTENSION)
-                        || e.getName().endsWith(File.separator + name + TSV_EXTENSION))
-            .collect(Collectors.toList());
+  private ZipEntry getEntry(String name) {
+    List<ZipEntry> result = getIndex().get(name);
+    if (result == null) {
+      return null;
+    }
     if (result.size() > 1) {
       throw new MolgenisException(
           "Import failed, contains multiple files of name " + name + " in different subfolders");
     }
-    if (result.size() == 1) {
-      return result.get(0);
-    }
-    return null;
+    return result.get(0);
   }
 }
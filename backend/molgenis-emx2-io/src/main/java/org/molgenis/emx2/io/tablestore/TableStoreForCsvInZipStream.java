@@ -0,0 +1,112 @@
+package org.molgenis.emx2.io.tablestore;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.molgenis.emx2.MolgenisException;
+import org.molgenis.emx2.Row;
+import org.molgenis.emx2.io.readers.CsvTableWriter;
+
+/**
+ * Write only table store that writes csv files and attached files as entries of a zip directly to
+ * an output stream, e.g. a http response, while they are being queried. Call finish when done.
+ */
+public class TableStoreForCsvInZipStream implements TableStoreForCsvAndFiles {
+  private static final Character comma = ',';
+  private final ZipOutputStream zip;
+  private final Set<String> entries = new HashSet<>();
+
+  public TableStoreForCsvInZipStream(OutputStream outputStream) {
+    this.zip = new ZipOutputStream(new BufferedOutputStream(outputStream));
+  }
+
+  @Override
+  public void writeTable(String name, Iterable<Row> rows) {
+    writeTable(name, CsvTableWriter.getColumnNames(rows), rows);
+  }
+
+  @Override
+  public void writeTable(String name, Collection<String> columnNames, Iterable<Row> rows) {
+    writeEntry(
+        name + TableStoreForCsvInZipFile.CSV_EXTENSION,
+        out -> {
+          try {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            CsvTableWriter.write(rows, columnNames, writer, comma);
+            writer.flush();
+          } catch (IOException ioe) {
+            throw new MolgenisException("Export failed", ioe);
+          }
+        });
+  }
+
+  @Override
+  public void writeCsv(String name, Consumer<OutputStream> contents) {
+    writeEntry(name + TableStoreForCsvInZipFile.CSV_EXTENSION, contents);
+  }
+
+  @Override
+  public void writeFiles(Consumer<FileWriter> files) {
+    files.accept(this::writeEntry);
+  }
+
+  private void writeEntry(String path, Consumer<OutputStream> contents) {
+    // same file can be attached to multiple rows, zip entries must be unique
+    if (!entries.add(path)) {
+      return;
+    }
+    try {
+      zip.putNextEntry(new ZipEntry(path));
+      contents.accept(
+          new FilterOutputStream(zip) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+              out.write(b, off, len);
+            }
+
+            @Override
+            public void close() {
+              // only the entry is done, zip stays open for next entries
+            }
+          });
+      zip.closeEntry();
+    } catch (IOException ioe) {
+      throw new MolgenisException("Export failed", ioe);
+    }
+  }
+
+  /** finishes the zip, without closing the underlying output stream */
+  public void finish() {
+    try {
+      zip.finish();
+      zip.flush();
+    } catch (IOException ioe) {
+      throw new MolgenisException("Export failed", ioe);
+    }
+  }
+
+  @Override
+  public Iterable<Row> readTable(String name) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void processTable(String name, RowProcessor processor) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean containsTable(String name) {
+    return entries.contains(name + TableStoreForCsvInZipFile.CSV_EXTENSION);
+  }
+
+  @Override
+  public Collection<String> tableNames() {
+    throw new UnsupportedOperationException();
+  }
+}
@@ -8,17 +8,24 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
 import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.molgenis.emx2.MolgenisException;
 import org.molgenis.emx2.Row;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Now caches all data. Might want to change to SAX parser for XLSX. */
+/**
+ * Reads sheets one at a time using a streaming reader, so large workbooks don't have to fit in
+ * memory. Sheet names are read from the workbook index without reading the sheets.
+ */
 public class TableStoreForXlsxFile implements TableStore {
   private Path excelFilePath;
-  private Map<String, List<Row>> cache;
+  private List<String> sheetNames;
   private static Logger logger = LoggerFactory.getLogger(TableStoreForXlsxFile.class);
 
   public TableStoreForXlsxFile(Path excelFilePath) {
@@ -27,14 +34,44 @@ public class TableStoreForXlsxFile implements TableStore {
 
   @Override
   public Collection<String> tableNames() {
-    if (this.cache == null) {
-      this.cache();
+    if (this.sheetNames == null) {
+      List<String> result = new ArrayList<>();
+      try {
+        OPCPackage pkg = OPCPackage.open(excelFilePath.toFile(), PackageAccess.READ);
+        try {
+          XSSFReader.SheetIterator sheets =
+              (XSSFReader.SheetIterator) new XSSFReader(pkg).getSheetsData();
+          while (sheets.hasNext()) {
+            // only opens the entry, sheet contents are not read
+            try (InputStream sheet = sheets.next()) {
+              result.add(sheets.getSheetName());
+            }
+          }
+        } finally {
+          // read only, so close without saving
+          pkg.revert();
+        }
+      } catch (IOException | OpenXML4JException e) {
+        throw new MolgenisException("Import failed: could not read sheet names", e);
+      }
+      this.sheetNames = result;
     }
-    return this.cache.keySet();
+    return this.sheetNames;
   }
 
   @Override
   public void writeTable(String name, Iterable<Row> rows) {
+    // get the row columns
+    Set<String> columnNames = new LinkedHashSet<>();
+    for (Row row : rows) {
+      columnNames.addAll(row.getColumnNames());
+    }
+    writeTable(name, columnNames, rows);
+  }
+
+  @Override
+  public void writeTable(String name, Collection<String> columnNames, Iterable<Row> rows) {
+    this.sheetNames = null;
     try {
       if (name.length() > 30)
         throw new IOException("Excel sheet name '" + name + "' is too long. Maximum 30 characters");
@@ -42,19 +79,18 @@ public class TableStoreForXlsxFile implements TableStore {
       if (!Files.exists(excelFilePath)) {
         try (FileOutputStream out = new FileOutputStream(excelFilePath.toFile());
             Workbook wb = new SXSSFWorkbook(100)) {
-          writeRowsToSheet(name, rows, wb);
+          writeRowsToSheet(name, columnNames, rows, wb);
           wb.write(out);
         }
       } else {
         Workbook wb;
         try (FileInputStream inputStream = new FileInputStream(excelFilePath.toFile())) {
           wb = WorkbookFactory.create(inputStream);
-          writeRowsToSheet(name, rows, wb);
+          writeRowsToSheet(name, columnNames, rows, wb);
         }
         try (FileOutputStream outputStream = new FileOutputStream(excelFilePath.toFile())) {
           wb.write(outputStream);
         } finally {
-          this.cache = null;
           wb.close();
         }
       }
@@ -63,13 +99,8 @@ public class TableStoreForXlsxFile implements TableStore {
     }
   }
 
-  private void writeRowsToSheet(String name, Iterable<Row> rows, Workbook wb) {
-
-    // get the row columns
-    Set<String> columnNames = new LinkedHashSet<>();
-    for (Row row : rows) {
-      columnNames.addAll(row.getColumnNames());
-    }
+  private void writeRowsToSheet(
+      String name, Collection<String> columnNames, Iterable<Row> rows, Workbook wb) {
 
     // create the sheet
     Sheet sheet = wb.createSheet(name);
@@ -101,70 +132,92 @@ public class TableStoreForXlsxFile implements TableStore {
     }
   }
 
-  private void cache() {
+  private static boolean notEmptyLine(Row row) {
+    for (String name : row.getColumnNames()) {
+      if (row.notNull(name)) return true;
+    }
+    return false;
+  }
+
+  @Override
+  public List<Row> readTable(String name) {
+    List<Row> result = new ArrayList<>();
+    processTable(name, iterator -> iterator.forEachRemaining(result::add));
+    return result;
+  }
+
+  @Override
+  public void processTable(String name, RowProcessor processor) {
+    if (!containsTable(name)) {
+      throw new MolgenisException(
+          "Import failed: Table with name " + name + " not found in Excel file");
+    }
     long start = System.currentTimeMillis();
+    // the streaming reader only parses the sheet that is iterated
     try (InputStream is = new FileInputStream(excelFilePath.toFile());
         Workbook workbook = StreamingReader.builder().rowCacheSize(100).bufferSize(4096).open(is)) {
-      this.cache = new LinkedHashMap<>();
-      for (Sheet sheet : workbook) {
-        String sheetName = sheet.getSheetName();
-        List<Row> result = new ArrayList<>();
-        Map<Integer, String> columnNames = null;
-        for (org.apache.poi.ss.usermodel.Row excelRow : sheet) {
-          // first non-empty row is column names
-          if (columnNames == null) {
-            columnNames = new LinkedHashMap<>();
-            for (Cell cell : excelRow) {
-              if (!BLANK.equals(cell.getCellType())) {
-                String value = cell.getStringCellValue();
-                if (value != null) {
-                  value = value.trim();
-                }
-                columnNames.put(cell.getColumnIndex(), value);
+      processor.process(new SheetIterator(name, workbook.getSheet(name).iterator()));
+    } catch (IOException ioe) {
+      throw new MolgenisException("Import failed", ioe);
+    }
+    if (logger.isInfoEnabled()) {
+      logger.info("Excel sheet {} processed in {}ms", name, (System.currentTimeMillis() - start));
+    }
+  }
+
+  /** converts excel rows while iterated, first row is column names and empty lines are skipped */
+  private class SheetIterator implements Iterator<Row> {
+    private final String sheetName;
+    private final Iterator<org.apache.poi.ss.usermodel.Row> excelRows;
+    private Map<Integer, String> columnNames;
+    private Row next;
+
+    SheetIterator(String sheetName, Iterator<org.apache.poi.ss.usermodel.Row> excelRows) {
+      this.sheetName = sheetName;
+      this.excelRows = excelRows;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (next == null && excelRows.hasNext()) {
+        org.apache.poi.ss.usermodel.Row excelRow = excelRows.next();
+        // first non-empty row is column names
+        if (columnNames == null) {
+          columnNames = new LinkedHashMap<>();
+          for (Cell cell : excelRow) {
+            if (!BLANK.equals(cell.getCellType())) {
+              String value = cell.getStringCellValue();
+              if (value != null) {
+                value = value.trim();
               }
+              columnNames.put(cell.getColumnIndex(), value);
             }
           }
-          // otherwise it is a normal row to be added to result
-          else {
+        }
+        // otherwise it is a normal row, unless an empty line
+        else {
+          try {
             Row row = convertRow(sheetName, columnNames, excelRow);
-            // ignore empty lines
             if (notEmptyLine(row)) {
-              result.add(row);
+              next = row;
             }
+          } catch (IOException ioe) {
+            throw new MolgenisException("Import failed", ioe);
           }
-          this.cache.put(sheetName, result);
         }
       }
-    } catch (IOException ioe) {
-      throw new MolgenisException("Import failed", ioe);
-    }
-    if (logger.isInfoEnabled()) {
-      logger.info("Excel file loaded into memory in {}ms", (System.currentTimeMillis() - start));
-    }
-  }
-
-  private static boolean notEmptyLine(Row row) {
-    for (String name : row.getColumnNames()) {
-      if (row.notNull(name)) return true;
+      return next != null;
     }
-    return false;
-  }
 
-  @Override
-  public List<Row> readTable(String name) {
-    if (this.cache == null) {
-      this.cache();
-    }
-    if (!this.cache.containsKey(name)) {
-      throw new MolgenisException(
-          "Import failed: Table with name " + name + " not found in Excel file");
+    @Override
+    public Row next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Row result = next;
+      next = null;
+      return result;
     }
-    return this.cache.get(name);
-  }
-
-  @Override
-  public void processTable(String name, RowProcessor processor) {
-    processor.process(readTable(name).iterator());
   }
 
   private Row convertRow(
@@ -219,9 +272,6 @@ public class TableStoreForXlsxFile implements TableStore {
 
   @Override
   public boolean containsTable(String name) {
-    if (this.cache == null) {
-      this.cache();
-    }
-    return this.cache.containsKey(name);
+    return tableNames().contains(name);
   }
 }
@@ -0,0 +1,104 @@
+package org.molgenis.emx2.io.tablestore;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.molgenis.emx2.MolgenisException;
+import org.molgenis.emx2.Row;
+import org.molgenis.emx2.io.readers.CsvTableWriter;
+
+/**
+ * Write only table store that writes all sheets into one streaming workbook, keeping only a window
+ * of rows in memory, and writes it to an output stream, e.g. a http response. Call finish when
+ * done.
+ */
+public class TableStoreForXlsxStream implements TableStore {
+  private static final int ROW_WINDOW = 100;
+  private final OutputStream outputStream;
+  private final SXSSFWorkbook workbook;
+
+  public TableStoreForXlsxStream(OutputStream outputStream) {
+    this.outputStream = outputStream;
+    this.workbook = new SXSSFWorkbook(ROW_WINDOW);
+    // rows flushed out of the window are kept in temp files until finish
+    this.workbook.setCompressTempFiles(true);
+  }
+
+  @Override
+  public void writeTable(String name, Iterable<Row> rows) {
+    writeTable(name, CsvTableWriter.getColumnNames(rows), rows);
+  }
+
+  @Override
+  public void writeTable(String name, Collection<String> columnNames, Iterable<Row> rows) {
+    if (name.length() > 30) {
+      throw new MolgenisException(
+          "Export failed: Excel sheet name '" + name + "' is too long. Maximum 30 characters");
+    }
+    Sheet sheet = workbook.createSheet(name);
+    List<String> columns = new ArrayList<>(columnNames);
+
+    // header is written also when there are no rows
+    org.apache.poi.ss.usermodel.Row header = sheet.createRow(0);
+    for (int i = 0; i < columns.size(); i++) {
+      header.createCell(i).setCellValue(columns.get(i));
+    }
+    int rowNum = 1;
+    for (Row row : rows) {
+      org.apache.poi.ss.usermodel.Row excelRow = sheet.createRow(rowNum++);
+      for (int i = 0; i < columns.size(); i++) {
+        setCellValue(excelRow.createCell(i), row, columns.get(i));
+      }
+    }
+  }
+
+  private static void setCellValue(Cell cell, Row row, String columnName) {
+    Object value = row.getValueMap().get(columnName);
+    if (value == null) {
+      return;
+    }
+    // decimals, longs and dates are written as text so they are read back without loss
+    if (value instanceof Integer) {
+      cell.setCellValue((Integer) value);
+    } else if (value instanceof Boolean) {
+      cell.setCellValue((Boolean) value);
+    } else {
+      cell.setCellValue(row.getString(columnName));
+    }
+  }
+
+  /** writes the workbook, without closing the underlying output stream */
+  public void finish() {
+    try {
+      workbook.write(outputStream);
+      outputStream.flush();
+    } catch (IOException ioe) {
+      throw new MolgenisException("Export failed", ioe);
+    } finally {
+      workbook.dispose();
+    }
+  }
+
+  @Override
+  public Iterable<Row> readTable(String name) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void processTable(String name, RowProcessor processor) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean containsTable(String name) {
+    return workbook.getSheet(name) != null;
+  }
+
+  @Override
+  public Collection<String> tableNames() {
+    throw new UnsupportedOperationException();
+  }
+}
@@ -0,0 +1,109 @@
+package org.molgenis.emx2.io;
+
+import static org.molgenis.emx2.Column.column;
+import static org.molgenis.emx2.ColumnType.REF_ARRAY;
+import static org.molgenis.emx2.TableMetadata.table;
+import static org.molgenis.emx2.sql.Constants.REF_ARRAY_CHECKS;
+import static org.molgenis.emx2.sql.Constants.REF_ARRAY_CHECKS_PER_STATEMENT;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.molgenis.emx2.Database;
+import org.molgenis.emx2.Row;
+import org.molgenis.emx2.Schema;
+import org.molgenis.emx2.Table;
+import org.molgenis.emx2.io.tablestore.TableStoreForCsvInMemory;
+import org.molgenis.emx2.io.tablestore.TableStoreForXlsxFile;
+import org.molgenis.emx2.sql.TestDatabaseFactory;
+import org.molgenis.emx2.utils.StopWatch;
+
+public class Benchmark {
+
+  public void testRefArrayChecksPerRowVersusPerStatement() {
+    Database database = TestDatabaseFactory.getTestDatabase();
+    int aSize = 1000;
+    int bSize = 100000;
+
+    TableStoreForCsvInMemory store = new TableStoreForCsvInMemory();
+    List<Row> aRows = new ArrayList<>();
+    for (int i = 0; i < aSize; i++) {
+      aRows.add(new Row().set("id", "a" + i));
+    }
+    store.writeTable("A", aRows);
+    List<Row> bRows = new ArrayList<>();
+    for (int i = 0; i < bSize; i++) {
+      bRows.add(
+          new Row()
+              .set("id", "b" + i)
+              .set("refs", "a" + i % aSize + ",a" + (i + 1) % aSize + ",a" + (i + 2) % aSize));
+    }
+    store.writeTable("B", bRows);
+
+    for (boolean perStatement : new boolean[] {false, true}) {
+      Schema schema =
+          database.dropCreateSchema(
+              Benchmark.class.getSimpleName() + (perStatement ? "PerStatement" : "PerRow"));
+      if (perStatement) {
+        schema.getMetadata().setSetting(REF_ARRAY_CHECKS, REF_ARRAY_CHECKS_PER_STATEMENT);
+      }
+      Table a = schema.create(table("A").add(column("id").setPkey()));
+      Table b =
+          schema.create(
+              table("B")
+                  .add(column("id").setPkey())
+                  .add(column("refs").setType(REF_ARRAY).setRefTable("A")));
+      schema.tx(db -> new ImportTableTask(store, a).run());
+
+      // includes commit, where deferred checks per row are executed
+      StopWatch.start("import ref_array checked " + (perStatement ? "per statement" : "per row"));
+      schema.tx(db -> new ImportTableTask(store, b).run());
+      StopWatch.print("imported ref_array", bSize);
+    }
+  }
+
+  public void testExcelImportUsesConstantMemory() throws IOException {
+    Database database = TestDatabaseFactory.getTestDatabase();
+    Path tmp = Files.createTempDirectory(null);
+    try {
+      for (int size : new int[] {100000, 1000000}) {
+        // write rows lazily, so writing doesn't need memory either
+        Path excelFile = tmp.resolve("rows" + size + ".xlsx");
+        Iterable<Row> rows =
+            () ->
+                IntStream.range(0, size)
+                    .mapToObj(i -> new Row().set("id", "row" + i).set("name", "name" + i))
+                    .iterator();
+        new TableStoreForXlsxFile(excelFile).writeTable("Rows", List.of("id", "name"), rows);
+
+        Schema schema =
+            database.dropCreateSchema(Benchmark.class.getSimpleName() + "Excel" + size);
+        Table table = schema.create(table("Rows").add(column("id").setPkey()).add(column("name")));
+
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+          pool.resetPeakUsage();
+        }
+        StopWatch.start("import excel with " + size + " rows");
+        new ImportTableTask(new TableStoreForXlsxFile(excelFile), table, true, false).run();
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+          if (pool.getType() == MemoryType.HEAP) {
+            peak += pool.getPeakUsage().getUsed();
+          }
+        }
+        StopWatch.print("imported excel, peak heap " + peak / (1024 * 1024) + "MB", size);
+      }
+    } finally {
+      Files.walk(tmp).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+  }
+}
@@ -1,7 +1,10 @@
 package org.molgenis.emx2.io;
 
+import static org.junit.Assert.assertEquals;
+
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Comparator;
@@ -66,6 +69,31 @@ public class TestImportExportEmx2MetadataIODataAndMetadata {
       StopWatch.print("import from zipfile complete");
       CompareTools.assertEquals(schema1.getMetadata(), schema4.getMetadata());
 
+      Schema schema5 = database.dropCreateSchema(getClass().getSimpleName() + "5");
+      MolgenisIO.fromZipFile(zipFile, schema5, true);
+      StopWatch.print("fast load import from zipfile complete");
+      CompareTools.assertEquals(schema1.getMetadata(), schema5.getMetadata());
+      for (String tableName : schema1.getTableNames()) {
+        assertEquals(
+            schema1.getTable(tableName).retrieveRows().size(),
+            schema5.getTable(tableName).retrieveRows().size());
+      }
+
+      Path streamedZipFile = tmp.resolve("streamed.zip");
+      try (OutputStream out = Files.newOutputStream(streamedZipFile)) {
+        MolgenisIO.toZipStream(out, schema1);
+      }
+      StopWatch.print("export to zip stream complete");
+      Schema schema6 = database.dropCreateSchema(getClass().getSimpleName() + "6");
+      MolgenisIO.fromZipFile(streamedZipFile, schema6);
+      StopWatch.print("import from streamed zip complete");
+      CompareTools.assertEquals(schema1.getMetadata(), schema6.getMetadata());
+      for (String tableName : schema1.getTableNames()) {
+        assertEquals(
+            schema1.getTable(tableName).retrieveRows().size(),
+            schema6.getTable(tableName).retrieveRows().size());
+      }
+
       StopWatch.print("schema comparison: all equal");
 
     } finally {
@@ -0,0 +1,83 @@
+package org.molgenis.emx2.io;
+
+import static org.junit.Assert.*;
+import static org.molgenis.emx2.Column.column;
+import static org.molgenis.emx2.ColumnType.INT;
+import static org.molgenis.emx2.FilterBean.f;
+import static org.molgenis.emx2.TableMetadata.table;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.molgenis.emx2.*;
+import org.molgenis.emx2.io.tablestore.TableStoreForCsvInMemory;
+import org.molgenis.emx2.sql.TestDatabaseFactory;
+
+public class TestImportTableTask {
+  static Schema schema;
+
+  @BeforeClass
+  public static void setup() {
+    Database database = TestDatabaseFactory.getTestDatabase();
+    schema = database.dropCreateSchema(TestImportTableTask.class.getSimpleName());
+    schema.create(table("Numbers", column("id").setType(INT).setPkey(), column("name")));
+  }
+
+  @Test
+  public void testKeyHash() {
+    TableMetadata numbers = schema.getTable("Numbers").getMetadata();
+    // typed, so '01' and '1' are the same key
+    assertArrayEquals(
+        ImportTableTask.hashKey(new Row("id", "01"), numbers.getPrimaryKeyFields()),
+        ImportTableTask.hashKey(new Row("id", "1"), numbers.getPrimaryKeyFields()));
+
+    ImportTableTask.KeyHashSet keys = new ImportTableTask.KeyHashSet();
+    for (int i = 0; i < 100000; i++) {
+      assertTrue(
+          keys.add(ImportTableTask.hashKey(new Row("id", i), numbers.getPrimaryKeyFields())));
+    }
+    assertFalse(keys.add(ImportTableTask.hashKey(new Row("id", 5), numbers.getPrimaryKeyFields())));
+    assertEquals(100000, keys.size());
+  }
+
+  @Test
+  public void testSinglePassImport() {
+    Table numbers = schema.getTable("Numbers");
+    TableStoreForCsvInMemory store = new TableStoreForCsvInMemory();
+    List<Row> rows = new ArrayList<>();
+    // more rows than fit in the queue, so reader has to wait for the loader
+    for (int i = 0; i < ImportTableTask.BATCH_SIZE * (ImportTableTask.QUEUE_SIZE + 3) + 1; i++) {
+      rows.add(new Row("id", i, "name", "number" + i));
+    }
+    store.writeTable(numbers.getName(), rows);
+
+    ImportTableTask loaded = new ImportTableTask(store, numbers);
+    schema.tx(db -> loaded.run());
+    assertEquals(rows.size(), numbers.retrieveRows().size());
+    assertEquals(rows.size(), (int) loaded.getTotal());
+
+    // duplicate in the last batch fails the whole import, also without surrounding transaction
+    List<Row> renamed = new ArrayList<>();
+    for (Row row : rows) {
+      renamed.add(new Row("id", row.getInteger("id"), "name", "renamed"));
+    }
+    renamed.add(new Row("id", 7, "name", "duplicate"));
+    TableStoreForCsvInMemory duplicates = new TableStoreForCsvInMemory();
+    duplicates.writeTable(numbers.getName(), renamed);
+    for (boolean validateFirst : new boolean[] {false, true}) {
+      ImportTableTask task = new ImportTableTask(duplicates, numbers, false, validateFirst);
+      try {
+        task.run();
+        fail("duplicate key should fail");
+      } catch (MolgenisException e) {
+        assertTrue(e.getMessage().contains("Duplicate keys found in table Numbers: [7]"));
+      }
+      assertTrue(
+          task.getSteps().get(0).getDescription().startsWith("Found duplicate Key (id)=(7)"));
+      assertEquals(
+          0,
+          numbers.query().where(f("name", Operator.EQUALS, "renamed")).retrieveRows().size());
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package org.molgenis.emx2.io;
+
+import static org.junit.Assert.*;
+import static org.molgenis.emx2.examples.PetStoreExample.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.molgenis.emx2.*;
+import org.molgenis.emx2.examples.PetStoreExample;
+import org.molgenis.emx2.io.emx2.Emx2Tables;
+import org.molgenis.emx2.io.tablestore.TableStoreForCsvInMemory;
+import org.molgenis.emx2.sql.TestDatabaseFactory;
+
+public class TestParallelImport {
+  static Database database;
+  static Schema petStore;
+
+  @BeforeClass
+  public static void setup() {
+    database = TestDatabaseFactory.getTestDatabase();
+    petStore = database.dropCreateSchema(TestParallelImport.class.getSimpleName());
+    PetStoreExample.create(petStore.getMetadata());
+    PetStoreExample.populate(petStore);
+  }
+
+  @Test
+  public void testParallelImport() throws IOException {
+    Path tmp = Files.createTempDirectory(null);
+    try {
+      Path zipFile = tmp.resolve("petstore.zip");
+      MolgenisIO.toZipFile(zipFile, petStore);
+
+      Schema schema = database.dropCreateSchema(getClass().getSimpleName() + "2");
+      ImportCsvZipTask task = new ImportCsvZipTask(zipFile, schema, false);
+      task.setParallelism(3);
+      task.run();
+
+      for (String tableName : petStore.getTableNames()) {
+        assertEquals(
+            petStore.getTable(tableName).retrieveRows().size(),
+            schema.getTable(tableName).retrieveRows().size());
+      }
+      // metadata plus one subtask per table
+      assertEquals(1 + petStore.getTableNames().size(), task.getSteps().size());
+    } finally {
+      Files.walk(tmp).sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Test
+  public void testFailedImportLeavesNoRows() {
+    for (int parallelism : List.of(1, 10)) {
+      // duplicate key, found while reading
+      TableStoreForCsvInMemory store = petStoreTablesExcept(TAG);
+      store.writeTable(TAG, List.of(new Row().set(NAME, "red"), new Row().set(NAME, "red")));
+      assertFailedImportLeavesNoRows(store, parallelism);
+
+      // unknown category, found by the foreign key check on commit
+      store = petStoreTablesExcept(CATEGORY);
+      store.writeTable(CATEGORY, List.of(new Row().set(NAME, "mouse")));
+      assertFailedImportLeavesNoRows(store, parallelism);
+    }
+  }
+
+  private static TableStoreForCsvInMemory petStoreTablesExcept(String except) {
+    TableStoreForCsvInMemory store = new TableStoreForCsvInMemory();
+    for (String tableName : List.of(CATEGORY, TAG, PET, ORDER, USER)) {
+      if (!tableName.equals(except)) {
+        Emx2Tables.outputTable(store, petStore.getTable(tableName));
+      }
+    }
+    return store;
+  }
+
+  private void assertFailedImportLeavesNoRows(TableStoreForCsvInMemory store, int parallelism) {
+    Schema schema = database.dropCreateSchema(getClass().getSimpleName() + "3");
+    PetStoreExample.create(schema.getMetadata());
+    ImportSchemaTask task = new ImportSchemaTask(store, schema);
+    task.setParallelism(parallelism);
+    try {
+      task.run();
+      fail("import should fail");
+    } catch (MolgenisException e) {
+      // correct
+    }
+    for (String tableName : List.of(CATEGORY, TAG, PET, ORDER, USER)) {
+      assertEquals("rows in " + tableName, 0, schema.getTable(tableName).retrieveRows().size());
+    }
+  }
+}
@@ -1,9 +1,13 @@
 package org.molgenis.emx2.io;
 
 import static junit.framework.TestCase.fail;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
@@ -11,7 +15,12 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 import org.junit.Test;
@@ -59,6 +68,55 @@ public class TestReadWriteStores {
           "TMP directory " + tmp + " not deleted. This should never happen.");
   }
 
+  @Test
+  public void testCsvZipStoreParallelRead() throws Exception {
+    Path tmp = Files.createTempDirectory(null);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      TableStoreForCsvInZipFile store = new TableStoreForCsvInZipFile(tmp.resolve("test.zip"));
+      int tableCount = 20;
+      for (int t = 0; t < tableCount; t++) {
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+          rows.add(new Row().setString("table", "table" + t).setInt("row", i));
+        }
+        store.writeTable("table" + t, rows);
+      }
+      store.writeFile("_files/abc.txt", "some file".getBytes());
+
+      // attached files are not tables
+      assertEquals(tableCount, store.tableNames().size());
+      assertTrue(store.containsTable("table3"));
+      assertFalse(store.containsTable("abc"));
+
+      List<Future<Integer>> counts = new ArrayList<>();
+      for (int t = 0; t < tableCount; t++) {
+        String name = "table" + t;
+        counts.add(
+            executor.submit(
+                () -> {
+                  AtomicInteger count = new AtomicInteger();
+                  store.processTable(
+                      name,
+                      iterator ->
+                          iterator.forEachRemaining(
+                              row -> {
+                                assertEquals(name, row.getString("table"));
+                                count.incrementAndGet();
+                              }));
+                  return count.get();
+                }));
+      }
+      for (Future<Integer> count : counts) {
+        assertEquals(1000, (int) count.get());
+      }
+      store.close();
+    } finally {
+      executor.shutdown();
+      Files.walk(tmp).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+  }
+
   @Test
   public void testExcelStore() throws IOException {
     Path tmp = Files.createTempDirectory(null);
@@ -77,6 +135,42 @@ public class TestReadWriteStores {
           "TMP directory " + tmp + " not deleted. This should never happen.");
   }
 
+  @Test
+  public void testExcelStreamStore() throws IOException {
+    Path tmp = Files.createTempDirectory(null);
+    try {
+      List<Row> rows = new ArrayList<>();
+      for (int i = 1; i <= 10; i++) {
+        rows.add(
+            new Row()
+                .setString("stringCol", "test" + i)
+                .setInt("intCol", i)
+                .setDecimal("decimalCol", i / 3.0)
+                .setBool("boolCol", i % 2 == 0)
+                .setDate("dateCol", LocalDate.of(2019, 12, i)));
+      }
+      Path excelFile = tmp.resolve("test.xlsx");
+      try (OutputStream out = Files.newOutputStream(excelFile)) {
+        TableStoreForXlsxStream store = new TableStoreForXlsxStream(out);
+        store.writeTable("test", rows);
+        store.writeTable("test2", List.of("stringCol", "intCol"), rows);
+        store.writeTable("empty", List.of("stringCol"), new ArrayList<>());
+        assertTrue(store.containsTable("test2"));
+        store.finish();
+      }
+
+      TableStoreForXlsxFile store = new TableStoreForXlsxFile(excelFile);
+      assertEquals(List.of("test", "test2", "empty"), store.tableNames());
+      CompareTools.assertEquals(rows, store.readTable("test"));
+      List<Row> rows2 = store.readTable("test2");
+      assertEquals(10, rows2.size());
+      assertEquals(Set.of("stringCol", "intCol"), rows2.get(0).getColumnNames());
+      assertEquals(0, store.readTable("empty").size());
+    } finally {
+      Files.walk(tmp).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+  }
+
   @Test
   public void testCsvStringStore() throws IOException, MolgenisException {
     executeTest(new TableStoreForCsvInMemory());
@@ -4,6 +4,7 @@ import static org.molgenis.emx2.tasks.StepStatus.*;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Objects;
 import org.molgenis.emx2.MolgenisException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,6 +25,8 @@ public class Step {
   private Integer total;
   private long start = System.currentTimeMillis();
   long end;
+  // task this step is part of, notified of changes
+  Task parent;
 
   public Step(String description) {
     this.description = description;
@@ -40,7 +43,16 @@ public class Step {
   }
 
   public void setIndex(Integer index) {
+    if (Objects.equals(this.index, index)) return;
     this.index = index;
+    changed();
+  }
+
+  /** notifies the tasks this step is part of, so they can push the progress */
+  void changed() {
+    if (parent != null) {
+      parent.changed();
+    }
   }
 
   public String getDescription() {
@@ -72,6 +84,7 @@ public class Step {
 
   public void setDescription(String description) {
     this.description = description;
+    changed();
   }
 
   public StepStatus getStatus() {
@@ -87,11 +100,13 @@ public class Step {
 
   public void setTotal(Integer total) {
     this.total = total;
+    changed();
   }
 
   public void start() {
     this.start = System.currentTimeMillis();
     this.status = RUNNING;
+    changed();
     this.logger.info(getDescription() + ": started");
   }
 
@@ -103,6 +118,7 @@ public class Step {
   public void complete() {
     this.status = COMPLETED;
     this.end = System.currentTimeMillis();
+    changed();
     this.logger.info(getDescription());
   }
 
@@ -110,6 +126,7 @@ public class Step {
     this.complete();
     this.setDescription(message);
     this.status = ERROR;
+    changed();
     logger.error(message);
     throw new MolgenisException(message);
   }
@@ -124,6 +141,7 @@ public class Step {
 
   public void setStatus(StepStatus status) {
     this.status = status;
+    changed();
   }
 
   public String toString() {
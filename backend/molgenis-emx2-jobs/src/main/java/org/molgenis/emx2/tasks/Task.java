@@ -3,13 +3,20 @@ package org.molgenis.emx2.tasks;
 import static org.molgenis.emx2.tasks.StepStatus.*;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
+import org.molgenis.emx2.MolgenisException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class Task extends Step implements Runnable, Iterable<Task> {
   private Logger logger = LoggerFactory.getLogger(getClass().getName());
-  private List<Step> steps = new ArrayList<>();
+  // steps are added by the thread running the task while others read them, e.g. to stream them
+  private List<Step> steps = new CopyOnWriteArrayList<>();
+  private String schemaName;
+  private volatile boolean cancelled = false;
+  // increased on each change of this task or its steps, guarded by 'this'
+  private long version = 0;
 
   public Task(String message) {
     super(message);
@@ -17,13 +24,13 @@ public class Task extends Step implements Runnable, Iterable<Task> {
 
   public Step step(String message) {
     Step step = new Step(message);
-    this.steps.add(step);
+    add(step);
     return step;
   }
 
   public Step step(String message, StepStatus status) {
     Step step = new Step(message, status);
-    this.steps.add(step);
+    add(step);
     return step;
   }
 
@@ -35,7 +42,56 @@ public class Task extends Step implements Runnable, Iterable<Task> {
   public void run() {}
 
   public void add(Step task) {
+    // so changes are seen by listeners of this task, and cancel also stops subtasks
+    task.parent = this;
     this.steps.add(task);
+    changed();
+  }
+
+  @Override
+  void changed() {
+    synchronized (this) {
+      version++;
+      notifyAll();
+    }
+    super.changed();
+  }
+
+  /**
+   * Waits at most 'millis' until this task or one of its steps changed after 'version'. Returns the
+   * version at return, to be passed to the next call.
+   */
+  public synchronized long awaitChange(long version, long millis) throws InterruptedException {
+    long until = System.currentTimeMillis() + millis;
+    while (this.version <= version && System.currentTimeMillis() < until) {
+      wait(Math.max(1, until - System.currentTimeMillis()));
+    }
+    return this.version;
+  }
+
+  /** schema this task works on, tasks of the same schema are run one after the other */
+  public String getSchemaName() {
+    return schemaName;
+  }
+
+  public void setSchemaName(String schemaName) {
+    this.schemaName = schemaName;
+  }
+
+  /** requests the task to stop; a running task stops when it next calls checkCancelled */
+  public void cancel() {
+    this.cancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return cancelled || (parent != null && parent.isCancelled());
+  }
+
+  /** to be called between units of work, throws if this task or its parent was cancelled */
+  public void checkCancelled() {
+    if (isCancelled()) {
+      throw new MolgenisException("Task cancelled: " + getDescription());
+    }
   }
 
   @Override
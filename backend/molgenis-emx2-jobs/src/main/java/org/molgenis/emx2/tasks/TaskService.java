@@ -1,5 +1,6 @@
 package org.molgenis.emx2.tasks;
 
+import java.util.Map;
 import java.util.Set;
 
 public interface TaskService {
@@ -9,6 +10,9 @@ public interface TaskService {
 
   Task getTask(String id);
 
+  /** all tasks by id, in order of submission */
+  Map<String, Task> getTasks();
+
   void removeOlderThan(long milliseconds);
 
   void shutdown();
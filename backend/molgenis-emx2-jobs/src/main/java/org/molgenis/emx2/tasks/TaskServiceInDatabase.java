@@ -0,0 +1,462 @@
+package org.molgenis.emx2.tasks;
+
+import static org.jooq.impl.DSL.*;
+import static org.molgenis.emx2.tasks.StepStatus.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.jooq.*;
+import org.jooq.Record;
+import org.jooq.exception.DataAccessException;
+import org.jooq.impl.DataSourceConnectionProvider;
+import org.molgenis.emx2.ColumnType;
+import org.molgenis.emx2.MolgenisException;
+import org.molgenis.emx2.utils.EnvironmentProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the state of tasks in a table, so it is shared by all servers on the same database and
+ * survives restarts. Tasks are run by a pool of workers that claim waiting tasks using 'FOR UPDATE
+ * SKIP LOCKED', oldest first, skipping schemas that already have a running task. A unique index on
+ * the schema of running tasks makes sure that servers claiming at the same time can't both start a
+ * task of the same schema. So tasks of a schema run one after the other, while one large import
+ * doesn't block the other schemas.
+ *
+ * <p>A task can only run on the server it was submitted to, because it refers to uploaded files
+ * and the session of that server. Servers update the progress of their tasks every second, which
+ * is also when cancel requests of other servers are picked up. Tasks whose server stopped updating
+ * are marked as interrupted.
+ */
+public class TaskServiceInDatabase implements TaskService {
+  public static final String MOLGENIS_TASK_WORKERS = "MOLGENIS_TASK_WORKERS";
+  static final long UPDATE_MILLIS = 1000;
+  static final long STALE_MILLIS = 60L * 1000;
+  private static final long KEEP_MILLIS = 24L * 60 * 60 * 1000;
+  private static final Logger logger = LoggerFactory.getLogger(TaskServiceInDatabase.class);
+
+  private static final Table<Record> TASKS = table(name("MOLGENIS", "tasks"));
+  private static final Field<String> ID = field(name("id"), String.class);
+  private static final Field<String> SERVER = field(name("server"), String.class);
+  private static final Field<String> SCHEMA = field(name("schema_name"), String.class);
+  private static final Field<String> DESCRIPTION = field(name("description"), String.class);
+  private static final Field<String> STATUS = field(name("status"), String.class);
+  private static final Field<JSONB> PROGRESS = field(name("progress"), JSONB.class);
+  private static final Field<Long> SUBMITTED = field(name("submitted"), Long.class);
+  private static final Field<Long> ENDED = field(name("ended"), Long.class);
+  private static final Field<Long> HEARTBEAT = field(name("heartbeat"), Long.class);
+  private static final Field<Boolean> CANCELLED = field(name("cancelled"), Boolean.class);
+  private static final List<String> ACTIVE = List.of(WAITING.name(), RUNNING.name());
+  private static final String UNIQUE_VIOLATION = "23505";
+
+  private final DSLContext jooq;
+  private final String server = UUID.randomUUID().toString();
+  // the tasks submitted to this server, also when done so their steps can be viewed
+  private final Map<String, Task> tasks = new ConcurrentHashMap<>();
+  private final ExecutorService workers;
+  private final ScheduledExecutorService updater;
+  private final Object signal = new Object();
+  private volatile boolean stopped = false;
+
+  public TaskServiceInDatabase(DataSource source) {
+    this(
+        source,
+        (Integer) EnvironmentProperty.getParameter(MOLGENIS_TASK_WORKERS, 2, ColumnType.INT));
+  }
+
+  public TaskServiceInDatabase(DataSource source, int noWorkers) {
+    if (noWorkers < 1) {
+      throw new MolgenisException(
+          "Task service failed: " + MOLGENIS_TASK_WORKERS + " should be 1 or larger");
+    }
+    // the pool is shared with sessions that switch role, so make sure we use the login role
+    this.jooq = using(new LoginRoleConnectionProvider(source), SQLDialect.POSTGRES);
+    createTable();
+    interruptStaleTasks();
+
+    this.workers = Executors.newFixedThreadPool(noWorkers, daemon("molgenis-task-worker"));
+    for (int i = 0; i < noWorkers; i++) {
+      workers.submit(this::work);
+    }
+    this.updater = Executors.newSingleThreadScheduledExecutor(daemon("molgenis-task-updater"));
+    updater.scheduleWithFixedDelay(
+        this::update, UPDATE_MILLIS, UPDATE_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  private void createTable() {
+    jooq.execute(
+        "CREATE TABLE IF NOT EXISTS {0} ({1} varchar PRIMARY KEY, {2} varchar NOT NULL, "
+            + "{3} varchar NOT NULL, {4} varchar, {5} varchar NOT NULL, {6} jsonb, "
+            + "{7} bigint NOT NULL, {8} bigint, {9} bigint NOT NULL, "
+            + "{10} boolean NOT NULL DEFAULT false)",
+        TASKS,
+        ID,
+        SERVER,
+        SCHEMA,
+        DESCRIPTION,
+        STATUS,
+        PROGRESS,
+        SUBMITTED,
+        ENDED,
+        HEARTBEAT,
+        CANCELLED);
+    jooq.execute(
+        "CREATE INDEX IF NOT EXISTS {0} ON {1} ({2}, {3})",
+        name("tasks_status_schema"),
+        TASKS,
+        STATUS,
+        SCHEMA);
+    jooq.execute(
+        "CREATE UNIQUE INDEX IF NOT EXISTS {0} ON {1} ({2}) WHERE {3} = {4}",
+        name("tasks_running_schema"),
+        TASKS,
+        SCHEMA,
+        STATUS,
+        inline(RUNNING.name()));
+  }
+
+  @Override
+  public String submit(Task task) {
+    String id = UUID.randomUUID().toString();
+    tasks.put(id, task);
+    long now = System.currentTimeMillis();
+    jooq.insertInto(TASKS)
+        .set(ID, id)
+        .set(SERVER, server)
+        // tasks without schema are queued together
+        .set(SCHEMA, task.getSchemaName() != null ? task.getSchemaName() : "")
+        .set(DESCRIPTION, task.getDescription())
+        .set(STATUS, WAITING.name())
+        .set(PROGRESS, JSONB.valueOf(task.toString()))
+        .set(SUBMITTED, now)
+        .set(HEARTBEAT, now)
+        .execute();
+    wakeUp();
+    return id;
+  }
+
+  private void work() {
+    while (!stopped) {
+      try {
+        String id = claim();
+        if (id != null) {
+          run(id);
+        } else {
+          synchronized (signal) {
+            // also polls, because other servers don't wake us up when a schema becomes free
+            signal.wait(UPDATE_MILLIS);
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        logger.error("task worker failed, will retry: {}", e.getMessage());
+        sleep();
+      }
+    }
+  }
+
+  /**
+   * Claims oldest waiting task of this server from a schema without running tasks. Returns null if
+   * there is none, or if another server just started a task of the same schema.
+   */
+  private synchronized String claim() {
+    // synchronized, so our own workers don't compete for the same schema
+    try {
+      return jooq.transactionResult(
+          config -> {
+            DSLContext tx = using(config);
+            Record record =
+                tx.fetchOne(
+                    "SELECT t.{0} FROM {1} t WHERE t.{2} = {3} AND t.{4} = {5} AND NOT EXISTS "
+                        + "(SELECT 1 FROM {1} r WHERE r.{6} = t.{6} AND r.{2} = {7}) "
+                        + "ORDER BY t.{8} LIMIT 1 FOR UPDATE OF t SKIP LOCKED",
+                    ID,
+                    TASKS,
+                    STATUS,
+                    inline(WAITING.name()),
+                    SERVER,
+                    val(server),
+                    SCHEMA,
+                    inline(RUNNING.name()),
+                    SUBMITTED);
+            if (record == null) {
+              return null;
+            }
+            String id = record.get(0, String.class);
+            // fails on the unique index if the schema got a running task meanwhile
+            tx.update(TASKS)
+                .set(STATUS, RUNNING.name())
+                .set(HEARTBEAT, System.currentTimeMillis())
+                .where(ID.eq(id))
+                .execute();
+            return id;
+          });
+    } catch (DataAccessException dae) {
+      if (UNIQUE_VIOLATION.equals(dae.sqlState())) {
+        // try again when that task is done
+        return null;
+      }
+      throw dae;
+    }
+  }
+
+  private void run(String id) {
+    Task task = tasks.get(id);
+    if (task == null) {
+      // removed while waiting
+      return;
+    }
+    try {
+      task.checkCancelled();
+      task.run();
+      if (WAITING.equals(task.getStatus()) || RUNNING.equals(task.getStatus())) {
+        task.complete();
+      }
+    } catch (Exception e) {
+      logger.error("task {} failed: {}", id, e.getMessage());
+      if (!ERROR.equals(task.getStatus())) {
+        task.error(e.getMessage());
+      }
+    }
+    try {
+      save(id, task);
+    } finally {
+      // the schema of this task is free now
+      wakeUp();
+    }
+  }
+
+  private void save(String id, Task task) {
+    jooq.update(TASKS)
+        .set(DESCRIPTION, task.getDescription())
+        .set(STATUS, task.getStatus().name())
+        .set(PROGRESS, JSONB.valueOf(task.toString()))
+        .set(HEARTBEAT, System.currentTimeMillis())
+        .set(ENDED, task.end != 0 ? task.end : null)
+        .where(ID.eq(id))
+        .execute();
+  }
+
+  /** saves progress of our tasks and picks up cancel requests, runs every UPDATE_MILLIS */
+  private void update() {
+    try {
+      List<String> ids = new ArrayList<>();
+      for (Map.Entry<String, Task> entry : tasks.entrySet()) {
+        if (RUNNING.equals(entry.getValue().getStatus())) {
+          save(entry.getKey(), entry.getValue());
+        }
+        if (entry.getValue().end == 0) {
+          ids.add(entry.getKey());
+        }
+      }
+      if (!ids.isEmpty()) {
+        // also tasks that are waiting or not yet started, so they are not seen as stale
+        jooq.update(TASKS)
+            .set(HEARTBEAT, System.currentTimeMillis())
+            .where(ID.in(ids).and(STATUS.in(ACTIVE)))
+            .execute();
+        for (String id :
+            jooq.select(ID).from(TASKS).where(ID.in(ids).and(CANCELLED.isTrue())).fetch(ID)) {
+          Task task = tasks.get(id);
+          if (task != null) {
+            task.cancel();
+          }
+        }
+      }
+      interruptStaleTasks();
+      removeOlderThan(KEEP_MILLIS);
+    } catch (Exception e) {
+      logger.error("update of tasks failed, will retry: {}", e.getMessage());
+    }
+  }
+
+  /** marks tasks of servers that stopped updating them as failed */
+  private void interruptStaleTasks() {
+    long now = System.currentTimeMillis();
+    jooq.update(TASKS)
+        .set(STATUS, ERROR.name())
+        .set(DESCRIPTION, concat(DESCRIPTION, inline(": interrupted because server stopped")))
+        .set(ENDED, now)
+        .where(STATUS.in(ACTIVE).and(HEARTBEAT.lt(now - STALE_MILLIS)))
+        .execute();
+  }
+
+  @Override
+  public Set<String> getJobIds() {
+    return new LinkedHashSet<>(jooq.select(ID).from(TASKS).orderBy(SUBMITTED).fetch(ID));
+  }
+
+  @Override
+  public Task getTask(String id) {
+    Task task = tasks.get(id);
+    if (task != null) {
+      return task;
+    }
+    // submitted to another server or before a restart, so we only know the saved state
+    Record record =
+        jooq.select(DESCRIPTION, STATUS, PROGRESS).from(TASKS).where(ID.eq(id)).fetchOne();
+    return record != null ? storedTask(record) : null;
+  }
+
+  @Override
+  public Map<String, Task> getTasks() {
+    Map<String, Task> result = new LinkedHashMap<>();
+    for (Record record :
+        jooq.select(ID, DESCRIPTION, STATUS, PROGRESS).from(TASKS).orderBy(SUBMITTED).fetch()) {
+      Task task = tasks.get(record.get(ID));
+      result.put(record.get(ID), task != null ? task : storedTask(record));
+    }
+    return result;
+  }
+
+  private static Task storedTask(Record record) {
+    return new StoredTask(
+        record.get(DESCRIPTION),
+        StepStatus.valueOf(record.get(STATUS)),
+        record.get(PROGRESS) != null ? record.get(PROGRESS).data() : null);
+  }
+
+  @Override
+  public void removeOlderThan(long milliseconds) {
+    long before = System.currentTimeMillis() - milliseconds;
+    jooq.deleteFrom(TASKS).where(ENDED.lt(before)).execute();
+    tasks.values().removeIf(task -> task.end != 0 && task.end < before);
+  }
+
+  @Override
+  public void shutdown() {
+    stopped = true;
+    updater.shutdownNow();
+    tasks.values().forEach(Task::cancel);
+    workers.shutdownNow();
+    try {
+      workers.awaitTermination(STALE_MILLIS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    // tasks that never started
+    jooq.update(TASKS)
+        .set(STATUS, ERROR.name())
+        .set(DESCRIPTION, concat(DESCRIPTION, inline(": cancelled because server stopped")))
+        .set(ENDED, System.currentTimeMillis())
+        .where(SERVER.eq(server).and(STATUS.eq(WAITING.name())))
+        .execute();
+  }
+
+  /** removes a task that is done, or cancels it if it is waiting or running */
+  @Override
+  public void removeTask(String id) {
+    if (id == null) return;
+    id = id.replaceAll("[\n|\r|\t]", "_"); // sanitize
+
+    Task task = getTask(id);
+    if (task == null) {
+      logger.info("skipped delete task {} because not found", id);
+      throw new MolgenisException("Task with id '" + id + "' not found");
+    }
+    // waiting tasks are cancelled right away, unless just claimed
+    int cancelled =
+        jooq.update(TASKS)
+            .set(STATUS, ERROR.name())
+            .set(DESCRIPTION, concat(DESCRIPTION, inline(": cancelled")))
+            .set(ENDED, System.currentTimeMillis())
+            .where(ID.eq(id).and(STATUS.eq(WAITING.name())))
+            .execute();
+    if (cancelled > 0) {
+      logger.info("cancelled waiting task {}", id);
+      tasks.remove(id);
+    } else if (RUNNING.equals(task.getStatus())) {
+      // the server running it picks this up on its next update
+      jooq.update(TASKS).set(CANCELLED, true).where(ID.eq(id)).execute();
+      task.cancel();
+      logger.info("requested cancel of running task {}", id);
+    } else {
+      jooq.deleteFrom(TASKS).where(ID.eq(id)).execute();
+      tasks.remove(id);
+      logger.info("deleted task {}", id);
+    }
+  }
+
+  @Override
+  public void clear() {
+    jooq.deleteFrom(TASKS).where(STATUS.notIn(ACTIVE)).execute();
+    tasks.values().removeIf(task -> task.end != 0);
+  }
+
+  private void wakeUp() {
+    synchronized (signal) {
+      signal.notifyAll();
+    }
+  }
+
+  private static ThreadFactory daemon(String name) {
+    return runnable -> {
+      Thread thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  private void sleep() {
+    try {
+      Thread.sleep(UPDATE_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Resets session authorization of connections, in case another user of the pool didn't */
+  private static class LoginRoleConnectionProvider extends DataSourceConnectionProvider {
+
+    LoginRoleConnectionProvider(DataSource source) {
+      super(source);
+    }
+
+    @Override
+    public Connection acquire() {
+      Connection connection = super.acquire();
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("RESET SESSION AUTHORIZATION");
+      } catch (SQLException e) {
+        super.release(connection);
+        throw new MolgenisException("Task service failed: could not reset role", e);
+      }
+      return connection;
+    }
+  }
+
+  /** saved state of a task that doesn't run on this server */
+  private static class StoredTask extends Task {
+    private final String description;
+    private final String progress;
+
+    StoredTask(String description, StepStatus status, String progress) {
+      super(description);
+      this.description = description;
+      this.status = status;
+      this.progress = progress;
+    }
+
+    @Override
+    public String getDescription() {
+      // saved description already includes the duration
+      return description;
+    }
+
+    @Override
+    public String toString() {
+      return progress != null ? progress : super.toString();
+    }
+  }
+}
@@ -44,6 +44,12 @@ public class TaskServiceInMemory implements TaskService {
     return tasks.get(id);
   }
 
+  @Override
+  public Map<String, Task> getTasks() {
+    removeOlderThan(24L * 60 * 60 * 1000);
+    return new LinkedHashMap<>(tasks);
+  }
+
   @Override
   public void removeOlderThan(long milliseconds) {
     Set<String> keys = tasks.keySet();
@@ -31,4 +31,48 @@ public class TestTask {
 
     taskService.shutdown();
   }
+
+  @Test
+  public void testAwaitChangeOfStep() throws InterruptedException {
+    Task task = new Task("parent");
+    Task subtask = new Task("subtask");
+    task.add(subtask);
+    Step step = subtask.step("step");
+    long version = task.awaitChange(0, 0);
+
+    // no change, so waits until timeout
+    Assert.assertEquals(version, task.awaitChange(version, 10));
+
+    Thread thread = new Thread(() -> step.setIndex(10));
+    thread.start();
+    Assert.assertTrue(task.awaitChange(version, 10000) > version);
+    thread.join();
+
+    // same value is not a change
+    version = task.awaitChange(version, 0);
+    step.setIndex(10);
+    Assert.assertEquals(version, task.awaitChange(version, 0));
+  }
+
+  @Test
+  public void testReadStepsWhileAdding() throws InterruptedException {
+    Task task = new Task("parent");
+    Thread thread =
+        new Thread(
+            () -> {
+              for (int i = 0; i < 10000; i++) {
+                task.step("step " + i).complete();
+              }
+            });
+    thread.start();
+    // e.g. the task api serializing the task while it runs
+    while (thread.isAlive()) {
+      Assert.assertNotNull(task.toString());
+      for (Step step : task.getSteps()) {
+        Assert.assertNotNull(step);
+      }
+    }
+    thread.join();
+    Assert.assertEquals(10000, task.getSteps().size());
+  }
 }
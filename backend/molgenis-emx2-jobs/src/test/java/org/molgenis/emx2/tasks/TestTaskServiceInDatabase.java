@@ -0,0 +1,196 @@
+package org.molgenis.emx2.tasks;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import javax.sql.DataSource;
+import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.jooq.exception.DataAccessException;
+import org.jooq.impl.DSL;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.molgenis.emx2.sql.TestDatabaseFactory;
+
+public class TestTaskServiceInDatabase {
+  private static DataSource dataSource;
+
+  @BeforeClass
+  public static void setup() {
+    // creates the MOLGENIS schema
+    TestDatabaseFactory.getTestDatabase();
+    dataSource = TestDatabaseFactory.getDataSource();
+  }
+
+  @Test
+  public void testRunAndViewFromOtherServer() throws InterruptedException {
+    TaskService taskService = new TaskServiceInDatabase(dataSource, 2);
+    TaskService otherServer = new TaskServiceInDatabase(dataSource, 1);
+    try {
+      String id = taskService.submit(new DummyTask());
+      assertTrue(otherServer.getJobIds().contains(id));
+
+      waitFor(taskService, id, StepStatus.COMPLETED);
+      // saved when done, so other servers see the end state
+      assertEquals(StepStatus.COMPLETED, otherServer.getTask(id).getStatus());
+      assertTrue(otherServer.getTask(id).toString().contains("task5"));
+
+      taskService.removeOlderThan(0);
+      assertFalse(otherServer.getJobIds().contains(id));
+      assertNull(taskService.getTask(id));
+    } finally {
+      taskService.shutdown();
+      otherServer.shutdown();
+    }
+  }
+
+  @Test
+  public void testSchemaDoesNotBlockOtherSchemas() throws InterruptedException {
+    TaskService taskService = new TaskServiceInDatabase(dataSource, 2);
+    CountDownLatch release = new CountDownLatch(1);
+    try {
+      String a1 = taskService.submit(new BlockingTask("a", release));
+      String a2 = taskService.submit(new BlockingTask("a", release));
+      String b1 = taskService.submit(new BlockingTask("b", new CountDownLatch(0)));
+
+      waitFor(taskService, a1, StepStatus.RUNNING);
+      waitFor(taskService, b1, StepStatus.COMPLETED);
+      // tasks of the same schema run one after the other, even if a worker is free
+      assertEquals(StepStatus.WAITING, taskService.getTask(a2).getStatus());
+
+      release.countDown();
+      waitFor(taskService, a2, StepStatus.COMPLETED);
+    } finally {
+      release.countDown();
+      taskService.shutdown();
+    }
+  }
+
+  @Test
+  public void testCancel() throws InterruptedException {
+    TaskService taskService = new TaskServiceInDatabase(dataSource, 1);
+    TaskService otherServer = new TaskServiceInDatabase(dataSource, 1);
+    CountDownLatch release = new CountDownLatch(1);
+    try {
+      String running = taskService.submit(new BlockingTask("c", release));
+      String waiting = taskService.submit(new BlockingTask("c", release));
+      waitFor(taskService, running, StepStatus.RUNNING);
+
+      // cancel of a waiting task is immediate
+      taskService.removeTask(waiting);
+      assertEquals(StepStatus.ERROR, taskService.getTask(waiting).getStatus());
+
+      // running task is cancelled via the database, when it next checks
+      otherServer.removeTask(running);
+      waitFor(taskService, running, StepStatus.ERROR);
+      assertTrue(taskService.getTask(running).getDescription().contains("cancelled"));
+    } finally {
+      release.countDown();
+      taskService.shutdown();
+      otherServer.shutdown();
+    }
+  }
+
+  @Test
+  public void testSchemaRunsOnOneServerAtATime() throws InterruptedException {
+    TaskService taskService = new TaskServiceInDatabase(dataSource, 2);
+    TaskService otherServer = new TaskServiceInDatabase(dataSource, 2);
+    CountDownLatch release = new CountDownLatch(1);
+    try {
+      String first = taskService.submit(new BlockingTask("d", release));
+      waitFor(taskService, first, StepStatus.RUNNING);
+      String second = otherServer.submit(new BlockingTask("d", release));
+      // other server polls at least twice meanwhile
+      Thread.sleep(3 * TaskServiceInDatabase.UPDATE_MILLIS);
+      assertEquals(StepStatus.WAITING, otherServer.getTask(second).getStatus());
+
+      release.countDown();
+      waitFor(otherServer, second, StepStatus.COMPLETED);
+    } finally {
+      release.countDown();
+      taskService.shutdown();
+      otherServer.shutdown();
+    }
+  }
+
+  @Test
+  public void testDatabaseAllowsOneRunningTaskPerSchema() {
+    TaskService taskService = new TaskServiceInDatabase(dataSource, 1);
+    taskService.shutdown();
+    DSLContext jooq = DSL.using(dataSource, SQLDialect.POSTGRES);
+    String schema = TestTaskServiceInDatabase.class.getSimpleName() + "e";
+    String insert =
+        "INSERT INTO \"MOLGENIS\".tasks (id, server, schema_name, status, submitted, heartbeat) "
+            + "VALUES ({0}, 'test', {1}, 'RUNNING', 0, {2})";
+    long now = System.currentTimeMillis();
+    try {
+      jooq.execute(insert, DSL.val(schema + "1"), DSL.val(schema), DSL.val(now));
+      // like two servers claiming a task of the same schema at the same time
+      jooq.execute(insert, DSL.val(schema + "2"), DSL.val(schema), DSL.val(now));
+      fail("second running task of a schema should fail");
+    } catch (DataAccessException e) {
+      assertEquals("23505", e.sqlState());
+    } finally {
+      jooq.execute("DELETE FROM \"MOLGENIS\".tasks WHERE schema_name = {0}", DSL.val(schema));
+    }
+  }
+
+  @Test
+  public void testGetTasks() throws InterruptedException {
+    TaskService taskService = new TaskServiceInDatabase(dataSource, 1);
+    TaskService otherServer = new TaskServiceInDatabase(dataSource, 1);
+    try {
+      String id = taskService.submit(new DummyTask());
+      // saved right after it completed
+      waitFor(otherServer, id, StepStatus.COMPLETED);
+      // one query for all tasks, also the ones of other servers
+      Map<String, Task> tasks = otherServer.getTasks();
+      assertEquals(StepStatus.COMPLETED, tasks.get(id).getStatus());
+      assertEquals(new ArrayList<>(otherServer.getJobIds()), new ArrayList<>(tasks.keySet()));
+
+      taskService.removeOlderThan(0);
+      assertFalse(otherServer.getTasks().containsKey(id));
+    } finally {
+      taskService.shutdown();
+      otherServer.shutdown();
+    }
+  }
+
+  private static void waitFor(TaskService taskService, String id, StepStatus status)
+      throws InterruptedException {
+    long timeout = System.currentTimeMillis() + 10000;
+    while (!status.equals(taskService.getTask(id).getStatus())) {
+      if (System.currentTimeMillis() > timeout) {
+        fail("task " + id + " did not get status " + status + ": " + taskService.getTask(id));
+      }
+      Thread.sleep(50);
+    }
+  }
+
+  /** runs until released, or cancelled */
+  private static class BlockingTask extends Task {
+    private final CountDownLatch release;
+
+    BlockingTask(String schemaName, CountDownLatch release) {
+      super("blocking task in " + schemaName);
+      this.setSchemaName(TestTaskServiceInDatabase.class.getSimpleName() + schemaName);
+      this.release = release;
+    }
+
+    @Override
+    public void run() {
+      start();
+      try {
+        while (release.getCount() > 0) {
+          checkCancelled();
+          Thread.sleep(10);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      complete();
+    }
+  }
+}
@@ -1,16 +1,20 @@
 package org.molgenis.emx2.semantics;
 
 import static org.molgenis.emx2.ColumnType.REF;
+import static org.molgenis.emx2.FilterBean.f;
 import static org.molgenis.emx2.SelectColumn.s;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.util.StdDateFormat;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.eclipse.rdf4j.model.Model;
 import org.eclipse.rdf4j.model.impl.LinkedHashModel;
 import org.eclipse.rdf4j.rio.RDFFormat;
@@ -25,6 +29,8 @@ public class LinkedDataService {
           .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
           .setDateFormat(new StdDateFormat().withColonInTimeZone(true));
 
+  private static final int BATCH_SIZE = 1000;
+
   private LinkedDataService() {
     // hidden
   }
@@ -50,41 +56,6 @@ public class LinkedDataService {
 
       String path = "http://localhost/" + table.getSchema().getName() + "/";
 
-      // define the selection
-      // in particular, for references we check if there are columns tagged with 'id'
-      // because then 'id' will be used as the @id of the reference, otherwise we will use primary
-      // key
-      Query q = table.query();
-      for (Column c : table.getMetadata().getColumns()) {
-        if (c.isReference()) {
-          // check ref columns for id
-          List<Column> refId =
-              c.getRefTable().getColumns().stream()
-                  .filter(
-                      r ->
-                          r.getSemantics() != null
-                              && Arrays.asList(r.getSemantics()).contains("id"))
-                  .collect(Collectors.toList());
-          // if no with id, we use primary key
-          if (refId.size() == 0) {
-            refId =
-                c.getRefTable().getColumns().stream()
-                    .filter(r -> r.getKey() == 1)
-                    .collect(Collectors.toList());
-          }
-          // check if only one
-          if (refId.size() > 1) {
-            throw new MolgenisException(
-                "Generation of jsonLd failed: more than one column marked with 'id' or primary key in table "
-                    + table.getName());
-          }
-          // add to select
-          q.select(s(c.getName(), s(refId.get(0).getName())));
-        } else {
-          q.select(s(c.getName()));
-        }
-      }
-
       // create the context
       Map<String, Object> context = new LinkedHashMap<>();
       context.put(table.getName(), path + table.getName());
@@ -107,77 +78,152 @@ public class LinkedDataService {
         }
       }
 
-      // we use the query here
-      String json = q.retrieveJSON();
-      Map<String, List<Map<String, Object>>> jsonMap = jsonMapper.readValue(json, Map.class);
-      List<Map<String, Object>> data = jsonMap.get(table.getName());
-
-      // enhance json
-      for (Map row : data) {
-        if (table.getMetadata().getSemantics() != null) {
-          List<String> type =
-              Arrays.stream(table.getMetadata().getSemantics()).collect(Collectors.toList());
-          if (type.size() > 1) {
-            row.put("@type", type);
-          } else if (type.size() == 1) {
-            row.put("@type", type.get(0));
-          }
-        }
-        for (Column c : table.getMetadata().getColumns()) {
-          // check id
-          if (c.getSemantics() != null && Arrays.asList(c.getSemantics()).contains("id")) {
-            row.put("@id", row.get(c.getName()));
-          }
-          // flatten references
-          if (c.isReference()) {
-            Column temp = null;
-            String prefixTemp = "";
-            for (Column r : c.getRefTable().getColumns()) {
-              if (r.getSemantics() != null && Arrays.asList(r.getSemantics()).contains("id")) {
-                temp = r;
-              }
-            }
-            if (temp == null) {
-              temp = c.getRefTable().getPrimaryKeyColumns().get(0);
-              prefixTemp = path + c.getRefTableName() + "/";
+      // write the json-ld for this table, streaming the data
+      JsonGenerator generator =
+          jsonMapper
+              .getFactory()
+              .createGenerator(writer)
+              .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+              .useDefaultPrettyPrinter();
+      generator.writeStartObject();
+      generator.writeObjectField("@context", context);
+      generator.writeStringField("@id", path + table.getName());
+      generator.writeArrayFieldStart(table.getName());
+
+      // stream the keys from a cursor and retrieve the json in batches of keys
+      String key = table.getMetadata().getPrimaryKeys().get(0);
+      if (table.getMetadata().getColumn(key).isReference()) {
+        // cannot filter on composite key, so retrieve in one go
+        writeJsonLdRows(table, path, query(table), generator);
+      } else {
+        try (Stream<Row> keys = table.select(s(key)).orderBy(key).retrieveRowStream()) {
+          List<String> batch = new ArrayList<>();
+          String previous = null;
+          Iterator<Row> iterator = keys.iterator();
+          while (iterator.hasNext()) {
+            String value = iterator.next().getString(key);
+            // composite keys can have same first key part, sorted so only need to check previous
+            if (!value.equals(previous)) {
+              batch.add(value);
+              previous = value;
             }
-            final Column ref = temp;
-            final String prefix = prefixTemp;
-            if (REF.equals(c.getColumnType())) {
-              row.put(c.getName(), ((Map<String, Object>) row.get(c.getName())).get(ref.getName()));
-            } else {
-              // list of maps
-              List<Map<String, Object>> listOfObjects =
-                  (List<Map<String, Object>>) row.get(c.getName());
-              if (listOfObjects != null) {
-                row.put(
-                    c.getName(),
-                    listOfObjects.stream()
-                        .map(o -> prefix + o.get(ref.getName()))
-                        .collect(Collectors.toList()));
-              } else {
-                row.put(c.getName(), null);
-              }
+            if (batch.size() == BATCH_SIZE || !iterator.hasNext()) {
+              Query q = query(table).where(f(key, Operator.EQUALS, batch.toArray())).orderBy(key);
+              writeJsonLdRows(table, path, q, generator);
+              batch.clear();
             }
           }
         }
-        // check if _molgenisid has been set via @id
-        if (row.get("@id") == null) {
-          row.put(
-              "@id",
-              path + table.getName() + "/" + row.get(table.getMetadata().getPrimaryKeys().get(0)));
+      }
+      generator.writeEndArray();
+      generator.writeEndObject();
+      generator.flush();
+    } catch (Exception e) {
+      throw new MolgenisException("jsonld export failed", e);
+    }
+  }
+
+  private static Query query(Table table) {
+    // define the selection
+    // in particular, for references we check if there are columns tagged with 'id'
+    // because then 'id' will be used as the @id of the reference, otherwise we will use primary
+    // key
+    Query q = table.query();
+    for (Column c : table.getMetadata().getColumns()) {
+      if (c.isReference()) {
+        // check ref columns for id
+        List<Column> refId =
+            c.getRefTable().getColumns().stream()
+                .filter(
+                    r -> r.getSemantics() != null && Arrays.asList(r.getSemantics()).contains("id"))
+                .collect(Collectors.toList());
+        // if no with id, we use primary key
+        if (refId.size() == 0) {
+          refId =
+              c.getRefTable().getColumns().stream()
+                  .filter(r -> r.getKey() == 1)
+                  .collect(Collectors.toList());
         }
+        // check if only one
+        if (refId.size() > 1) {
+          throw new MolgenisException(
+              "Generation of jsonLd failed: more than one column marked with 'id' or primary key in table "
+                  + table.getName());
+        }
+        // add to select
+        q.select(s(c.getName(), s(refId.get(0).getName())));
+      } else {
+        q.select(s(c.getName()));
       }
+    }
+    return q;
+  }
 
-      // assemble the json-ld for this table
-      Map<String, Object> result = new LinkedHashMap<>();
-      result.put("@context", context);
-      result.put("@id", path + table.getName());
-      result.put(table.getName(), data);
+  private static void writeJsonLdRows(Table table, String path, Query q, JsonGenerator generator)
+      throws IOException {
+    String json = q.retrieveJSON();
+    Map<String, List<Map<String, Object>>> jsonMap = jsonMapper.readValue(json, Map.class);
+    List<Map<String, Object>> data = jsonMap.get(table.getName());
+    if (data == null) {
+      return;
+    }
 
-      writer.append(jsonMapper.writerWithDefaultPrettyPrinter().writeValueAsString(result));
-    } catch (Exception e) {
-      throw new MolgenisException("jsonld export failed", e);
+    // enhance json
+    for (Map row : data) {
+      if (table.getMetadata().getSemantics() != null) {
+        List<String> type =
+            Arrays.stream(table.getMetadata().getSemantics()).collect(Collectors.toList());
+        if (type.size() > 1) {
+          row.put("@type", type);
+        } else if (type.size() == 1) {
+          row.put("@type", type.get(0));
+        }
+      }
+      for (Column c : table.getMetadata().getColumns()) {
+        // check id
+        if (c.getSemantics() != null && Arrays.asList(c.getSemantics()).contains("id")) {
+          row.put("@id", row.get(c.getName()));
+        }
+        // flatten references
+        if (c.isReference()) {
+          Column temp = null;
+          String prefixTemp = "";
+          for (Column r : c.getRefTable().getColumns()) {
+            if (r.getSemantics() != null && Arrays.asList(r.getSemantics()).contains("id")) {
+              temp = r;
+            }
+          }
+          if (temp == null) {
+            temp = c.getRefTable().getPrimaryKeyColumns().get(0);
+            prefixTemp = path + c.getRefTableName() + "/";
+          }
+          final Column ref = temp;
+          final String prefix = prefixTemp;
+          if (REF.equals(c.getColumnType())) {
+            row.put(c.getName(), ((Map<String, Object>) row.get(c.getName())).get(ref.getName()));
+          } else {
+            // list of maps
+            List<Map<String, Object>> listOfObjects =
+                (List<Map<String, Object>>) row.get(c.getName());
+            if (listOfObjects != null) {
+              row.put(
+                  c.getName(),
+                  listOfObjects.stream()
+                      .map(o -> prefix + o.get(ref.getName()))
+                      .collect(Collectors.toList()));
+            } else {
+              row.put(c.getName(), null);
+            }
+          }
+        }
+      }
+      // check if _molgenisid has been set via @id
+      if (row.get("@id") == null) {
+        row.put(
+            "@id",
+            path + table.getName() + "/" + row.get(table.getMetadata().getPrimaryKeys().get(0)));
+      }
+      generator.writeObject(row);
     }
   }
 
@@ -4,6 +4,9 @@ public class Constants {
   public static final String MG_EDIT_ROLE = "MG_EDIT_ROLE_";
   public static final String MG_ROLE_PREFIX = "MG_ROLE_";
   public static final String MG_USER_PREFIX = "MG_USER_";
+  // schema setting, if 'statement' ref_array references are checked per statement, not per row
+  public static final String REF_ARRAY_CHECKS = "refArrayChecks";
+  public static final String REF_ARRAY_CHECKS_PER_STATEMENT = "statement";
 
   private Constants() {
     // hide constructor
@@ -0,0 +1,216 @@
+package org.molgenis.emx2.sql;
+
+import com.zaxxer.hikari.HikariDataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.sql.DataSource;
+import org.molgenis.emx2.Setting;
+import org.molgenis.emx2.TableMetadata;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schema metadata shared between all SqlDatabase instances of a data source, so sessions don't each
+ * load it. An entry is valid for a version of the schema in MOLGENIS.schema_metadata, which a
+ * trigger increases on each metadata change. That trigger also notifies all servers, on which the
+ * SqlDatabase instances clear their own cache of that schema.
+ */
+class MetadataCache {
+  static final String CHANNEL = "molgenis_metadata";
+  private static final Logger logger = LoggerFactory.getLogger(MetadataCache.class);
+  private static final Map<DataSource, MetadataCache> caches = new WeakHashMap<>();
+  private static final int RECONNECT_MILLIS = 5000;
+
+  private final DataSource source;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  // databases to notify, weak because sessions come and go
+  private final Set<SqlDatabase> databases = Collections.newSetFromMap(new WeakHashMap<>());
+  private Thread listener;
+  // held by the listener, closed on stop to end a blocking wait for notifications
+  private volatile Connection listenConnection;
+
+  private MetadataCache(DataSource source) {
+    this.source = source;
+  }
+
+  static synchronized MetadataCache forDataSource(DataSource source) {
+    return caches.computeIfAbsent(source, MetadataCache::new);
+  }
+
+  synchronized void register(SqlDatabase database) {
+    databases.add(database);
+    if (listener == null) {
+      listener = new Thread(this::listen, "molgenis-metadata-listener");
+      listener.setDaemon(true);
+      listener.start();
+    }
+  }
+
+  /** Stops listening when no database of the data source is left */
+  synchronized void unregister(SqlDatabase database) {
+    databases.remove(database);
+    if (databases.isEmpty()) {
+      stop();
+    }
+  }
+
+  private synchronized void stop() {
+    if (listener != null) {
+      listener.interrupt();
+      listener = null;
+      closeQuietly(listenConnection);
+    }
+  }
+
+  private synchronized boolean isStopped() {
+    return listener != Thread.currentThread();
+  }
+
+  /** Returns metadata of schema, or null if it doesn't exist or is not visible for active user */
+  Entry load(SqlDatabase database, String schemaName) {
+    if (database.inTx()) {
+      // might not be committed, so don't share
+      return MetadataUtils.loadSchema(database.getJooq(), schemaName);
+    }
+    Entry entry = entries.get(schemaName);
+    if (entry != null) {
+      // also checks if active user can see the schema
+      Long version = MetadataUtils.loadSchemaVersion(database.getJooq(), schemaName);
+      if (version == null) {
+        return null;
+      }
+      if (version == entry.version) {
+        return entry;
+      }
+    }
+    Entry loaded = MetadataUtils.loadSchema(database.getJooq(), schemaName);
+    if (loaded != null) {
+      entries.merge(schemaName, loaded, (a, b) -> b.version >= a.version ? b : a);
+    }
+    return loaded;
+  }
+
+  private void listen() {
+    while (!isStopped()) {
+      try (Connection connection = openListenConnection()) {
+        listenConnection = connection;
+        if (isStopped()) {
+          return; // stopped while connecting
+        }
+        try (Statement statement = connection.createStatement()) {
+          statement.execute("LISTEN " + CHANNEL);
+        }
+        // changes might have been missed while not listening
+        clearAll();
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        while (!isStopped()) {
+          PGNotification[] notifications = pgConnection.getNotifications(RECONNECT_MILLIS);
+          if (notifications != null) {
+            for (PGNotification notification : notifications) {
+              schemaChanged(notification.getParameter());
+            }
+          }
+          // sessions are garbage collected without being closed
+          if (getDatabases().isEmpty() || isClosed(source)) {
+            stop();
+          }
+        }
+      } catch (SQLException e) {
+        if (isStopped()) {
+          return;
+        }
+        logger.warn("listening for metadata changes failed, will retry: {}", e.getMessage());
+        try {
+          Thread.sleep(RECONNECT_MILLIS);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      } finally {
+        listenConnection = null;
+      }
+    }
+  }
+
+  /**
+   * LISTEN holds its connection as long as the cache lives, so it is opened next to the pool if
+   * possible. Otherwise a pooled connection is used, reset to the login role.
+   */
+  private Connection openListenConnection() throws SQLException {
+    if (source instanceof HikariDataSource) {
+      HikariDataSource hikari = (HikariDataSource) source;
+      return DriverManager.getConnection(
+          hikari.getJdbcUrl(), hikari.getUsername(), hikari.getPassword());
+    }
+    Connection connection = source.getConnection();
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("RESET SESSION AUTHORIZATION");
+    }
+    SqlUserAwareConnectionProvider.forgetRole(connection);
+    return connection;
+  }
+
+  private static boolean isClosed(DataSource source) {
+    return source instanceof HikariDataSource && ((HikariDataSource) source).isClosed();
+  }
+
+  private static void closeQuietly(Connection connection) {
+    if (connection != null) {
+      try {
+        connection.close();
+      } catch (SQLException e) {
+        // already broken, nothing to release
+      }
+    }
+  }
+
+  private void schemaChanged(String schemaName) {
+    logger.debug("metadata of schema '{}' changed", schemaName);
+    entries.remove(schemaName);
+    for (SqlDatabase database : getDatabases()) {
+      database.clearCache(schemaName);
+    }
+  }
+
+  private void clearAll() {
+    entries.clear();
+    for (SqlDatabase database : getDatabases()) {
+      database.clearCache();
+    }
+  }
+
+  private synchronized List<SqlDatabase> getDatabases() {
+    return new ArrayList<>(databases);
+  }
+
+  static class Entry {
+    private final long version;
+    private final Collection<TableMetadata> tables;
+    private final List<Setting> settings;
+
+    Entry(long version, Collection<TableMetadata> tables, List<Setting> settings) {
+      this.version = version;
+      this.tables = tables;
+      this.settings = settings;
+    }
+
+    long getVersion() {
+      return version;
+    }
+
+    /** shared, so copy before use */
+    Collection<TableMetadata> getTables() {
+      return tables;
+    }
+
+    List<Setting> getSettings() {
+      return settings;
+    }
+  }
+}
@@ -17,6 +17,8 @@ public class MetadataUtils {
 
   private static final String MOLGENIS = "MOLGENIS";
   private static final String NOT_PROVIDED = "NOT_PROVIDED";
+  private static final String METADATA_CHANGED_FUNCTION = "\"" + MOLGENIS + "\".metadata_changed";
+  private static final String METADATA_CHANGED_TRIGGER = "metadata_changed";
   // tables
   private static final org.jooq.Table VERSION_METADATA = table(name(MOLGENIS, "version_metadata"));
   private static final org.jooq.Table SCHEMA_METADATA = table(name(MOLGENIS, "schema_metadata"));
@@ -30,6 +32,10 @@ public class MetadataUtils {
   private static final org.jooq.Field VERSION_ID = field(name("id"), INTEGER.nullable(false));
   private static final org.jooq.Field VERSION = field(name("version"), VARCHAR.nullable(false));
 
+  // schema
+  private static final org.jooq.Field SCHEMA_VERSION =
+      field(name("version"), BIGINT.nullable(false).defaultValue(inline(0L)));
+
   // table
   private static final org.jooq.Field TABLE_SCHEMA =
       field(name("table_schema"), VARCHAR.nullable(false));
@@ -99,7 +105,8 @@ public class MetadataUtils {
 
   protected static synchronized String getVersion(DSLContext jooq) {
     try {
-      Result<Record> result = jooq.selectFrom(VERSION_METADATA).fetch();
+      Result<Record> result =
+          jooq.selectFrom(VERSION_METADATA).where(VERSION_ID.eq(1)).fetch();
       if (result.size() > 0) {
         return (String) result.get(0).get(VERSION);
       }
@@ -109,6 +116,21 @@ public class MetadataUtils {
     return null;
   }
 
+  /** version of a migration, stored next to the specification version under its own id */
+  protected static String getMigrationVersion(DSLContext jooq, int id) {
+    return (String)
+        jooq.select(VERSION).from(VERSION_METADATA).where(VERSION_ID.eq(id)).fetchOne(VERSION);
+  }
+
+  protected static void setMigrationVersion(DSLContext jooq, int id, String version) {
+    jooq.insertInto(VERSION_METADATA, VERSION_ID, VERSION)
+        .values(id, version)
+        .onConflict(VERSION_ID)
+        .doUpdate()
+        .set(VERSION, version)
+        .execute();
+  }
+
   // should never run in parallel
   protected static synchronized void init(DSLContext jooq) {
 
@@ -194,6 +216,17 @@ public class MetadataUtils {
     }
 
     // this way more robust for non breaking changes
+    jooq.alterTable(SCHEMA_METADATA).addColumnIfNotExists(SCHEMA_VERSION).execute();
+    // before statement level triggers, these were row level triggers named 'metadata_changed'
+    if (Boolean.FALSE.equals(
+        jooq.fetchValue(
+            "SELECT EXISTS(SELECT 1 FROM pg_trigger"
+                + " WHERE tgname = {0} AND tgrelid = {1}::regclass)",
+            inline(METADATA_CHANGED_TRIGGER + "_insert"),
+            inline("\"" + MOLGENIS + "\".table_metadata")))) {
+      createMetadataChangedTriggers(jooq);
+    }
+
     for (Field field :
         new Field[] {TABLE_INHERITS, TABLE_IMPORT_SCHEMA, TABLE_DESCRIPTION, TALBE_SEMANTICS}) {
       jooq.alterTable(TABLE_METADATA).addColumnIfNotExists(field).execute();
@@ -224,6 +257,70 @@ public class MetadataUtils {
     }
   }
 
+  /**
+   * Increase the version of a schema on each change of its metadata, and notify all servers. Runs
+   * as owner so it is not limited by row level security.
+   */
+  /**
+   * Statement level triggers that increase the version of the schemas changed by a statement and
+   * notify the servers, so bulk metadata changes bump and notify each schema once.
+   */
+  private static void createMetadataChangedTriggers(DSLContext jooq) {
+    jooq.execute(
+        "CREATE OR REPLACE FUNCTION "
+            + METADATA_CHANGED_FUNCTION
+            + "() RETURNS trigger AS $$"
+            + "\nDECLARE changed_schemas varchar[]; changed_schema varchar;"
+            + "\nBEGIN"
+            + "\n\tIF TG_OP = 'INSERT' THEN"
+            + "\n\t\tSELECT array_agg(DISTINCT {0}) INTO changed_schemas FROM new_rows;"
+            + "\n\tELSIF TG_OP = 'UPDATE' THEN"
+            + "\n\t\tSELECT array_agg(DISTINCT s) INTO changed_schemas"
+            + " FROM (SELECT {0} s FROM new_rows UNION SELECT {0} FROM old_rows) u;"
+            + "\n\tELSE"
+            + "\n\t\tSELECT array_agg(DISTINCT {0}) INTO changed_schemas FROM old_rows;"
+            + "\n\tEND IF;"
+            + "\n\tIF changed_schemas IS NOT NULL THEN"
+            + "\n\t\tUPDATE {1} SET {2} = {2} + 1 WHERE {0} = ANY(changed_schemas);"
+            + "\n\t\tFOREACH changed_schema IN ARRAY changed_schemas LOOP"
+            + "\n\t\t\tPERFORM pg_notify({3}, changed_schema);"
+            + "\n\t\tEND LOOP;"
+            + "\n\tEND IF;"
+            + "\n\tRETURN NULL;"
+            + "\nEND; $$ LANGUAGE plpgsql SECURITY DEFINER",
+        TABLE_SCHEMA,
+        SCHEMA_METADATA,
+        SCHEMA_VERSION,
+        inline(MetadataCache.CHANNEL));
+    // transition tables require a trigger per event
+    createMetadataChangedTrigger(jooq, SCHEMA_METADATA, "insert", "NEW TABLE AS new_rows");
+    createMetadataChangedTrigger(jooq, SCHEMA_METADATA, "delete", "OLD TABLE AS old_rows");
+    for (org.jooq.Table table :
+        new org.jooq.Table[] {TABLE_METADATA, COLUMN_METADATA, SETTINGS_METADATA}) {
+      createMetadataChangedTrigger(jooq, table, "insert", "NEW TABLE AS new_rows");
+      createMetadataChangedTrigger(
+          jooq, table, "update", "OLD TABLE AS old_rows NEW TABLE AS new_rows");
+      createMetadataChangedTrigger(jooq, table, "delete", "OLD TABLE AS old_rows");
+    }
+  }
+
+  private static void createMetadataChangedTrigger(
+      DSLContext jooq, org.jooq.Table table, String event, String transitionTables) {
+    jooq.execute("DROP TRIGGER IF EXISTS {0} ON {1}", name(METADATA_CHANGED_TRIGGER), table);
+    jooq.execute(
+        "DROP TRIGGER IF EXISTS {0} ON {1}", name(METADATA_CHANGED_TRIGGER + "_" + event), table);
+    jooq.execute(
+        "CREATE TRIGGER {0} AFTER "
+            + event.toUpperCase()
+            + " ON {1} REFERENCING "
+            + transitionTables
+            + " FOR EACH STATEMENT EXECUTE FUNCTION "
+            + METADATA_CHANGED_FUNCTION
+            + "()",
+        name(METADATA_CHANGED_TRIGGER + "_" + event),
+        table);
+  }
+
   private static void createRowLevelPermissions(DSLContext jooq, org.jooq.Table table) {
     jooq.execute("ALTER TABLE {0} ENABLE ROW LEVEL SECURITY", table);
     // we record the role name in as a column 'table_rls_manager' and 'table_rls_viewer' and use
@@ -259,15 +356,6 @@ public class MetadataUtils {
     return db.getJooq().selectFrom(SCHEMA_METADATA).fetch().getValues(TABLE_SCHEMA, String.class);
   }
 
-  protected static SchemaMetadata loadSchemaMetadata(DSLContext jooq, SchemaMetadata schema) {
-    org.jooq.Record tableRecord =
-        jooq.selectFrom(SCHEMA_METADATA).where(TABLE_SCHEMA.eq(schema.getName())).fetchOne();
-    if (tableRecord == null) {
-      return schema;
-    }
-    return schema;
-  }
-
   protected static void deleteSchema(DSLContext jooq, String schemaName) {
     jooq.deleteFrom(SCHEMA_METADATA).where(TABLE_SCHEMA.eq(schemaName)).execute();
     jooq.deleteFrom(SETTINGS_METADATA).where(TABLE_SCHEMA.eq(schemaName)).execute();
@@ -328,42 +416,74 @@ public class MetadataUtils {
     return jooq.select(count()).from(USERS_METADATA).fetchOne(count());
   }
 
-  protected static Collection<TableMetadata> loadTables(DSLContext jooq, SchemaMetadata schema) {
+  /** Returns version of schema, or null if it doesn't exist or is not visible for current user */
+  protected static Long loadSchemaVersion(DSLContext jooq, String schemaName) {
+    org.jooq.Record r =
+        jooq.select(SCHEMA_VERSION)
+            .from(SCHEMA_METADATA)
+            .where(TABLE_SCHEMA.eq(schemaName))
+            .fetchOne();
+    return r != null ? r.get(SCHEMA_VERSION, Long.class) : null;
+  }
+
+  /**
+   * Loads version, settings, tables and columns of a schema in one round trip. Returns null if the
+   * schema doesn't exist or is not visible for current user.
+   */
+  protected static MetadataCache.Entry loadSchema(DSLContext jooq, String schemaName) {
     try {
-      Map<String, TableMetadata> result = new LinkedHashMap<>();
+      // version first, so concurrent changes can only make the result newer than its version
+      List<ResultQuery<?>> queries =
+          List.of(
+              jooq.select(SCHEMA_VERSION)
+                  .from(SCHEMA_METADATA)
+                  .where(TABLE_SCHEMA.eq(schemaName)),
+              jooq.selectFrom(TABLE_METADATA).where(TABLE_SCHEMA.eq(schemaName)),
+              jooq.selectFrom(SETTINGS_METADATA).where(TABLE_SCHEMA.eq(schemaName)),
+              jooq.selectFrom(COLUMN_METADATA)
+                  .where(TABLE_SCHEMA.eq(schemaName))
+                  .orderBy(COLUMN_POSITION.asc()));
+      StringBuilder sql = new StringBuilder();
+      List<Object> bindings = new ArrayList<>();
+      for (ResultQuery<?> query : queries) {
+        sql.append(jooq.render(query)).append(";\n");
+        bindings.addAll(query.getBindValues());
+      }
+      Results results = jooq.fetchMany(sql.toString(), bindings.toArray());
+      if (results.get(0).isEmpty()) {
+        return null;
+      }
+
       // tables
-      List<org.jooq.Record> tableRecords =
-          jooq.selectFrom(TABLE_METADATA).where(TABLE_SCHEMA.eq(schema.getName())).fetch();
-      for (org.jooq.Record r : tableRecords) {
+      Map<String, TableMetadata> tables = new LinkedHashMap<>();
+      for (org.jooq.Record r : results.get(1)) {
         TableMetadata table = new TableMetadata(r.get(TABLE_NAME, String.class));
         table.setInherit(r.get(TABLE_INHERITS, String.class));
         table.setImportSchema(r.get(TABLE_IMPORT_SCHEMA, String.class));
         table.setDescription(r.get(TABLE_DESCRIPTION, String.class));
         table.setSemantics(r.get(TALBE_SEMANTICS, String[].class));
-        result.put(table.getTableName(), table);
+        tables.put(table.getTableName(), table);
       }
 
-      // settings
-      List<org.jooq.Record> settingRecords =
-          jooq.selectFrom(SETTINGS_METADATA)
-              .where(TABLE_SCHEMA.eq(schema.getName()), SETTINGS_TABLE_NAME.notEqual(NOT_PROVIDED))
-              .fetch();
-      for (org.jooq.Record r : settingRecords) {
-        result
-            .get(r.get(SETTINGS_TABLE_NAME, String.class))
-            .setSetting(r.get(SETTINGS_NAME, String.class), r.get(SETTINGS_VALUE, String.class));
+      // settings, of schema and of tables
+      List<Setting> settings = new ArrayList<>();
+      for (org.jooq.Record r : results.get(2)) {
+        String tableName = r.get(SETTINGS_TABLE_NAME, String.class);
+        String key = r.get(SETTINGS_NAME, String.class);
+        String value = r.get(SETTINGS_VALUE, String.class);
+        if (NOT_PROVIDED.equals(tableName)) {
+          settings.add(new Setting(key, value));
+        } else if (tables.containsKey(tableName)) {
+          tables.get(tableName).setSetting(key, value);
+        }
       }
 
       // columns
-      List<org.jooq.Record> columnRecords =
-          jooq.selectFrom(COLUMN_METADATA)
-              .where(TABLE_SCHEMA.eq(schema.getName()))
-              .orderBy(COLUMN_POSITION.asc())
-              .fetch();
-      for (org.jooq.Record r : columnRecords) {
-        result.get(r.get(TABLE_NAME, String.class)).add(recordToColumn(r));
+      for (org.jooq.Record r : results.get(3)) {
+        tables.get(r.get(TABLE_NAME, String.class)).add(recordToColumn(r));
       }
-      return result.values();
+      return new MetadataCache.Entry(
+          results.get(0).get(0).get(SCHEMA_VERSION, Long.class), tables.values(), settings);
     } catch (Exception e) {
       throw new MolgenisException("load of table metadata failed", e);
     }
@@ -500,10 +620,6 @@ public class MetadataUtils {
         .execute();
   }
 
-  protected static boolean schemaExists(DSLContext jooq, String name) {
-    return jooq.selectFrom(SCHEMA_METADATA).where(TABLE_SCHEMA.eq(name)).fetch().isNotEmpty();
-  }
-
   private static Column recordToColumn(org.jooq.Record col) {
     Column c = new Column(col.get(COLUMN_NAME, String.class));
     c.setType(ColumnType.valueOf(col.get(COLUMN_TYPE, String.class)));
@@ -0,0 +1,80 @@
+package org.molgenis.emx2.sql;
+
+import static org.jooq.impl.DSL.inline;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Types;
+import org.jooq.*;
+import org.jooq.conf.ParamType;
+import org.jooq.impl.SQLDataType;
+import org.molgenis.emx2.BinaryFileWrapper;
+
+/**
+ * Binds file contents as a stream, so the jdbc driver sends them to postgres while executing the
+ * statement without the whole file having to be in memory.
+ */
+class SqlBinaryStreamBinding implements Binding<byte[], BinaryFileWrapper> {
+  static final DataType<BinaryFileWrapper> TYPE =
+      SQLDataType.BLOB.asConvertedDataType(new SqlBinaryStreamBinding());
+
+  @Override
+  public Converter<byte[], BinaryFileWrapper> converter() {
+    return Converter.ofNullable(
+        byte[].class,
+        BinaryFileWrapper.class,
+        bytes -> new BinaryFileWrapper(null, null, bytes),
+        BinaryFileWrapper::getContents);
+  }
+
+  @Override
+  public void sql(BindingSQLContext<BinaryFileWrapper> ctx) throws SQLException {
+    if (ctx.render().paramType() == ParamType.INLINED) {
+      ctx.render().visit(inline(ctx.convert(converter()).value(), SQLDataType.BLOB));
+    } else {
+      ctx.render().sql(ctx.variable());
+    }
+  }
+
+  @Override
+  public void register(BindingRegisterContext<BinaryFileWrapper> ctx) throws SQLException {
+    ctx.statement().registerOutParameter(ctx.index(), Types.BINARY);
+  }
+
+  @Override
+  public void set(BindingSetStatementContext<BinaryFileWrapper> ctx) throws SQLException {
+    BinaryFileWrapper file = ctx.value();
+    if (file == null) {
+      ctx.statement().setNull(ctx.index(), Types.BINARY);
+    } else {
+      try {
+        // closed by jooq once the statement executed
+        ctx.statement()
+            .setBinaryStream(ctx.index(), ctx.autoClose(file.getInputStream()), file.getSize());
+      } catch (IOException e) {
+        throw new SQLException("Could not read file contents", e);
+      }
+    }
+  }
+
+  @Override
+  public void set(BindingSetSQLOutputContext<BinaryFileWrapper> ctx) throws SQLException {
+    throw new SQLFeatureNotSupportedException();
+  }
+
+  @Override
+  public void get(BindingGetResultSetContext<BinaryFileWrapper> ctx) throws SQLException {
+    ctx.convert(converter()).value(ctx.resultSet().getBytes(ctx.index()));
+  }
+
+  @Override
+  public void get(BindingGetStatementContext<BinaryFileWrapper> ctx) throws SQLException {
+    ctx.convert(converter()).value(ctx.statement().getBytes(ctx.index()));
+  }
+
+  @Override
+  public void get(BindingGetSQLInputContext<BinaryFileWrapper> ctx) throws SQLException {
+    throw new SQLFeatureNotSupportedException();
+  }
+}
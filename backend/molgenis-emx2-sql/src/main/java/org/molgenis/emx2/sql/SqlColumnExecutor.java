@@ -10,6 +10,7 @@ import static org.molgenis.emx2.sql.SqlColumnRefBackExecutor.removeRefBackConstr
 import static org.molgenis.emx2.sql.SqlColumnRefExecutor.createRefConstraints;
 import static org.molgenis.emx2.sql.SqlTypeUtils.getPsqlType;
 
+import java.util.ArrayList;
 import java.util.List;
 import org.jooq.DSLContext;
 import org.jooq.DataType;
@@ -115,6 +116,11 @@ public class SqlColumnExecutor {
     }
 
     // pre changes
+    if (REF.equals(oldColumn.getColumnType())) {
+      jooq.execute(
+          "DROP INDEX IF EXISTS {0}",
+          name(oldColumn.getSchemaName(), table.getName() + "/" + oldColumn.getName()));
+    }
     if (REF_ARRAY.equals(oldColumn.getColumnType())) {
       // if ref_array drop the index
       jooq.execute(
@@ -132,6 +138,9 @@ public class SqlColumnExecutor {
         getPsqlType(newColumn));
 
     // post changes
+    if (REF.equals(newColumn.getColumnType())) {
+      executeCreateRefIndex(jooq, newColumn);
+    }
     if (REF_ARRAY.equals(newColumn.getColumnType())) {
       executeCreateRefArrayIndex(jooq, table, newColumn.getJooqField());
     }
@@ -205,6 +214,10 @@ public class SqlColumnExecutor {
           }
         }
 
+        if (REF.equals(column.getColumnType())) {
+          executeCreateRefIndex(jooq, column);
+        }
+
         // we only have hard not null in case of primary key
         if (column.isPrimaryKey()) {
           executeSetRequired(jooq, column);
@@ -213,6 +226,11 @@ public class SqlColumnExecutor {
         for (Field f : column.getJooqFileFields()) {
           jooq.alterTable(column.getJooqTable()).addColumn(f).execute();
         }
+        // uncompressed, so chunks of a file can be read without reading the whole file
+        jooq.execute(
+            "ALTER TABLE {0} ALTER COLUMN {1} SET STORAGE EXTERNAL",
+            column.getJooqTable(),
+            name(column.getName() + "_contents"));
       } else {
         jooq.alterTable(column.getJooqTable()).addColumn(column.getJooqField()).execute();
         executeSetDefaultValue(jooq, column);
@@ -298,6 +316,20 @@ public class SqlColumnExecutor {
         name(table.getName() + "/" + field.getName()), table, field);
   }
 
+  /** index on the parts of a ref, so rows referring to a changed row are found fast */
+  static void executeCreateRefIndex(DSLContext jooq, Column column) {
+    if (column.isPrimaryKey()) {
+      return; // already indexed by the primary key
+    }
+    List<Field<?>> fields = new ArrayList<>();
+    for (Reference ref : column.getReferences()) {
+      fields.add(ref.getJooqField());
+    }
+    jooq.createIndexIfNotExists(name(column.getTableName() + "/" + column.getName()))
+        .on(column.getJooqTable(), fields)
+        .execute();
+  }
+
   static void executeCreateRefConstraints(DSLContext jooq, Column column) {
     // set constraints
     switch (column.getColumnType()) {
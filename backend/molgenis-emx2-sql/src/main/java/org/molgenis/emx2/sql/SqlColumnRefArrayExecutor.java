@@ -2,6 +2,8 @@ package org.molgenis.emx2.sql;
 
 import static org.jooq.impl.DSL.*;
 import static org.molgenis.emx2.ColumnType.REF;
+import static org.molgenis.emx2.sql.Constants.REF_ARRAY_CHECKS;
+import static org.molgenis.emx2.sql.Constants.REF_ARRAY_CHECKS_PER_STATEMENT;
 import static org.molgenis.emx2.sql.SqlColumnExecutor.validateColumn;
 
 import java.util.Collection;
@@ -23,20 +25,38 @@ class SqlColumnRefArrayExecutor {
 
   static void createRefArrayConstraints(DSLContext jooq, Column column) {
     validateColumn(column);
-    createReferenceExistsCheck(jooq, column);
-    createReferedCheck(jooq, column);
+    if (isCheckedPerStatement(column)) {
+      createReferenceExistsStatementCheck(jooq, column);
+      createReferedStatementCheck(jooq, column);
+    } else {
+      createReferenceExistsCheck(jooq, column);
+      createReferedCheck(jooq, column);
+    }
     // createUpdateReferedCheck(jooq, column);
   }
 
+  /**
+   * Checks per statement use one set based query for all rows of an insert or update, instead of a
+   * query per row. These cannot be deferred so must be loaded in order of dependency.
+   */
+  static boolean isCheckedPerStatement(Column column) {
+    return REF_ARRAY_CHECKS_PER_STATEMENT.equals(column.getSchema().getSetting(REF_ARRAY_CHECKS));
+  }
+
   static void removeRefArrayConstraints(DSLContext jooq, Column ref) {
+    // might be either per row or per statement, e.g. when setting was changed
     jooq.execute(
-        "DROP TRIGGER {0} ON {1}", name(getReferenceExistsCheckName(ref)), ref.getJooqTable());
+        "DROP TRIGGER IF EXISTS {0} ON {1}",
+        name(getReferenceExistsCheckName(ref)), ref.getJooqTable());
     jooq.execute(
-        "DROP FUNCTION  {0} ", name(ref.getSchemaName(), getReferenceExistsCheckName(ref)));
+        "DROP FUNCTION IF EXISTS {0} CASCADE",
+        name(ref.getSchemaName(), getReferenceExistsCheckName(ref)));
     jooq.execute(
-        "DROP TRIGGER  {0} ON {1}",
+        "DROP TRIGGER IF EXISTS {0} ON {1}",
         name(getReferedCheckName(ref)), ref.getRefTable().getJooqTable());
-    jooq.execute("DROP FUNCTION {0}", name(ref.getSchemaName(), getReferedCheckName(ref)));
+    jooq.execute(
+        "DROP FUNCTION IF EXISTS {0} CASCADE",
+        name(ref.getSchemaName(), getReferedCheckName(ref)));
 
     //    jooq.execute(
     //        "DROP TRIGGER {0} ON {1}", name(getUpdateTriggerName(ref)),
@@ -309,4 +329,193 @@ class SqlColumnRefArrayExecutor {
   private static String getReferenceExistsCheckName(Column column) {
     return "C_" + column.getSchemaName() + "_" + column.getTableName() + "_" + column.getName();
   }
+
+  /**
+   * Statement level variant of createReferenceExistsCheck: one anti join of all inserted or updated
+   * rows against the referenced table.
+   */
+  private static void createReferenceExistsStatementCheck(DSLContext jooq, Column column) {
+    String schemaName = column.getSchema().getName();
+    Name thisTable = name(schemaName, column.getTable().getTableName());
+    Name toTable = name(column.getRefSchema(), column.getRefTableName());
+    String functionName = getReferenceExistsCheckName(column);
+    List<Reference> references = column.getReferences();
+
+    String fromColumns =
+        references.stream().map(r -> name(r.getName()).toString()).collect(Collectors.joining(","));
+
+    String toColumns =
+        references.stream()
+            .map(r -> name(r.getRefTo()).toString())
+            .collect(Collectors.joining(","));
+
+    String errorColumns =
+        references.stream()
+            .map(r -> "COALESCE(error_row." + name(r.getRefTo()) + "::text,'NULL')")
+            .collect(Collectors.joining("||','||"));
+
+    String unnestRefs = unnestReferences(references);
+
+    String refEqualsTo =
+        references.stream()
+            .map(r -> "r." + name(r.getRefTo()) + " = t." + name(r.getRefTo()))
+            .collect(Collectors.joining(" AND "));
+
+    // exclude if only refLink fields are set
+    String nonRefLinkFieldsAreNotNull =
+        references.stream()
+            .filter(r -> !r.isOverlapping())
+            .map(r2 -> "t." + name(r2.getRefTo()) + " IS NOT NULL ")
+            .collect(Collectors.joining(" OR "));
+    if (nonRefLinkFieldsAreNotNull.isEmpty()) {
+      nonRefLinkFieldsAreNotNull = "FALSE";
+    }
+
+    jooq.execute(
+        "CREATE OR REPLACE FUNCTION {0}() RETURNS trigger AS $BODY$ "
+            + "\nDECLARE error_row RECORD;"
+            + "\nBEGIN"
+            + "\n\tSELECT * INTO error_row FROM (SELECT DISTINCT {1} FROM new_rows) AS t"
+            + " WHERE ({2}) AND NOT EXISTS (SELECT 1 FROM {3} r WHERE {4}) LIMIT 1;"
+            + "\n\tIF FOUND THEN"
+            + "\n\t\tRAISE EXCEPTION USING ERRCODE='23503', MESSAGE = 'insert or update on table \"'||{9}||'\" violates foreign key (ref_array) constraint'"
+            + " , DETAIL = 'Key ('||{6}||')=('|| {5} ||') is not present in table \"'||{7}||'\", column(s)('||{8}||')';"
+            + "\n\tEND IF;"
+            + "\n\tRETURN NULL;"
+            + "\nEND; $BODY$ LANGUAGE plpgsql;",
+        // 0
+        name(schemaName, functionName),
+        // 1
+        keyword(unnestRefs),
+        // 2
+        keyword(nonRefLinkFieldsAreNotNull),
+        // 3
+        toTable,
+        // 4
+        keyword(refEqualsTo),
+        // 5
+        keyword(errorColumns),
+        // 6
+        inline(fromColumns),
+        // 7
+        inline(column.getRefTableName()),
+        // 8
+        inline(toColumns),
+        // 9
+        inline(column.getTableName()));
+
+    // transition tables require a trigger per event
+    for (String event : new String[] {"INSERT", "UPDATE"}) {
+      jooq.execute(
+          "CREATE TRIGGER {0} "
+              + "\n\tAFTER "
+              + event
+              + " ON {1} REFERENCING NEW TABLE AS new_rows"
+              + "\n\tFOR EACH STATEMENT EXECUTE PROCEDURE {2}()",
+          name(functionName + "_" + event),
+          thisTable,
+          name(schemaName, functionName));
+    }
+  }
+
+  /**
+   * Statement level variant of createReferedCheck: checks in one query if keys that were deleted or
+   * updated are still referenced.
+   */
+  private static void createReferedStatementCheck(DSLContext jooq, Column ref) {
+    String deleteTrigger = getReferedCheckName(ref);
+    List<Reference> references = ref.getReferences();
+
+    String oldEqualsAnyRef =
+        references.stream()
+            .map(
+                r -> {
+                  // can be overlapping with non_array reference
+                  if (r.isOverlapping() && r.getOverlapping().getColumnType().equals(REF)) {
+                    return "o." + name(r.getRefTo()) + "=t." + name(r.getName());
+                  } else {
+                    return "o." + name(r.getRefTo()) + "=ANY(t." + name(r.getName()) + ")";
+                  }
+                })
+            .collect(Collectors.joining(" AND "));
+
+    String keyColumns =
+        references.stream()
+            .map(r -> name(r.getRefTo()).toString())
+            .collect(Collectors.joining(","));
+
+    String oldEqualsTo =
+        references.stream()
+            .map(r -> "o." + name(r.getRefTo()) + "=r." + name(r.getRefTo()))
+            .collect(Collectors.joining(" AND "));
+
+    String oldValuesAsString =
+        references.stream()
+            .map(r -> "error_row." + name(r.getRefTo()) + "::text")
+            .collect(Collectors.joining("||','||"));
+
+    String toColumns =
+        references.stream().map(r -> name(r.getName()).toString()).collect(Collectors.joining(","));
+
+    jooq.execute(
+        "CREATE OR REPLACE FUNCTION {0}() RETURNS trigger AS $BODY$ "
+            + "\nDECLARE error_row RECORD;"
+            + "\nBEGIN"
+            // keys that no longer exist, so also swapped keys are allowed
+            + "\n\tSELECT * INTO error_row FROM old_rows o"
+            + " WHERE NOT EXISTS (SELECT 1 FROM {3} r WHERE {4})"
+            + " AND EXISTS (SELECT 1 FROM {2} t WHERE {9}) LIMIT 1;"
+            + "\n\tIF FOUND THEN"
+            + "\n\t\tRAISE EXCEPTION USING ERRCODE='23503', MESSAGE = 'delete on table \"'||{5}||'\" violates foreign key constraint'"
+            + " , DETAIL = 'Key ('||{6}||')=('|| {7} ||') is still referenced from table \"'||{8}||'\", column(s)('||{1}||')';"
+            + "\n\tEND IF;"
+            + "\n\tRETURN NULL;"
+            + "\nEND; $BODY$ LANGUAGE plpgsql;",
+        // 0 trigger name
+        name(ref.getSchemaName(), deleteTrigger),
+        // 1
+        inline(toColumns),
+        // 2
+        ref.getJooqTable(),
+        // 3
+        ref.getRefTable().getJooqTable(),
+        // 4
+        keyword(oldEqualsTo),
+        // 5 toTable
+        inline(ref.getRefTableName()),
+        // 6 toColumns
+        inline(keyColumns),
+        // 7 old.toColumnValues
+        keyword(oldValuesAsString),
+        // 8 inline fromTable
+        inline(ref.getTableName()),
+        // 9
+        keyword(oldEqualsAnyRef));
+
+    for (String event : new String[] {"DELETE", "UPDATE"}) {
+      jooq.execute(
+          "CREATE TRIGGER {0} "
+              + "\n\tAFTER "
+              + event
+              + " ON {1} REFERENCING OLD TABLE AS old_rows"
+              + "\n\tFOR EACH STATEMENT EXECUTE PROCEDURE {2}()",
+          name(deleteTrigger + "_" + event),
+          ref.getRefTable().getJooqTable(),
+          name(ref.getTable().getSchema().getName(), deleteTrigger));
+    }
+  }
+
+  private static String unnestReferences(List<Reference> references) {
+    return references.stream()
+        .map(
+            r -> {
+              // can be overlapping with non_array reference
+              if (r.isOverlapping() && r.getOverlapping().getColumnType().equals(REF)) {
+                return name(r.getName()) + " AS " + name(r.getRefTo());
+              } else {
+                return "UNNEST(" + name(r.getName()) + ") AS " + name(r.getRefTo());
+              }
+            })
+        .collect(Collectors.joining(","));
+  }
 }
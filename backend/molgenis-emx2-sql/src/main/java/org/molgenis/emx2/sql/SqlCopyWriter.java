@@ -0,0 +1,119 @@
+package org.molgenis.emx2.sql;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.stream.Collectors;
+import org.jooq.JSONB;
+import org.jooq.Param;
+import org.molgenis.emx2.BinaryFileWrapper;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.postgresql.core.BaseConnection;
+
+/**
+ * Streams rows into a table using 'COPY ... FROM STDIN (FORMAT CSV)'. Rows are encoded into a fixed
+ * size buffer that is pushed to the server each time it is full, so memory use does not depend on
+ * the number of rows copied.
+ */
+class SqlCopyWriter implements AutoCloseable {
+  static final int BUFFER_SIZE = 65536;
+  private final PGCopyOutputStream out;
+  private final Writer writer;
+
+  SqlCopyWriter(
+      Connection connection, String schemaName, String tableName, Collection<String> columnNames)
+      throws SQLException {
+    String sql =
+        "COPY "
+            + quoteIdentifier(schemaName)
+            + "."
+            + quoteIdentifier(tableName)
+            + "("
+            + columnNames.stream()
+                .map(SqlCopyWriter::quoteIdentifier)
+                .collect(Collectors.joining(","))
+            + ") FROM STDIN (FORMAT CSV)";
+    CopyManager cm = new CopyManager(connection.unwrap(BaseConnection.class));
+    this.out = new PGCopyOutputStream(cm.copyIn(sql), BUFFER_SIZE);
+    this.writer = new OutputStreamWriter(out, UTF_8);
+  }
+
+  void writeRow(Collection<Object> values) throws IOException {
+    boolean first = true;
+    for (Object value : values) {
+      if (!first) {
+        writer.write(',');
+      }
+      first = false;
+      // unquoted empty means null, quoted empty means empty string
+      if (value != null) {
+        writer.write('"');
+        writer.write(toText(value).replace("\"", "\"\""));
+        writer.write('"');
+      }
+    }
+    writer.write('\n');
+  }
+
+  /** completes the copy, returns number of rows copied */
+  long endCopy() throws IOException, SQLException {
+    writer.flush();
+    return out.endCopy();
+  }
+
+  @Override
+  public void close() throws SQLException {
+    // only active if endCopy was not reached, e.g. because of an error
+    if (out.isActive()) {
+      out.cancelCopy();
+    }
+  }
+
+  static String quoteIdentifier(String name) {
+    return "\"" + name.replace("\"", "\"\"") + "\"";
+  }
+
+  /** converts typed value into its postgresql text representation */
+  static String toText(Object value) {
+    if (value instanceof Object[]) {
+      StringBuilder result = new StringBuilder("{");
+      for (Object element : (Object[]) value) {
+        if (result.length() > 1) {
+          result.append(',');
+        }
+        if (element == null) {
+          result.append("NULL");
+        } else {
+          result
+              .append('"')
+              .append(toText(element).replace("\\", "\\\\").replace("\"", "\\\""))
+              .append('"');
+        }
+      }
+      return result.append('}').toString();
+    } else if (value instanceof Param) {
+      // e.g. streamed file contents, copy has no streaming so we read them
+      Object paramValue = ((Param<?>) value).getValue();
+      return toText(
+          paramValue instanceof BinaryFileWrapper
+              ? ((BinaryFileWrapper) paramValue).getContents()
+              : paramValue);
+    } else if (value instanceof byte[]) {
+      StringBuilder result = new StringBuilder("\\x");
+      for (byte b : (byte[]) value) {
+        result.append(Character.forDigit((b >> 4) & 0xF, 16));
+        result.append(Character.forDigit(b & 0xF, 16));
+      }
+      return result.toString();
+    } else if (value instanceof JSONB) {
+      return ((JSONB) value).data();
+    }
+    return value.toString();
+  }
+}
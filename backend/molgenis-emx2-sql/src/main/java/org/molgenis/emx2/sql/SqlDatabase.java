@@ -4,10 +4,12 @@ import static org.jooq.impl.DSL.name;
 import static org.molgenis.emx2.sql.Constants.MG_USER_PREFIX;
 import static org.molgenis.emx2.sql.SqlDatabaseExecutor.*;
 import static org.molgenis.emx2.sql.SqlSchemaMetadataExecutor.executeCreateSchema;
+import static org.molgenis.emx2.utils.TableSort.sortTableByDependency;
 
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.sql.DataSource;
 import org.jooq.DSLContext;
 import org.jooq.SQLDialect;
@@ -21,19 +23,30 @@ public class SqlDatabase implements Database {
   public static final String ADMIN = "admin";
   public static final String ANONYMOUS = "anonymous";
   public static final String USER = "user";
+  // bump when search functions are generated differently, existing schemas then get migrated
+  private static final int SEARCH_VERSION_ID = 2;
+  private static final String SEARCH_VERSION = "3";
 
   private DataSource source;
   private String databaseVersion;
+  // used outside transactions, each statement acquires a connection from the pool
   private DSLContext jooq;
-  private SqlUserAwareConnectionProvider connectionProvider;
-  private Map<String, SqlSchemaMetadata> schemaCache = new LinkedHashMap<>(); // cache
-  private Collection<String> schemaNames = new ArrayList<>();
-  private boolean inTx;
+  // transaction of the current thread, if any, so one instance can serve concurrent requests
+  private final ThreadLocal<TransactionContext> transactionContext = new ThreadLocal<>();
+  // user of threads that did not set their own active user, e.g. the user of a web session
+  private volatile String defaultUser;
+  // active user set by the current thread outside a transaction, other threads keep theirs
+  private final ThreadLocal<ActiveUser> threadUser = new ThreadLocal<>();
+  private Map<String, SqlSchemaMetadata> schemaCache = new ConcurrentHashMap<>(); // cache
+  // shared with other instances on same data source
+  private MetadataCache metadataCache;
+  private volatile Collection<String> schemaNames = new ArrayList<>();
   private static Logger logger = LoggerFactory.getLogger(SqlDatabase.class);
-  private DatabaseListener listener =
+  private volatile DatabaseListener listener =
       new DatabaseListener() {
-        private boolean reloadOnCommit = false;
-        private Set<String> reloadSchemas = new HashSet<>();
+        // schemas changed in the transaction of the current thread
+        private final ThreadLocal<Set<String>> reloadSchemas =
+            ThreadLocal.withInitial(HashSet::new);
 
         @Override
         public void schemaRemoved(String name) {
@@ -49,36 +62,41 @@ public class SqlDatabase implements Database {
         @Override
         public void schemaChanged(String schemaName) {
           // wait until end of transaction
-          if (!inTx) {
-            getSchema(schemaName).getMetadata().reload();
+          if (!inTx()) {
+            SqlSchema schema = getSchema(schemaName);
+            if (schema != null) {
+              schema.getMetadata().reload();
+            }
             clearCache();
             logger.info("reload schema " + schemaName + " on schemaChanged");
           } else {
-            reloadOnCommit = true;
-            reloadSchemas.add(schemaName);
+            reloadSchemas.get().add(schemaName);
           }
         }
 
         @Override
         public void afterCommit() {
-          if (reloadOnCommit) {
-            for (String schemaName : reloadSchemas) {
+          Set<String> changed = reloadSchemas.get();
+          if (!changed.isEmpty()) {
+            for (String schemaName : changed) {
               if (getSchema(schemaName) != null) {
                 getSchema(schemaName).getMetadata().reload();
               }
               logger.info("reload schema " + schemaName + " on afterCommit");
             }
             clearCache();
-            reloadOnCommit = false;
-            reloadSchemas.clear();
           }
+          reloadSchemas.remove();
         }
       };
 
   public SqlDatabase(DataSource source, boolean init) {
     this.source = source;
-    this.connectionProvider = new SqlUserAwareConnectionProvider(source);
-    this.jooq = DSL.using(connectionProvider, SQLDialect.POSTGRES);
+    this.jooq =
+        DSL.using(
+            new SqlUserAwareConnectionProvider(source, this::getActiveUser), SQLDialect.POSTGRES);
+    this.metadataCache = MetadataCache.forDataSource(source);
+    this.metadataCache.register(this);
     if (init) {
       this.init();
     }
@@ -101,6 +119,7 @@ public class SqlDatabase implements Database {
           });
 
       MetadataUtils.init(jooq);
+      migrateSearch();
 
       if (!hasUser(ANONYMOUS)) {
         addUser(ANONYMOUS); // used when not logged in
@@ -124,6 +143,45 @@ public class SqlDatabase implements Database {
     }
   }
 
+  /**
+   * Recreates the search functions of existing schemas when these are generated differently than
+   * before, and recomputes the search columns. Parents go first so children include their text.
+   */
+  private void migrateSearch() {
+    if (SEARCH_VERSION.equals(MetadataUtils.getMigrationVersion(jooq, SEARCH_VERSION_ID))) {
+      return;
+    }
+    rebuildSearch(getSchemaNames());
+    MetadataUtils.setMigrationVersion(jooq, SEARCH_VERSION_ID, SEARCH_VERSION);
+  }
+
+  /** Recreates the search functions of the schemas and recomputes their search columns */
+  void rebuildSearch(Collection<String> schemaNames) {
+    for (String schemaName : schemaNames) {
+      logger.info("rebuilding search index of schema {}", schemaName);
+      tx(
+          db -> {
+            List<TableMetadata> tables =
+                new ArrayList<>(db.getSchema(schemaName).getMetadata().getTables());
+            sortTableByDependency(tables);
+            for (TableMetadata table : tables) {
+              SqlTableMetadataExecutor.executeRebuildSearch(getJooq(), table);
+            }
+            for (TableMetadata table : tables) {
+              SqlTableMetadataExecutor.executeUpdateSearch(getJooq(), table);
+            }
+          });
+    }
+  }
+
+  /**
+   * Stops receiving metadata changes of other servers, e.g. when the session using this instance
+   * ends. The shared listener stops with the last instance of the data source.
+   */
+  public void close() {
+    metadataCache.unregister(this);
+  }
+
   @Override
   public void setListener(DatabaseListener listener) {
     this.listener = listener;
@@ -160,13 +218,17 @@ public class SqlDatabase implements Database {
 
   @Override
   public SqlSchema getSchema(String name) {
-    if (schemaCache.containsKey(name)) {
+    // the cache holds what the default user can see
+    boolean cached = isDefaultUser();
+    if (cached && schemaCache.containsKey(name)) {
       return new SqlSchema(this, schemaCache.get(name));
     } else {
       SqlSchemaMetadata metadata = new SqlSchemaMetadata(this, name);
       if (metadata.exists()) {
         SqlSchema schema = new SqlSchema(this, metadata);
-        schemaCache.put(name, metadata); // cache
+        if (cached) {
+          schemaCache.put(name, metadata); // cache
+        }
         return schema;
       }
     }
@@ -195,26 +257,32 @@ public class SqlDatabase implements Database {
 
   @Override
   public Collection<String> getSchemaNames() {
-    if (this.schemaNames.isEmpty()) {
-      this.schemaNames = MetadataUtils.loadSchemaNames(this);
+    if (!isDefaultUser()) {
+      return MetadataUtils.loadSchemaNames(this);
+    }
+    Collection<String> names = this.schemaNames;
+    if (names.isEmpty()) {
+      names = MetadataUtils.loadSchemaNames(this);
+      this.schemaNames = names;
     }
-    return this.schemaNames;
+    return names;
   }
 
   @Override
   public void addUser(String user) {
     if (hasUser(user)) return; // idempotent
     long start = System.currentTimeMillis();
-    // need elevated privileges, so not as active user
-    String currentUser = getActiveUser();
-    try {
-      clearActiveUser();
-      tx(d -> executeCreateUser(getJooq(), user));
-    } finally {
-      if (currentUser != null) {
-        setActiveUser(currentUser);
-      }
-    }
+    tx(
+        d -> {
+          // need elevated privileges, so not as active user. Within a transaction this only
+          // affects the transaction's connection, not other requests using this database
+          String currentUser = getActiveUser();
+          clearActiveUser();
+          executeCreateUser(getJooq(), user);
+          if (currentUser != null) {
+            setActiveUser(currentUser);
+          }
+        });
     log(start, "created user " + user);
   }
 
@@ -238,8 +306,8 @@ public class SqlDatabase implements Database {
 
   @Override
   public boolean hasUser(String user) {
-    return !jooq.fetch(
-            "SELECT rolname FROM pg_catalog.pg_roles WHERE rolname = {0}", MG_USER_PREFIX + user)
+    return !getJooq()
+        .fetch("SELECT rolname FROM pg_catalog.pg_roles WHERE rolname = {0}", MG_USER_PREFIX + user)
         .isEmpty();
   }
 
@@ -257,7 +325,7 @@ public class SqlDatabase implements Database {
     if (!hasUser(user))
       throw new MolgenisException(
           "Remove user failed: User with name '" + user + "' doesn't exist");
-    tx(d -> jooq.execute("DROP ROLE {0}", name(MG_USER_PREFIX + user)));
+    tx(d -> getJooq().execute("DROP ROLE {0}", name(MG_USER_PREFIX + user)));
     log(start, "removed user " + user);
   }
 
@@ -274,64 +342,109 @@ public class SqlDatabase implements Database {
     log(start, "granted create schema to user " + user);
   }
 
+  /**
+   * Sets the active user for the current thread only. Within a transaction it only affects the
+   * connection of that transaction. Outside transactions other threads, e.g. concurrent requests
+   * sharing this instance, keep using their own user or the default user.
+   */
   @Override
   public void setActiveUser(String username) {
-    if (inTx) {
-      try {
-        jooq.execute("SET SESSION AUTHORIZATION {0}", name(MG_USER_PREFIX + username));
-      } catch (DataAccessException dae) {
-        throw new SqlMolgenisException("Set active user failed", dae);
+    TransactionContext context = transactionContext.get();
+    if (context != null) {
+      if (!Objects.equals(username, context.activeUser)) {
+        try {
+          context.jooq.execute("SET SESSION AUTHORIZATION {0}", name(MG_USER_PREFIX + username));
+        } catch (DataAccessException dae) {
+          throw new SqlMolgenisException("Set active user failed", dae);
+        }
+        context.activeUser = username;
       }
     } else {
-      clearCache();
-      this.connectionProvider.setActiveUser(username);
+      threadUser.set(new ActiveUser(username));
     }
     listener.userChanged();
   }
 
   @Override
   public String getActiveUser() {
-    String user = jooq.fetchOne("SELECT SESSION_USER").get(0, String.class);
-    if (user.contains(MG_USER_PREFIX)) return user.substring(MG_USER_PREFIX.length());
-    return null;
+    // kept in java so we don't need a 'SELECT SESSION_USER' round trip
+    TransactionContext context = transactionContext.get();
+    if (context != null) {
+      return context.activeUser;
+    }
+    ActiveUser user = threadUser.get();
+    return user != null ? user.name : defaultUser;
   }
 
   @Override
   public void clearActiveUser() {
-    if (inTx) {
+    TransactionContext context = transactionContext.get();
+    if (context != null) {
       // then we don't use the connection provider
-      try {
-        jooq.execute("RESET SESSION AUTHORIZATION");
-      } catch (DataAccessException dae) {
-        throw new SqlMolgenisException("Clear active user failed", dae);
+      if (context.activeUser != null) {
+        try {
+          context.jooq.execute("RESET SESSION AUTHORIZATION");
+        } catch (DataAccessException dae) {
+          throw new SqlMolgenisException("Clear active user failed", dae);
+        }
+        context.activeUser = null;
       }
     } else {
-      this.connectionProvider.clearActiveUser();
+      threadUser.set(new ActiveUser(null));
     }
   }
 
+  /**
+   * Sets the user of all threads that did not set their own active user, e.g. the user of the web
+   * session using this instance. Also reverts the active user of the current thread to it.
+   */
+  public void setDefaultUser(String username) {
+    this.defaultUser = username;
+    threadUser.remove();
+    clearCache();
+    listener.userChanged();
+  }
+
+  /**
+   * Reverts the active user of the current thread to the default user, e.g. at the end of a request
+   * so the next request served by this thread doesn't inherit it.
+   */
+  public void resetActiveUser() {
+    threadUser.remove();
+  }
+
+  private boolean isDefaultUser() {
+    return Objects.equals(getActiveUser(), defaultUser);
+  }
+
   @Override
-  public synchronized void tx(Transaction transaction) {
-    if (inTx) {
+  public void tx(Transaction transaction) {
+    if (inTx()) {
       // we do not nest transactions
       transaction.run(this);
     } else {
-      // createColumn independent merge of database with transaction connection
-      DSLContext originalContext = jooq;
+      // bind the transaction connection to this thread only, other threads are not affected
+      String user = getActiveUser();
+      TransactionContext context = new TransactionContext(user);
       try (Connection conn = source.getConnection()) {
-        this.inTx = true;
-        DSL.using(conn, SQLDialect.POSTGRES)
-            .transaction(
-                config -> {
-                  DSLContext ctx = DSL.using(config);
-                  ctx.execute("SET CONSTRAINTS ALL DEFERRED");
-                  this.jooq = ctx;
-                  if (connectionProvider.getActiveUser() != null) {
-                    this.setActiveUser(connectionProvider.getActiveUser());
-                  }
-                  transaction.run(this);
-                  this.clearActiveUser();
-                });
+        // before the transaction starts, so the role of the pooled connection stays known
+        SqlUserAwareConnectionProvider.switchRole(conn, user);
+        try {
+          DSL.using(conn, SQLDialect.POSTGRES)
+              .transaction(
+                  config -> {
+                    context.jooq = DSL.using(config);
+                    context.jooq.execute("SET CONSTRAINTS ALL DEFERRED");
+                    transactionContext.set(context);
+                    transaction.run(this);
+                  });
+        } finally {
+          if (!Objects.equals(user, context.activeUser)) {
+            // changed within the transaction, role depends on commit or rollback
+            SqlUserAwareConnectionProvider.forgetRole(conn);
+          }
+          SqlUserAwareConnectionProvider.resetRole(conn);
+        }
       } catch (MolgenisException me) {
         throw me;
       } catch (DataAccessException dae) {
@@ -339,8 +452,7 @@ public class SqlDatabase implements Database {
       } catch (SQLException e) {
         throw new MolgenisException("Transaction failed", e);
       } finally {
-        this.inTx = false;
-        jooq = originalContext;
+        transactionContext.remove();
         listener.afterCommit();
       }
     }
@@ -348,17 +460,47 @@ public class SqlDatabase implements Database {
 
   @Override
   public boolean inTx() {
-    return inTx;
+    return transactionContext.get() != null;
   }
 
   @Override
   public void clearCache() {
     this.schemaCache.clear();
-    this.schemaNames.clear();
+    // replace instead of clear, other threads might be iterating the names
+    this.schemaNames = new ArrayList<>();
+  }
+
+  /** clear cache of one schema, e.g. when changed by another server */
+  void clearCache(String schemaName) {
+    this.schemaCache.remove(schemaName);
+    this.schemaNames = new ArrayList<>();
+  }
+
+  MetadataCache getMetadataCache() {
+    return metadataCache;
   }
 
   protected DSLContext getJooq() {
-    return jooq;
+    TransactionContext context = transactionContext.get();
+    return context != null ? context.jooq : jooq;
+  }
+
+  /** Active user of a thread, null name means the login role */
+  private static class ActiveUser {
+    private final String name;
+
+    private ActiveUser(String name) {
+      this.name = name;
+    }
+  }
+
+  private static class TransactionContext {
+    private DSLContext jooq;
+    private String activeUser;
+
+    private TransactionContext(String activeUser) {
+      this.activeUser = activeUser;
+    }
   }
 
   @Override
@@ -2,7 +2,9 @@ package org.molgenis.emx2.sql;
 
 import static org.jooq.impl.DSL.*;
 import static org.molgenis.emx2.ColumnType.*;
+import static org.molgenis.emx2.Constants.CURSOR;
 import static org.molgenis.emx2.Constants.MG_TABLECLASS;
+import static org.molgenis.emx2.Constants.SEARCH_RANK;
 import static org.molgenis.emx2.Constants.TEXT_SEARCH_COLUMN_NAME;
 import static org.molgenis.emx2.Operator.*;
 import static org.molgenis.emx2.Order.ASC;
@@ -11,12 +13,20 @@ import static org.molgenis.emx2.sql.SqlColumnExecutor.getJoinTableName;
 import static org.molgenis.emx2.sql.SqlTableMetadataExecutor.searchColumnName;
 import static org.molgenis.emx2.utils.TypeUtils.*;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.jooq.*;
 import org.jooq.Table;
 import org.jooq.conf.ParamType;
@@ -27,6 +37,8 @@ import org.molgenis.emx2.*;
 import org.molgenis.emx2.Operator;
 import org.molgenis.emx2.Row;
 import org.molgenis.emx2.utils.TypeUtils;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,12 +55,17 @@ public class SqlQuery extends QueryBean {
   private static final String JSON_AGG_SQL = "json_agg(item)";
   private static final String ROW_TO_JSON_SQL = "row_to_json(item)";
   private static final String ITEM = "item";
+  // same as TypeUtils.toString for arrays: comma separated, quoted if value contains comma
+  private static final String CSV_ARRAY_SQL =
+      "case when {0} is null then null else array_to_string(array(select case when e like '%,%'"
+          + " then '\"' || e || '\"' else e end from unnest({0}::text[]) e), ',', '') end";
   private static final String OPERATOR_NOT_SUPPORTED_ERROR_MESSAGE =
       "Operator %s is not support for column '%s'";
   private static final String BETWEEN_ERROR_MESSAGE =
       "Operator BETWEEEN a AND b expects even number of parameters to define each pair of a,b. Found: %s";
 
   private static final Logger logger = LoggerFactory.getLogger(SqlQuery.class);
+  private static final ObjectMapper cursorMapper = new ObjectMapper();
 
   private SqlSchemaMetadata schema;
 
@@ -65,6 +82,130 @@ public class SqlQuery extends QueryBean {
 
   @Override
   public List<Row> retrieveRows() {
+    SelectConnectByStep<org.jooq.Record> query = rowsQuery();
+
+    // execute
+    try {
+      List<Row> result = new ArrayList<>();
+      if (logger.isInfoEnabled()) {
+        logger.info(query.getSQL(ParamType.INLINED));
+      }
+      Result<org.jooq.Record> fetch = query.fetch();
+      for (org.jooq.Record r : fetch) {
+        result.add(new SqlRow(r));
+      }
+      return result;
+    } catch (DataAccessException | SQLException e) {
+      throw new MolgenisException(QUERY_FAILED, e);
+    }
+  }
+
+  /**
+   * Uses jooq fetchLazy so rows are fetched from a server side cursor in batches of fetchSize. This
+   * requires a transaction, so if not already in one a read-only transaction is started that ends
+   * when the stream is closed.
+   */
+  @Override
+  public Stream<Row> retrieveRowStream() {
+    SelectConnectByStep<org.jooq.Record> query = rowsQuery();
+    if (logger.isInfoEnabled()) {
+      logger.info(query.getSQL(ParamType.INLINED));
+    }
+    ConnectionProvider provider =
+        schema
+            .getTableMetadata(getSelect().getColumn())
+            .getJooq()
+            .configuration()
+            .connectionProvider();
+    Connection connection = provider.acquire();
+    try {
+      boolean autoCommit = connection.getAutoCommit();
+      if (autoCommit) {
+        connection.setAutoCommit(false);
+        connection.setReadOnly(true);
+      }
+      Cursor<org.jooq.Record> cursor =
+          DSL.using(connection, SQLDialect.POSTGRES)
+              .fetchLazy(((ResultQuery<org.jooq.Record>) query).fetchSize(getFetchSize()));
+      return cursor.stream()
+          .map(SqlQuery::toSqlRow)
+          .onClose(() -> closeRowStream(provider, connection, cursor, autoCommit));
+    } catch (Exception e) {
+      provider.release(connection);
+      throw new MolgenisException(QUERY_FAILED, e);
+    }
+  }
+
+  private static Row toSqlRow(org.jooq.Record record) {
+    try {
+      return new SqlRow(record);
+    } catch (SQLException e) {
+      throw new MolgenisException(QUERY_FAILED, e);
+    }
+  }
+
+  private static void closeRowStream(
+      ConnectionProvider provider,
+      Connection connection,
+      Cursor<org.jooq.Record> cursor,
+      boolean autoCommit) {
+    try {
+      cursor.close();
+      if (autoCommit) {
+        connection.commit();
+        connection.setReadOnly(false);
+        connection.setAutoCommit(true);
+      }
+    } catch (SQLException e) {
+      throw new MolgenisException(QUERY_FAILED, e);
+    } finally {
+      provider.release(connection);
+    }
+  }
+
+  /**
+   * Uses postgresql 'COPY ... TO STDOUT' so rows are streamed from the server into the outputStream
+   * without being loaded in memory. Values are formatted same as SqlRow.getString, i.e. arrays as
+   * comma separated lists, so the result can be imported again.
+   */
+  @Override
+  public void retrieveCSV(OutputStream outputStream, Character separator) {
+    if (separator == '"' || separator == '\'' || separator == '\n') {
+      throw new MolgenisException("Query failed: separator '" + separator + "' not supported");
+    }
+    SelectConnectByStep<org.jooq.Record> query = rowsQuery();
+    List<Field<?>> fields = new ArrayList<>();
+    for (Field<?> field : query.getSelect()) {
+      Field<?> itemField = field(name(ITEM, field.getName()));
+      if (field.getDataType().isArray()) {
+        fields.add(field(CSV_ARRAY_SQL, String.class, itemField).as(field.getName()));
+      } else {
+        fields.add(itemField.cast(String.class).as(field.getName()));
+      }
+    }
+    String sql =
+        "COPY ("
+            + DSL.select(fields).from(query.asTable(ITEM)).getSQL(ParamType.INLINED)
+            + ") TO STDOUT (FORMAT CSV, HEADER, DELIMITER '"
+            + separator
+            + "')";
+    if (logger.isInfoEnabled()) {
+      logger.info(sql);
+    }
+    schema
+        .getTableMetadata(getSelect().getColumn())
+        .getJooq()
+        .connection(
+            connection -> {
+              try {
+                new CopyManager(connection.unwrap(BaseConnection.class)).copyOut(sql, outputStream);
+              } catch (IOException e) {
+                throw new MolgenisException(QUERY_FAILED, e);
+              }
+            });
+  }
+
+  private SelectConnectByStep<org.jooq.Record> rowsQuery() {
     SelectColumn select = getSelect();
     Filter filter = getFilter();
     String[] searchTerms = getSearchTerms();
@@ -79,13 +220,13 @@ public class SqlQuery extends QueryBean {
     }
     String tableAlias = "root-" + table.getTableName();
 
-    // if empty selection, we will add the default selection here, excl File and Refback
+    // if empty selection, we will add the default selection here, excl File, Refback and Constant
     if (select == null || select.getColumNames().isEmpty()) {
       for (Column c : table.getColumns()) {
         // currently we don't download refBack (good) and files (that is bad)
         if (FILE.equals(c.getColumnType())) {
           select.select(c.getName());
-        } else if (!REFBACK.equals(c.getColumnType())) {
+        } else if (!REFBACK.equals(c.getColumnType()) && !CONSTANT.equals(c.getColumnType())) {
           if (c.isReference()) {
             for (Reference ref : c.getReferences()) {
               select.select(ref.getName());
@@ -110,23 +251,13 @@ public class SqlQuery extends QueryBean {
 
     // where
     Condition condition = whereConditions(table, tableAlias, filter, searchTerms);
-    SelectConnectByStep<org.jooq.Record> where = condition != null ? from.where(condition) : from;
-    SelectConnectByStep<org.jooq.Record> query = limitOffsetOrderBy(select, where);
-
-    // execute
-    try {
-      List<Row> result = new ArrayList<>();
-      if (logger.isInfoEnabled()) {
-        logger.info(query.getSQL(ParamType.INLINED));
-      }
-      Result<org.jooq.Record> fetch = query.fetch();
-      for (org.jooq.Record r : fetch) {
-        result.add(new SqlRow(r));
-      }
-      return result;
-    } catch (DataAccessException | SQLException e) {
-      throw new MolgenisException(QUERY_FAILED, e);
+    Condition after = afterCondition(table, tableAlias, select);
+    if (after != null) {
+      condition = condition != null ? condition.and(after) : after;
     }
+    SelectConnectByStep<org.jooq.Record> where = condition != null ? from.where(condition) : from;
+    return limitOffsetOrderBy(
+        table, tableAlias, select, where, searchRankField(table, tableAlias, searchTerms));
   }
 
   // todo: allow query expansion accross tables?
@@ -135,6 +266,12 @@ public class SqlQuery extends QueryBean {
 
     List<Field<?>> fields = new ArrayList<>();
     for (SelectColumn select : selection.getSubselect()) {
+      if (CURSOR.equals(select.getColumn())) {
+        fields.add(
+            cursorField(table, tableAlias, selection)
+                .as(prefix.equals("") ? CURSOR : prefix + "-" + CURSOR));
+        continue;
+      }
       Column column = isValidColumn(table, select.getColumn());
       String columnAlias = prefix.equals("") ? column.getName() : prefix + "-" + column.getName();
       if (FILE.equals(column.getColumnType())) {
@@ -275,9 +412,10 @@ public class SqlQuery extends QueryBean {
           jsonSubselect(table, null, table.getTableName(), select, getFilter(), getSearchTerms()));
     }
 
-    // asemble final query
+    // asemble final query, without null fields so it can be copied into graphql responses as is
     SelectJoinStep<Record1<Object>> query =
-        sql.select(field(ROW_TO_JSON_SQL)).from(table(sql.select(fields)).as(ITEM));
+        sql.select(field("json_strip_nulls(" + ROW_TO_JSON_SQL + ")"))
+            .from(table(sql.select(fields)).as(ITEM));
 
     long start = System.currentTimeMillis();
     String result = query.fetchOne().get(0, String.class);
@@ -307,11 +445,16 @@ public class SqlQuery extends QueryBean {
     List<Condition> conditions = new ArrayList<>();
     Select<org.jooq.Record> filterQuery =
         limitOffsetOrderBy(
-            select, jsonFilterQuery(table, column, tableAlias, subAlias, filters, searchTerms));
+            table,
+            null,
+            select,
+            jsonFilterQuery(table, column, tableAlias, subAlias, select, filters, searchTerms),
+            searchRankField(table, null, searchTerms));
     if (filters != null
         || searchTerms.length > 0
         || select.getLimit() > 0
-        || select.getOffset() > 0) {
+        || select.getOffset() > 0
+        || select.getAfter() != null) {
       List<Field> pkeyFields = table.getPrimaryKeyFields();
       if (pkeyFields.size() == 0) throw new MolgenisException("primary key not set");
       conditions.add(row(pkeyFields).in(filterQuery));
@@ -326,7 +469,10 @@ public class SqlQuery extends QueryBean {
     String agg =
         column != null && REF.equals(column.getColumnType()) ? ROW_TO_JSON_SQL : JSON_AGG_SQL;
 
-    return field(jooq.select(field(agg)).from(orderBy(select, from).asTable(ITEM)))
+    Field<?> searchRank = searchRankField(table, subAlias, searchTerms);
+    return field(
+            jooq.select(field(agg))
+                .from(orderBy(table, subAlias, select, from, searchRank).asTable(ITEM)))
         .as(select.getColumn());
   }
 
@@ -337,6 +483,18 @@ public class SqlQuery extends QueryBean {
       String subAlias,
       Filter filters,
       String[] searchTerms) {
+    return jsonFilterQuery(table, column, tableAlias, subAlias, null, filters, searchTerms);
+  }
+
+  /** as above, also selecting only rows after the cursor of select, if any */
+  private static SelectConditionStep<org.jooq.Record> jsonFilterQuery(
+      SqlTableMetadata table,
+      Column column,
+      String tableAlias,
+      String subAlias,
+      SelectColumn select,
+      Filter filters,
+      String[] searchTerms) {
 
     List<Condition> conditions = new ArrayList<>();
     if (filters != null) {
@@ -346,6 +504,10 @@ public class SqlQuery extends QueryBean {
     if (searchTerms.length > 0) {
       conditions.add(jsonSearchConditions(table, searchTerms));
     }
+    Condition after = afterCondition(table, null, select);
+    if (after != null) {
+      conditions.add(after);
+    }
 
     // create the subquery
     if (!conditions.isEmpty()) {
@@ -478,19 +640,12 @@ public class SqlQuery extends QueryBean {
   }
 
   private static Condition jsonSearchConditions(SqlTableMetadata table, String[] searchTerms) {
-    // create search
+    // create search, search column includes the text of inherited tables
     List<Condition> search = new ArrayList<>();
     for (String term : searchTerms) {
       search.add(
           field(name(table.getTableName(), searchColumnName(table.getTableName())))
               .likeIgnoreCase("%" + term + "%"));
-      TableMetadata parent = table.getInheritedTable();
-      while (parent != null) {
-        search.add(
-            field(name(parent.getTableName(), searchColumnName(parent.getTableName())))
-                .likeIgnoreCase("%" + term + "%"));
-        parent = parent.getInheritedTable();
-      }
     }
     return or(search);
   }
@@ -510,6 +665,10 @@ public class SqlQuery extends QueryBean {
     }
 
     for (SelectColumn select : selection.getSubselect()) {
+      if (CURSOR.equals(select.getColumn())) {
+        fields.add(cursorField(table, tableAlias, selection).as(CURSOR));
+        continue;
+      }
       Column column =
           select.getColumn().endsWith("_agg")
               ? isValidColumn(table, select.getColumn().replace("_agg", ""))
@@ -823,6 +982,9 @@ public class SqlQuery extends QueryBean {
     // add missing selection joins, only used for row based queries
     if (selection != null) {
       for (SelectColumn select : selection.getSubselect()) {
+        if (CURSOR.equals(select.getColumn())) {
+          continue; // computed from the selected row, no join needed
+        }
         // then do same as above
         Column column = isValidColumn(table, select.getColumn());
         if (column.isReference()) {
@@ -1257,46 +1419,215 @@ public class SqlQuery extends QueryBean {
 
   private static Condition whereConditionSearch(
       TableMetadata table, String tableAlias, String[] searchTerms) {
-    List<Condition> searchConditions = new ArrayList<>();
-    while (table != null) {
-      List<Condition> subConditions = new ArrayList<>();
-      // will get inherit tables too
-      for (String term : searchTerms) {
-        for (String subTerm : term.split(" ")) {
-          subTerm = subTerm.trim();
-          Field<Object> field = field(name(tableAlias, searchColumnName(table.getTableName())));
-          // short terms with 'like', longer with trigram
-          subConditions.add(field.likeIgnoreCase("%" + subTerm + "%"));
-        }
+    // search column includes the text of inherited tables
+    List<Condition> subConditions = new ArrayList<>();
+    for (String term : searchTerms) {
+      for (String subTerm : term.split(" ")) {
+        subTerm = subTerm.trim();
+        Field<Object> field = field(name(tableAlias, searchColumnName(table.getTableName())));
+        // short terms with 'like', longer with trigram
+        subConditions.add(field.likeIgnoreCase("%" + subTerm + "%"));
       }
-      table = table.getInheritedTable();
-      if (!subConditions.isEmpty()) {
-        searchConditions.add(and(subConditions));
+    }
+    return subConditions.isEmpty() ? null : and(subConditions);
+  }
+
+  /**
+   * Rank of a row for the search terms, being the summed trigram word similarity of the terms with
+   * the search column. If tableAlias is null the search column is qualified by its table name, like
+   * in the json filter queries.
+   */
+  private static Field<?> searchRankField(
+      TableMetadata table, String tableAlias, String[] searchTerms) {
+    if (searchTerms.length == 0) {
+      return null;
+    }
+    Field<Object> searchColumn =
+        field(
+            name(
+                tableAlias != null ? tableAlias : table.getTableName(),
+                searchColumnName(table.getTableName())));
+    Field<Double> rank = null;
+    for (String term : searchTerms) {
+      for (String subTerm : term.split(" ")) {
+        Field<Double> similarity =
+            field(
+                "word_similarity({0}, coalesce({1}, ''))",
+                Double.class, val(subTerm.trim()), searchColumn);
+        rank = rank == null ? similarity : rank.plus(similarity);
       }
     }
-    return searchConditions.isEmpty() ? null : or(searchConditions);
+    return rank;
   }
 
   private static SelectJoinStep<org.jooq.Record> limitOffsetOrderBy(
-      SelectColumn select, SelectConnectByStep<org.jooq.Record> query) {
-    query = orderBy(select, (SelectJoinStep) query);
+      TableMetadata table,
+      String tableAlias,
+      SelectColumn select,
+      SelectConnectByStep<org.jooq.Record> query,
+      Field<?> searchRank) {
+    query = orderBy(table, tableAlias, select, (SelectJoinStep) query, searchRank);
     if (select.getLimit() > 0) query = (SelectConditionStep) query.limit(select.getLimit());
     if (select.getOffset() > 0) query = (SelectConditionStep) query.offset(select.getOffset());
     return (SelectJoinStep<org.jooq.Record>) query;
   }
 
+  /**
+   * Orders by the order by columns and, when paging, then by the primary key so pages don't overlap
+   * or skip rows with equal values. If tableAlias is null the primary key is not qualified.
+   */
   private static SelectJoinStep<org.jooq.Record> orderBy(
-      SelectColumn select, SelectJoinStep<org.jooq.Record> query) {
+      TableMetadata table,
+      String tableAlias,
+      SelectColumn select,
+      SelectJoinStep<org.jooq.Record> query,
+      Field<?> searchRank) {
     for (Map.Entry<String, Order> col : select.getOrderBy().entrySet()) {
-      if (ASC.equals(col.getValue())) {
+      if (SEARCH_RANK.equals(col.getKey())) {
+        // without search terms there is nothing to rank
+        if (searchRank != null) {
+          query =
+              (SelectJoinStep<org.jooq.Record>)
+                  query.orderBy(ASC.equals(col.getValue()) ? searchRank.asc() : searchRank.desc());
+        }
+      } else if (ASC.equals(col.getValue())) {
         query = (SelectJoinStep<org.jooq.Record>) query.orderBy(field(name(col.getKey())).asc());
       } else {
         query = (SelectJoinStep<org.jooq.Record>) query.orderBy(field(name(col.getKey())).desc());
       }
     }
+    if (select.getLimit() > 0 || select.getOffset() > 0 || select.getAfter() != null) {
+      for (String key : primaryKeyNames(table)) {
+        if (!select.getOrderBy().containsKey(key)) {
+          query = (SelectJoinStep<org.jooq.Record>) query.orderBy(keyField(tableAlias, key).asc());
+        }
+      }
+    }
     return query;
   }
 
+  /** names of the primary key fields, i.e. with references replaced by their columns */
+  private static List<String> primaryKeyNames(TableMetadata table) {
+    List<String> names = new ArrayList<>();
+    for (Column key : table.getPrimaryKeyColumns()) {
+      if (key.isReference()) {
+        for (Reference ref : key.getReferences()) {
+          names.add(ref.getName());
+        }
+      } else {
+        names.add(key.getName());
+      }
+    }
+    return names;
+  }
+
+  private static Field<Object> keyField(String tableAlias, String columnName) {
+    return tableAlias != null ? field(name(tableAlias, columnName)) : field(name(columnName));
+  }
+
+  /**
+   * The columns that define the position of a row for keyset pagination: the order by columns,
+   * followed by the primary key so the position is unique.
+   */
+  private static Map<String, Order> keysetOrder(TableMetadata table, SelectColumn select) {
+    Map<String, Order> order = new LinkedHashMap<>(select.getOrderBy());
+    if (order.containsKey(SEARCH_RANK)) {
+      throw new MolgenisException(
+          "Query failed: cursor cannot be used when ordering by " + SEARCH_RANK);
+    }
+    for (String key : primaryKeyNames(table)) {
+      order.putIfAbsent(key, ASC);
+    }
+    return order;
+  }
+
+  /**
+   * Cursor of a row, being a json array of its keyset values as text, so values are passed back
+   * without loss of precision and postgres can cast them to the column type again.
+   */
+  private static Field<String> cursorField(
+      TableMetadata table, String tableAlias, SelectColumn select) {
+    List<QueryPart> keys = new ArrayList<>();
+    List<String> args = new ArrayList<>();
+    for (String key : keysetOrder(table, select).keySet()) {
+      args.add("{" + keys.size() + "}::text");
+      keys.add(keyField(tableAlias, key));
+    }
+    return field(
+        "jsonb_build_array(" + String.join(", ", args) + ")::text",
+        String.class,
+        keys.toArray(new QueryPart[0]));
+  }
+
+  /**
+   * Condition for rows that come after the cursor in the order of the select. Uses a row
+   * comparison if possible, so an index on the keyset can be used, otherwise compares column by
+   * column. Nulls sort last when ascending and first when descending, as in postgres.
+   */
+  private static Condition afterCondition(
+      TableMetadata table, String tableAlias, SelectColumn select) {
+    if (select == null || select.getAfter() == null) {
+      return null;
+    }
+    Map<String, Order> order = keysetOrder(table, select);
+    List<String> values = parseCursor(select.getAfter(), order.size());
+    List<String> primaryKey = primaryKeyNames(table);
+    Order first = order.values().iterator().next();
+
+    List<Field> keys = new ArrayList<>();
+    List<Field> cursor = new ArrayList<>();
+    boolean rowComparison = true;
+    for (Map.Entry<String, Order> key : order.entrySet()) {
+      Column column = isValidColumn(table, key.getKey());
+      DataType type = column.getJooqType();
+      String value = values.get(keys.size());
+      keys.add(field(keyField(tableAlias, key.getKey()).getQualifiedName(), type));
+      cursor.add(value != null ? cast(val(value), type) : null);
+      rowComparison =
+          rowComparison
+              && value != null
+              && first.equals(key.getValue())
+              && (column.isRequired() || primaryKey.contains(key.getKey()));
+    }
+    if (rowComparison) {
+      return ASC.equals(first)
+          ? row(keys.toArray(new Field[0])).gt(row(cursor.toArray(new Field[0])))
+          : row(keys.toArray(new Field[0])).lt(row(cursor.toArray(new Field[0])));
+    }
+
+    // from the last key backwards: key after value, or equal and rest of keys after their values
+    List<Order> directions = new ArrayList<>(order.values());
+    Condition condition = null;
+    for (int i = keys.size() - 1; i >= 0; i--) {
+      Field key = keys.get(i);
+      Field value = cursor.get(i);
+      Condition after;
+      if (ASC.equals(directions.get(i))) {
+        after = value != null ? key.gt(value).or(key.isNull()) : falseCondition();
+      } else {
+        after = value != null ? key.lt(value) : key.isNotNull();
+      }
+      if (condition != null) {
+        after = after.or((value != null ? key.eq(value) : key.isNull()).and(condition));
+      }
+      condition = after;
+    }
+    return condition;
+  }
+
+  private static List<String> parseCursor(String cursor, int size) {
+    try {
+      List<String> values = cursorMapper.readValue(cursor, new TypeReference<List<String>>() {});
+      if (values.size() != size) {
+        throw new MolgenisException(
+            "Query failed: cursor '" + cursor + "' doesn't match the order by of the query");
+      }
+      return values;
+    } catch (JsonProcessingException e) {
+      throw new MolgenisException("Query failed: cursor '" + cursor + "' is invalid", e);
+    }
+  }
+
   private static Column isValidColumn(TableMetadata table, String columnName) {
     // is search?
     if (TEXT_SEARCH_COLUMN_NAME.equals(columnName)) {
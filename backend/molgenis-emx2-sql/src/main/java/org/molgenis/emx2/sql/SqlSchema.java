@@ -91,10 +91,10 @@ public class SqlSchema implements Schema {
   }
 
   @Override
-  public synchronized List<String> getInheritedRolesForUser(String user) {
+  public List<String> getInheritedRolesForUser(String user) {
     if (user == null) return new ArrayList<>();
     user = user.trim();
-    // elevate permissions temporarily
+    // elevate permissions temporarily, only for the current thread
     String current = db.getActiveUser();
     db.clearActiveUser();
     try {
@@ -1,12 +1,20 @@
 package org.molgenis.emx2.sql;
 
+import static org.molgenis.emx2.ColumnType.REF_ARRAY;
+import static org.molgenis.emx2.sql.Constants.REF_ARRAY_CHECKS;
+import static org.molgenis.emx2.sql.SqlColumnRefArrayExecutor.createRefArrayConstraints;
+import static org.molgenis.emx2.sql.SqlColumnRefArrayExecutor.removeRefArrayConstraints;
 import static org.molgenis.emx2.sql.SqlTableMetadataExecutor.executeCreateTable;
 import static org.molgenis.emx2.utils.TableSort.sortTableByDependency;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import org.jooq.DSLContext;
+import org.molgenis.emx2.Column;
 import org.molgenis.emx2.SchemaMetadata;
 import org.molgenis.emx2.Setting;
 import org.molgenis.emx2.TableMetadata;
@@ -15,34 +23,48 @@ import org.slf4j.LoggerFactory;
 
 public class SqlSchemaMetadata extends SchemaMetadata {
   private static Logger logger = LoggerFactory.getLogger(SqlSchemaMetadata.class);
+  private volatile boolean exists;
 
   public SqlSchemaMetadata(SqlDatabase db, String name) {
-    super(db, MetadataUtils.loadSchemaMetadata(db.getJooq(), new SchemaMetadata(name)));
+    super(db, new SchemaMetadata(name));
     this.reload();
   }
 
-  public void reload() {
+  /**
+   * Loads the tables and settings into new maps and swaps these in, so threads reading this cached
+   * metadata meanwhile never see it half loaded.
+   */
+  public synchronized void reload() {
 
     if (logger.isInfoEnabled()) {
       logger.info("loading schema '{}' as user {}", getName(), getDatabase().getActiveUser());
     }
     long start = System.currentTimeMillis();
-    this.tables.clear();
-    this.settings.clear();
-    for (TableMetadata table : MetadataUtils.loadTables(getDatabase().getJooq(), this)) {
-      super.create(new SqlTableMetadata(this, table));
-    }
-    for (Setting setting : MetadataUtils.loadSettings(getDatabase().getJooq(), this)) {
-      super.setSetting(setting.getKey(), setting.getValue());
+    Map<String, TableMetadata> loadedTables = new LinkedHashMap<>();
+    Map<String, Setting> loadedSettings = new LinkedHashMap<>();
+    MetadataCache.Entry entry = getDatabase().getMetadataCache().load(getDatabase(), getName());
+    if (entry != null) {
+      for (TableMetadata table : entry.getTables()) {
+        SqlTableMetadata loaded = new SqlTableMetadata(this, table);
+        loaded.setSchema(this);
+        loadedTables.put(loaded.getTableName(), loaded);
+      }
+      for (Setting setting : entry.getSettings()) {
+        loadedSettings.put(setting.getKey(), new Setting(setting));
+      }
     }
+    this.tables = loadedTables;
+    this.settings = loadedSettings;
+    this.exists = entry != null;
     if (logger.isInfoEnabled()) {
       logger.info(
           "loading schema '{}' complete in {}ms", getName(), System.currentTimeMillis() - start);
     }
   }
 
+  /** if schema existed and was visible for the active user on last reload */
   public boolean exists() {
-    return MetadataUtils.schemaExists(getDatabase().getJooq(), this.getName());
+    return exists;
   }
 
   @Override
@@ -83,21 +105,48 @@ public class SqlSchemaMetadata extends SchemaMetadata {
 
   @Override
   public SqlSchemaMetadata setSettings(Collection<Setting> settings) {
+    String refArrayChecks = getSetting(REF_ARRAY_CHECKS);
     super.setSettings(settings);
     for (Setting setting : settings) {
       MetadataUtils.saveSetting(getDatabase().getJooq(), this, null, setting);
     }
+    updateRefArrayChecks(refArrayChecks);
     return this;
   }
 
   @Override
   public SqlSchemaMetadata setSetting(String key, String value) {
+    String refArrayChecks = getSetting(REF_ARRAY_CHECKS);
     MetadataUtils.saveSetting(getDatabase().getJooq(), this, null, new Setting(key, value));
     // clear caches
     this.settings.clear();
+    updateRefArrayChecks(refArrayChecks);
     return this;
   }
 
+  /** recreate ref_array constraints if changed between per row and per statement checks */
+  private void updateRefArrayChecks(String before) {
+    if (Objects.equals(before, getSetting(REF_ARRAY_CHECKS))) {
+      return;
+    }
+    long start = System.currentTimeMillis();
+    getDatabase()
+        .tx(
+            database -> {
+              for (TableMetadata table : getTables()) {
+                for (Column column : table.getStoredColumns()) {
+                  if (REF_ARRAY.equals(column.getColumnType())
+                      && (table.getInherit() == null
+                          || table.getInheritedTable().getColumn(column.getName()) == null)) {
+                    removeRefArrayConstraints(getJooq(), column);
+                    createRefArrayConstraints(getJooq(), column);
+                  }
+                }
+              }
+            });
+    log(start, "updated ref_array checks of");
+  }
+
   @Override
   public List<Setting> getSettings() {
     if (super.getSettings().size() == 0) {
@@ -108,10 +157,12 @@ public class SqlSchemaMetadata extends SchemaMetadata {
 
   @Override
   public void removeSetting(String key) {
+    String refArrayChecks = getSetting(REF_ARRAY_CHECKS);
     MetadataUtils.deleteSetting(getDatabase().getJooq(), this, null, new Setting(key, null));
     // clear caches
     this.settings.clear();
     super.removeSetting(key);
+    updateRefArrayChecks(refArrayChecks);
   }
 
   protected DSLContext getJooq() {
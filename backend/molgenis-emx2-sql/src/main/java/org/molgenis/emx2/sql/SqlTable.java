@@ -5,15 +5,18 @@ import static org.molgenis.emx2.ColumnType.*;
 import static org.molgenis.emx2.Constants.*;
 import static org.molgenis.emx2.MutationType.*;
 import static org.molgenis.emx2.sql.SqlDatabase.ADMIN;
-import static org.molgenis.emx2.sql.SqlTypeUtils.getTypedValue;
 
-import java.io.StringReader;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.jooq.*;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
 import org.molgenis.emx2.*;
 import org.molgenis.emx2.Query;
 import org.molgenis.emx2.Row;
@@ -24,6 +27,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 class SqlTable implements Table {
+  static final int BATCH_SIZE = 1000;
+  static final int COPY_BATCH_SIZE = 10000;
+  // postgresql allows at most 32767 bind variables per statement
+  static final int MAX_BIND_VARIABLES = 30000;
+  // files are read in chunks, so large files are never completely in memory
+  static final int FILE_CHUNK_SIZE = 1024 * 1024;
+  private static final String UPDATE_VALUES = "v";
   private SqlDatabase db;
   private SqlTableMetadata metadata;
   private static Logger logger = LoggerFactory.getLogger(SqlTable.class);
@@ -43,6 +53,58 @@ class SqlTable implements Table {
     return metadata;
   }
 
+  @Override
+  public void readFile(
+      String columnName, String fileId, long offset, long length, OutputStream out) {
+    Column column = getMetadata().getColumn(columnName);
+    if (column == null || !FILE.equals(column.getColumnType())) {
+      throw new MolgenisException(
+          "Read file failed: column '" + columnName + "' is not a file in table " + getName());
+    }
+    Field<byte[]> contents = field(name(column.getName() + "_contents"), SQLDataType.BLOB);
+    Field<String> id = field(name(column.getName()), SQLDataType.VARCHAR);
+    // find the row once, so each chunk is read via the primary key index
+    List<Field> keyFields = column.getTable().getPrimaryKeyFields();
+    Record key =
+        db.getJooq().select(keyFields).from(column.getJooqTable()).where(id.eq(fileId)).fetchOne();
+    if (key == null) {
+      throw new MolgenisException(
+          "Read file failed: file id '" + fileId + "' not found in table " + getName());
+    }
+    // each upload gets a new id, so also matching the id ensures all chunks are of the same file
+    Condition fileRow = row(keyFields).eq(key.intoArray()).and(id.eq(fileId));
+    // no transaction, so the connection is not held while writing to 'out', e.g. a slow client
+    long end = offset + length < 0 ? Long.MAX_VALUE : offset + length;
+    for (long position = offset; position < end; position += FILE_CHUNK_SIZE) {
+      int size = (int) Math.min(FILE_CHUNK_SIZE, end - position);
+      // substring is 1-based, and only reads the chunk when stored uncompressed
+      // (files are limited to integer size, see _size column)
+      Record1<byte[]> chunk =
+          db.getJooq()
+              .select(
+                  field(
+                      "substring({0} from {1} for {2})",
+                      SQLDataType.BLOB, contents, val((int) position + 1), val(size)))
+              .from(column.getJooqTable())
+              .where(fileRow)
+              .fetchOne();
+      if (chunk == null) {
+        throw new MolgenisException(
+            "Read file failed: file id '" + fileId + "' was changed while reading it");
+      }
+      byte[] bytes = chunk.value1() != null ? chunk.value1() : new byte[0];
+      try {
+        out.write(bytes);
+      } catch (IOException e) {
+        throw new MolgenisException("Read file failed: writing file '" + fileId + "'", e);
+      }
+      if (bytes.length < size) {
+        // end of file
+        break;
+      }
+    }
+  }
+
   public void copyOut(Writer writer) {
     db.getJooq()
         .connection(
@@ -67,48 +129,19 @@ class SqlTable implements Table {
             });
   }
 
-  public void copyIn(Iterable<Row> rows) {
-    db.getJooq()
-        .connection(
-            connection -> {
-              try {
-                CopyManager cm = new CopyManager(connection.unwrap(BaseConnection.class));
-
-                // must be batched
-                StringBuilder tmp = new StringBuilder();
-                tmp.append(
-                    this.getMetadata().getLocalColumnNames().stream()
-                            .map(c -> "\"" + c + "\"")
-                            .collect(Collectors.joining(","))
-                        + "\n");
-                for (Row row : rows) {
-                  StringBuilder line = new StringBuilder();
-                  for (Column c : this.getMetadata().getStoredColumns()) {
-                    if (!row.containsName(c.getName())) {
-                      line.append(",");
-                    } else {
-                      Object value = getTypedValue(row, c);
-                      line.append(value + ",");
-                    }
-                  }
-                  tmp.append(line.substring(0, line.length() - 1) + "\n");
-                }
-
-                String tableName =
-                    "\"" + getSchema().getMetadata().getName() + "\".\"" + getName() + "\"";
-
-                String columnNames =
-                    "("
-                        + this.getMetadata().getLocalColumnNames().stream()
-                            .map(c -> "\"" + c + "\"")
-                            .collect(Collectors.joining(","))
-                        + ")";
-                String sql = "COPY " + tableName + columnNames + " FROM STDIN (FORMAT CSV,HEADER )";
-                cm.copyIn(sql, new StringReader(tmp.toString()));
-              } catch (Exception e) {
-                throw new MolgenisException("copyOut failed: ", e);
-              }
-            });
+  /**
+   * Bulk insert using postgresql COPY. Rows are streamed to the server in batches of
+   * COPY_BATCH_SIZE so memory use doesn't grow with the number of rows. Subclass rows (via
+   * mg_tableclass) and audit columns are handled the same as in insert. Unlike save, existing keys
+   * will result in an error.
+   */
+  @Override
+  public int copyIn(Iterable<Row> rows) {
+    try {
+      return executeTransaction(rows, INSERT, true);
+    } catch (Exception e) {
+      throw new SqlMolgenisException("Copy into table '" + getName() + "' failed.", e);
+    }
   }
 
   @Override
@@ -181,12 +214,18 @@ class SqlTable implements Table {
   }
 
   private int executeTransaction(Iterable<Row> rows, MutationType transactionType) {
+    return executeTransaction(rows, transactionType, false);
+  }
+
+  private int executeTransaction(
+      Iterable<Row> rows, MutationType transactionType, boolean useCopy) {
     long start = System.currentTimeMillis();
     final AtomicInteger count = new AtomicInteger(0);
     final Map<String, List<Row>> subclassRows = new LinkedHashMap<>();
     final Map<String, Set<String>> columnsProvided = new LinkedHashMap<>();
 
     String tableClass = getMgTableClass(getMetadata());
+    int batchSize = useCopy ? COPY_BATCH_SIZE : BATCH_SIZE;
 
     // validate
     if (getMetadata().getPrimaryKeys().isEmpty())
@@ -248,11 +287,12 @@ class SqlTable implements Table {
               columnsProvided.put(subclassName, new LinkedHashSet<>(row.getColumnNames()));
             }
 
-            // execute batch if 1000 rows, or columns provided changes
+            // execute batch if batch size is reached, or columns provided changes
             if (columnsProvidedAreDifferent(columnsProvided.get(subclassName), row)
-                || subclassRows.get(subclassName).size() >= 1000) {
+                || subclassRows.get(subclassName).size() >= batchSize) {
               executeBatch(
                   transactionType,
+                  useCopy,
                   count,
                   subclassRows,
                   subclassName,
@@ -271,6 +311,7 @@ class SqlTable implements Table {
             if (batch.getValue().size() > 0) {
               executeBatch(
                   transactionType,
+                  useCopy,
                   count,
                   subclassRows,
                   batch.getKey(),
@@ -279,7 +320,11 @@ class SqlTable implements Table {
           }
         });
 
-    log(start, count, transactionType.name().toLowerCase() + "d (incl subclass if applicable)");
+    log(
+        start,
+        count,
+        (useCopy ? "copie" : transactionType.name().toLowerCase())
+            + "d (incl subclass if applicable)");
     return count.get();
   }
 
@@ -301,6 +346,7 @@ class SqlTable implements Table {
 
   private void executeBatch(
       MutationType transactionType,
+      boolean useCopy,
       AtomicInteger count,
       Map<String, List<Row>> subclassRows,
       String subclassName,
@@ -308,7 +354,9 @@ class SqlTable implements Table {
 
     // execute
     SqlTable table = (SqlTable) getSchema().getTable(subclassName.split("\\.")[1]);
-    if (UPDATE.equals(transactionType)) {
+    if (useCopy && INSERT.equals(transactionType)) {
+      count.set(count.get() + table.copyBatch(subclassRows.get(subclassName), columnsProvided));
+    } else if (UPDATE.equals(transactionType)) {
       count.set(count.get() + table.updateBatch(subclassRows.get(subclassName), columnsProvided));
     } else if (SAVE.equals(transactionType)) {
       count.set(
@@ -354,13 +402,15 @@ class SqlTable implements Table {
       user = ADMIN;
     }
     LocalDateTime now = LocalDateTime.now();
-    for (Row row : rows) {
+    List<Map<String, Object>> rowValues = SqlTypeUtils.getValuesAsMaps(rows, columns);
+    for (int i = 0; i < rows.size(); i++) {
+      Row row = rows.get(i);
       // when insert, we should include all columns, not only 'updateColumns'
       if (!row.isDraft()) {
         checkRequired(row, allColumns);
       }
       // get values
-      Map values = SqlTypeUtils.getValuesAsMap(row, columns);
+      Map<String, Object> values = rowValues.get(i);
       if (!inherit) {
         values.put(MG_INSERTEDBY, user);
         values.put(MG_INSERTEDON, now);
@@ -388,6 +438,59 @@ class SqlTable implements Table {
     return step.execute();
   }
 
+  private int copyBatch(List<Row> rows, Set<String> updateColumns) {
+    boolean inherit = getMetadata().getInherit() != null;
+    if (inherit) {
+      getInheritedTable().copyBatch(rows, updateColumns);
+    }
+
+    // get metadata
+    Set<Column> columns = getColumnsToBeUpdated(updateColumns);
+    List<Column> allColumns = getMetadata().getMutationColumns();
+    List<String> copyColumns = columns.stream().map(Column::getName).collect(Collectors.toList());
+    if (!inherit) {
+      copyColumns.add(MG_INSERTEDBY);
+      copyColumns.add(MG_INSERTEDON);
+      copyColumns.add(MG_UPDATEDBY);
+      copyColumns.add(MG_UPDATEDON);
+    }
+
+    String user = getSchema().getDatabase().getActiveUser();
+    if (user == null) {
+      user = ADMIN;
+    }
+    final String insertedBy = user;
+    LocalDateTime now = LocalDateTime.now();
+
+    return db.getJooq()
+        .connectionResult(
+            connection -> {
+              try (SqlCopyWriter writer =
+                  new SqlCopyWriter(
+                      connection, getMetadata().getSchemaName(), getName(), copyColumns)) {
+                List<Map<String, Object>> rowValues = SqlTypeUtils.getValuesAsMaps(rows, columns);
+                for (int i = 0; i < rows.size(); i++) {
+                  Row row = rows.get(i);
+                  // when insert, we should include all columns, not only 'updateColumns'
+                  if (!row.isDraft()) {
+                    checkRequired(row, allColumns);
+                  }
+                  Map<String, Object> values = rowValues.get(i);
+                  if (!inherit) {
+                    values.put(MG_INSERTEDBY, insertedBy);
+                    values.put(MG_INSERTEDON, now);
+                    values.put(MG_UPDATEDBY, insertedBy);
+                    values.put(MG_UPDATEDON, now);
+                  }
+                  writer.writeRow(values.values());
+                }
+                return (int) writer.endCopy();
+              } catch (IOException e) {
+                throw new MolgenisException("Copy into table '" + getName() + "' failed", e);
+              }
+            });
+  }
+
   private Set<Column> getColumnsToBeUpdated(Set<String> updateColumns) {
     return getMetadata().getMutationColumns().stream()
         .filter(
@@ -409,7 +512,76 @@ class SqlTable implements Table {
     }
 
     // get metadata
-    Set<Column> columns = getColumnsToBeUpdated(updateColumns);
+    List<Column> columns = new ArrayList<>(getColumnsToBeUpdated(updateColumns));
+    Map<Field, ColumnType> keyFields = getKeyFieldTypes();
+    if (keyFields.isEmpty()) {
+      return updateBatchUsingConditions(rows, columns, inherit);
+    }
+
+    // set audit fields
+    Map<Field<?>, Field<?>> set = new LinkedHashMap<>();
+    if (!inherit) {
+      String user = getSchema().getDatabase().getActiveUser();
+      set.put(field(name(MG_UPDATEDBY)), val(user != null ? user : ADMIN));
+      set.put(field(name(MG_UPDATEDON)), val(LocalDateTime.now()));
+    }
+
+    // update ... set col = v.vi ... from (values (..),(..)) as v(k0,..,v0,..) where key = v.ki
+    List<String> names = new ArrayList<>();
+    List<Condition> join = new ArrayList<>();
+    for (Field keyField : keyFields.keySet()) {
+      String alias = "k" + names.size();
+      names.add(alias);
+      join.add(keyField.eq(field(name(UPDATE_VALUES, alias))));
+    }
+    for (Column column : columns) {
+      String alias = "v" + names.size();
+      names.add(alias);
+      set.put(column.getJooqField(), field(name(UPDATE_VALUES, alias)));
+    }
+
+    // key values are unique within batch, last one wins like when updating one by one
+    Map<List<Object>, RowN> rowsByKey = new LinkedHashMap<>();
+    List<Map<String, Object>> allColumnValues = SqlTypeUtils.getValuesAsMaps(rows, columns);
+    for (int i = 0; i < rows.size(); i++) {
+      Row row = rows.get(i);
+      if (!row.isDraft()) {
+        checkRequired(row, columns);
+      }
+      List<Object> key = new ArrayList<>();
+      List<Field<?>> rowValues = new ArrayList<>();
+      for (Map.Entry<Field, ColumnType> keyField : keyFields.entrySet()) {
+        Object value = row.get(keyField.getKey().getName(), keyField.getValue());
+        key.add(value);
+        rowValues.add(cast(value, keyField.getKey().getDataType()));
+      }
+      Map<String, Object> columnValues = allColumnValues.get(i);
+      for (Column column : columns) {
+        rowValues.add(cast(columnValues.get(column.getName()), column.getJooqType()));
+      }
+      rowsByKey.put(key, row(rowValues));
+    }
+
+    // stay below the maximum number of bind variables of postgresql
+    int batchSize = Math.max(1, MAX_BIND_VARIABLES / names.size());
+    List<RowN> valueRows = new ArrayList<>(rowsByKey.values());
+    int count = 0;
+    for (int i = 0; i < valueRows.size(); i += batchSize) {
+      RowN[] batch =
+          valueRows.subList(i, Math.min(valueRows.size(), i + batchSize)).toArray(new RowN[0]);
+      count +=
+          db.getJooq()
+              .update(getJooqTable())
+              .set(set)
+              .from(values(batch).as(UPDATE_VALUES, names.toArray(new String[0])))
+              .where(join)
+              .execute();
+    }
+    return count;
+  }
+
+  /** update one statement per row, used when table has no primary key to join on */
+  private int updateBatchUsingConditions(List<Row> rows, List<Column> columns, boolean inherit) {
     List<Column> pkeyFields = getMetadata().getPrimaryKeyColumns();
 
     // create batch of updates
@@ -419,8 +591,10 @@ class SqlTable implements Table {
       user = ADMIN;
     }
     LocalDateTime now = LocalDateTime.now();
-    for (Row row : rows) {
-      Map values = SqlTypeUtils.getValuesAsMap(row, columns);
+    List<Map<String, Object>> rowValues = SqlTypeUtils.getValuesAsMaps(rows, columns);
+    for (int i = 0; i < rows.size(); i++) {
+      Row row = rows.get(i);
+      Map<String, Object> values = rowValues.get(i);
       if (!inherit) {
         values.put(MG_UPDATEDBY, user);
         values.put(MG_UPDATEDON, now);
@@ -521,9 +695,62 @@ class SqlTable implements Table {
       if (keyNames == null) {
         throw new MolgenisException("Delete on table " + getName() + " failed: no primary key set");
       }
-      Condition whereCondition = getWhereConditionForBatchDelete(rows);
-      db.getJooq().deleteFrom(getJooqTable()).where(whereCondition).execute();
+      if (getMetadata().getPrimaryKeys().isEmpty()
+          || getKeyFieldTypes().keySet().stream().anyMatch(f -> f.getDataType().isArray())) {
+        deleteBatchUsingConditions(rows);
+      } else {
+        deleteBatchUsingUnnest(rows);
+      }
+    }
+  }
+
+  /**
+   * Sends the keys as one typed array per key field and deletes using 'WHERE (key1,key2) IN (SELECT
+   * * FROM unnest(keys1,keys2))', so query size doesn't grow with the number of rows.
+   */
+  void deleteBatchUsingUnnest(Collection<Row> rows) {
+    Map<Field, ColumnType> keyFields = getKeyFieldTypes();
+    List<QueryPart> keyArrays = new ArrayList<>();
+    for (Map.Entry<Field, ColumnType> key : keyFields.entrySet()) {
+      Object[] values =
+          rows.stream().map(r -> r.get(key.getKey().getName(), key.getValue())).toArray();
+      keyArrays.add(val(values, key.getKey().getDataType().getArrayDataType()));
+    }
+    String unnest =
+        IntStream.range(0, keyArrays.size())
+            .mapToObj(i -> "{" + i + "}")
+            .collect(Collectors.joining(",", "unnest(", ")"));
+    db.getJooq()
+        .deleteFrom(getJooqTable())
+        .where(
+            row(keyFields.keySet())
+                .in(
+                    DSL.select(asterisk())
+                        .from(table(unnest, keyArrays.toArray(new QueryPart[0])))))
+        .execute();
+  }
+
+  /** delete using 'WHERE (key1=.. AND key2=..) OR (..)', used when keys cannot be unnested */
+  void deleteBatchUsingConditions(Collection<Row> rows) {
+    Condition whereCondition = getWhereConditionForBatchDelete(rows);
+    db.getJooq().deleteFrom(getJooqTable()).where(whereCondition).execute();
+  }
+
+  /** primary key fields with their type, with references of foreign keys expanded */
+  private Map<Field, ColumnType> getKeyFieldTypes() {
+    Map<Field, ColumnType> result = new LinkedHashMap<>();
+    for (Column key : getMetadata().getPrimaryKeyColumns()) {
+      if (REF.equals(key.getColumnType()) || REF_ARRAY.equals(key.getColumnType())) {
+        for (Reference ref : key.getReferences()) {
+          if (!ref.isOverlapping()) {
+            result.put(ref.getJooqField(), ref.getPrimitiveType());
+          }
+        }
+      } else if (!REFBACK.equals(key.getColumnType())) {
+        result.put(key.getJooqField(), key.getColumnType());
+      }
     }
+    return result;
   }
 
   private Condition getWhereConditionForBatchDelete(Collection<Row> rows) {
@@ -68,6 +68,8 @@ class SqlTableMetadata extends TableMetadata {
                       "added column '" + newColumn.getName() + "' to table " + getTableName());
                 }
               }
+              // now the new columns are part of the metadata
+              updateSearchIndexTriggerFunction(getJooq(), this, getTableName());
             });
     getDatabase().getListener().schemaChanged(getSchemaName());
     return this;
@@ -220,6 +222,9 @@ class SqlTableMetadata extends TableMetadata {
               // delete old column if name changed, then save any other metadata changes
               if (!oldColumn.getName().equals(newColumn.getName())) deleteColumn(jooq, oldColumn);
               saveColumnMetadata(jooq, newColumn);
+
+              // update search triggers, these refer to columns by name
+              updateSearchIndexTriggerFunction(jooq, this, getTableName());
             });
     getDatabase().getListener().schemaChanged(getSchemaName());
 
@@ -260,6 +265,7 @@ class SqlTableMetadata extends TableMetadata {
             dsl -> {
               SqlColumnExecutor.executeRemoveColumn(getJooq(), getColumn(name));
               super.columns.remove(name);
+              updateSearchIndexTriggerFunction(getJooq(), this, getTableName());
             });
     getDatabase().getListener().schemaChanged(getSchemaName());
     log(start, "removed column '" + name + "' from ");
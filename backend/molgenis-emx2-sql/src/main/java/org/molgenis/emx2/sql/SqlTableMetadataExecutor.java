@@ -7,8 +7,11 @@ import static org.molgenis.emx2.Constants.*;
 import static org.molgenis.emx2.sql.SqlColumnExecutor.*;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.jooq.DSLContext;
 import org.jooq.Field;
 import org.jooq.Name;
@@ -18,6 +21,8 @@ import org.jooq.impl.DSL;
 import org.molgenis.emx2.*;
 
 class SqlTableMetadataExecutor {
+  // column of the referenced table in a refLabel, e.g. ${name}
+  private static final Pattern REF_LABEL_COLUMN = Pattern.compile("\\$\\{([^.}]+)}");
 
   private SqlTableMetadataExecutor() {}
 
@@ -89,7 +94,10 @@ class SqlTableMetadataExecutor {
     dropSearchTrigger(jooq, table);
 
     // rename search column
-    jooq.alterTable(table.getJooqTable()).renameTo(newName + "search_vector_trigger");
+    jooq.alterTable(table.getJooqTable())
+        .renameColumn(name(searchColumnName(table.getTableName())))
+        .to(name(searchColumnName(newName)))
+        .execute();
 
     // rename table
     jooq.alterTable(table.getJooqTable()).renameTo(name(table.getSchemaName(), newName)).execute();
@@ -179,10 +187,13 @@ class SqlTableMetadataExecutor {
       // remove keys
       dropKeys(jooq, table);
 
-      // drop search trigger
+      // drop search trigger, and the triggers that propagate changes into the search column
       jooq.execute(
           "DROP FUNCTION IF EXISTS {0} CASCADE",
           name(table.getSchema().getName(), getSearchTriggerName(table.getTableName())));
+      jooq.execute(
+          "DROP FUNCTION IF EXISTS {0} CASCADE",
+          name(table.getSchema().getName(), getSearchPropagateName(table.getTableName())));
 
       // drop all triggers from all columns
       for (Column c : table.getStoredColumns()) {
@@ -201,13 +212,69 @@ class SqlTableMetadataExecutor {
     return SqlSchemaMetadataExecutor.getRolePrefix(table.getSchema().getName());
   }
 
+  /**
+   * (Re)creates the functions that maintain the search column of this table, and of the tables in
+   * this schema that include the labels of this table in their search column.
+   */
   static String updateSearchIndexTriggerFunction(
       DSLContext jooq, TableMetadata table, String tableName) {
+    String triggerfunction = createSearchFunctions(jooq, table, tableName);
+    for (TableMetadata other : table.getSchema().getTables()) {
+      if (!other.getTableName().equals(tableName) && refersTo(other, tableName)) {
+        createSearchFunctions(jooq, other, other.getTableName());
+      }
+    }
+    return triggerfunction;
+  }
+
+  /**
+   * Recreates the search functions of an existing table and the ref indexes these use, e.g. when
+   * these are generated differently after an upgrade.
+   */
+  static void executeRebuildSearch(DSLContext jooq, TableMetadata table) {
+    // tables renamed by older versions kept their old search column
+    jooq.execute(
+        "ALTER TABLE {0} ADD COLUMN IF NOT EXISTS {1} TEXT",
+        getJooqTable(table),
+        name(searchColumnName(table.getTableName())));
+    jooq.execute(
+        "CREATE INDEX IF NOT EXISTS {0} ON {1} USING GIN( {2} gin_trgm_ops)",
+        name(table.getTableName() + "_search_idx"),
+        getJooqTable(table),
+        name(searchColumnName(table.getTableName())));
+    createSearchFunctions(jooq, table, table.getTableName());
+    for (Column c : table.getStoredColumns()) {
+      if (REF.equals(c.getColumnType())) {
+        executeCreateRefIndex(jooq, c);
+      }
+    }
+  }
+
+  /**
+   * Recomputes the search column of all rows. Only the search trigger fires, other triggers such as
+   * those of refback columns are not affected by a reindex.
+   */
+  static void executeUpdateSearch(DSLContext jooq, TableMetadata table) {
+    Name searchColumnName = name(searchColumnName(table.getTableName()));
+    jooq.execute("ALTER TABLE {0} DISABLE TRIGGER USER", getJooqTable(table));
+    jooq.execute("ALTER TABLE {0} ENABLE TRIGGER {1}", getJooqTable(table), searchColumnName);
+    jooq.execute("UPDATE {0} SET {1} = NULL", getJooqTable(table), searchColumnName);
+    jooq.execute("ALTER TABLE {0} ENABLE TRIGGER USER", getJooqTable(table));
+  }
+
+  private static boolean refersTo(TableMetadata table, String tableName) {
+    for (Column c : table.getStoredColumns()) {
+      if ((REF.equals(c.getColumnType()) || REF_ARRAY.equals(c.getColumnType()))
+          && tableName.equals(c.getRefTableName())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String createSearchFunctions(
+      DSLContext jooq, TableMetadata table, String tableName) {
     // TODO should also join in REFBACK column to make them searchable as part of 'mew'
-    //  TODO and then also should trigger indexing on update for tables with a REF to me so trigger
-    // on ref
-    // change
-    // then?
 
     String triggerName = getSearchTriggerName(tableName);
     String triggerfunction =
@@ -223,12 +290,28 @@ class SqlTableMetadataExecutor {
             mgSearchVector.append(
                 String.format(" || coalesce(new.\"%s\"::text,'') || ' '", r.getName()));
           }
+          // add the labels of the referenced rows
+          String labels = searchLabelsOfReference(c);
+          if (labels != null) {
+            mgSearchVector.append(String.format(" || coalesce(%s,'') || ' '", labels));
+          }
         } else {
           mgSearchVector.append(
               String.format(" || coalesce(new.\"%s\"::text,'') || ' '", c.getName()));
         }
       }
     }
+    // include the search text of the inherited table, so searches only need this table
+    TableMetadata parent = table.getInheritedTable();
+    if (parent != null) {
+      mgSearchVector.append(
+          String.format(
+              " || coalesce((SELECT p.\"%s\" FROM \"%s\".\"%s\" p WHERE %s),'')",
+              searchColumnName(parent.getTableName()),
+              parent.getSchemaName(),
+              parent.getTableName(),
+              primaryKeyMatch(parent, "p", "new")));
+    }
 
     String functionBody =
         String.format(
@@ -244,9 +327,252 @@ class SqlTableMetadataExecutor {
     jooq.execute(
         "ALTER FUNCTION " + triggerfunction + " OWNER TO {0}",
         name(getRolePrefix(table) + Privileges.MANAGER.toString()));
+
+    createSearchPropagation(jooq, table, tableName);
     return triggerfunction;
   }
 
+  /**
+   * Subquery for the labels of the rows referenced by this column, being the text of their non
+   * reference columns. Returns null if not supported, i.e. for references to other schemas and
+   * ref_array to composite keys.
+   */
+  private static String searchLabelsOfReference(Column column) {
+    if (!REF.equals(column.getColumnType()) && !REF_ARRAY.equals(column.getColumnType())) {
+      return null;
+    }
+    TableMetadata refTable = column.getRefTable();
+    List<Reference> refs = column.getReferences();
+    List<String> labelColumns = getSearchLabelColumns(column);
+    if (!column.getSchemaName().equals(refTable.getSchemaName())
+        || REF_ARRAY.equals(column.getColumnType()) && refs.size() > 1
+        || labelColumns.isEmpty()) {
+      return null;
+    }
+    List<String> labels = new ArrayList<>();
+    for (String labelColumn : labelColumns) {
+      labels.add(String.format("r.\"%s\"::text", labelColumn));
+    }
+    return String.format(
+        "(SELECT string_agg(concat_ws(' ', %s), ' ') FROM \"%s\".\"%s\" r WHERE %s)",
+        String.join(",", labels),
+        refTable.getSchemaName(),
+        refTable.getTableName(),
+        referenceMatch(column, "new", "r"));
+  }
+
+  /**
+   * Columns of the referenced table used in the refLabel of the column, e.g. 'symbol' for
+   * '${symbol}'. Without refLabel the label is the key, which is already in the search text.
+   */
+  private static List<String> getSearchLabelColumns(Column column) {
+    List<String> result = new ArrayList<>();
+    String refLabel = column.getRefLabelIfSet();
+    if (refLabel == null) {
+      return result;
+    }
+    Matcher matcher = REF_LABEL_COLUMN.matcher(refLabel);
+    while (matcher.find()) {
+      Column c = column.getRefTable().getColumn(matcher.group(1));
+      if (c != null
+          && !c.isReference()
+          && !FILE.equals(c.getColumnType())
+          && !result.contains(c.getName())) {
+        result.add(c.getName());
+      }
+    }
+    return result;
+  }
+
+  /** condition matching rows of 'from' to the rows they reference in 'to' */
+  private static String referenceMatch(Column column, String from, String to) {
+    List<String> conditions = new ArrayList<>();
+    for (Reference r : column.getReferences()) {
+      if (REF_ARRAY.equals(column.getColumnType())) {
+        conditions.add(
+            String.format("%s.\"%s\" = ANY(%s.\"%s\")", to, r.getRefTo(), from, r.getName()));
+      } else {
+        conditions.add(
+            String.format("%s.\"%s\" = %s.\"%s\"", to, r.getRefTo(), from, r.getName()));
+      }
+    }
+    return String.join(" AND ", conditions);
+  }
+
+  private static String primaryKeyMatch(TableMetadata table, String alias, String other) {
+    List<String> conditions = new ArrayList<>();
+    for (Field f : table.getPrimaryKeyFields()) {
+      conditions.add(
+          String.format("%s.\"%s\" = %s.\"%s\"", alias, f.getName(), other, f.getName()));
+    }
+    return String.join(" AND ", conditions);
+  }
+
+  /**
+   * Creates statement level triggers on the tables this table takes search text from, i.e.
+   * referenced tables in this schema and the inherited table. Per statement these reset the search
+   * column of the rows referring to the changed rows, joining on the keys in the transition tables
+   * so the indexes on the reference columns are used, after which the row trigger recomputes it.
+   * Updates that only touch search columns don't change labels, so reference cycles end after one
+   * round.
+   */
+  private static void createSearchPropagation(
+      DSLContext jooq, TableMetadata table, String tableName) {
+    String schemaName = table.getSchemaName();
+    // drop the old function including its triggers, references might have changed
+    jooq.execute(
+        "DROP FUNCTION IF EXISTS {0} CASCADE", name(schemaName, getSearchPropagateName(tableName)));
+
+    // statements per source table, for rows inserted and for rows updated by a statement
+    Map<String, TableMetadata> sources = new LinkedHashMap<>();
+    Map<String, List<String>> onInsert = new LinkedHashMap<>();
+    Map<String, List<String>> onUpdate = new LinkedHashMap<>();
+    String reset =
+        String.format(
+            "UPDATE \"%s\".\"%s\" t SET \"%s\" = NULL FROM (%%s) k WHERE %%s;",
+            schemaName, tableName, searchColumnName(tableName));
+    for (Column c : table.getStoredColumns()) {
+      if (searchLabelsOfReference(c) != null) {
+        TableMetadata refTable = c.getRefTable();
+        String source = refTable.getSchemaName() + "." + refTable.getTableName();
+        List<String> keys = new ArrayList<>();
+        for (Reference r : c.getReferences()) {
+          keys.add(r.getRefTo());
+        }
+        String match = referenceKeyMatch(c);
+        sources.put(source, refTable);
+        onInsert
+            .computeIfAbsent(source, k -> new ArrayList<>())
+            .add(String.format(reset, insertedKeys(keys), match));
+        onUpdate
+            .computeIfAbsent(source, k -> new ArrayList<>())
+            .add(
+                String.format(
+                    reset,
+                    changedKeys(refTable, keys, getSearchLabelColumns(c)),
+                    match));
+      }
+    }
+    TableMetadata parent = table.getInheritedTable();
+    if (parent != null) {
+      String source = parent.getSchemaName() + "." + parent.getTableName();
+      List<String> keys = new ArrayList<>();
+      for (Field f : parent.getPrimaryKeyFields()) {
+        keys.add(f.getName());
+      }
+      sources.put(source, parent);
+      onUpdate
+          .computeIfAbsent(source, k -> new ArrayList<>())
+          .add(
+              String.format(
+                  reset,
+                  changedKeys(parent, keys, List.of(searchColumnName(parent.getTableName()))),
+                  primaryKeyMatch(parent, "t", "k")));
+    }
+    if (sources.isEmpty()) {
+      return;
+    }
+
+    // the source is passed as trigger argument, so the triggers survive renames
+    StringBuilder body =
+        new StringBuilder(
+            "\tIF NOT EXISTS (SELECT 1 FROM new_rows) THEN\n\t\treturn null;\n\tEND IF;\n");
+    List<String> sourceKeys = new ArrayList<>(sources.keySet());
+    for (int i = 0; i < sourceKeys.size(); i++) {
+      body.append(String.format("\tIF TG_ARGV[0] = '%d' THEN\n", i));
+      List<String> inserted = onInsert.get(sourceKeys.get(i));
+      if (inserted != null) {
+        body.append("\t\tIF TG_OP = 'INSERT' THEN\n")
+            .append("\t\t\t" + String.join("\n\t\t\t", inserted) + "\n")
+            .append("\t\tELSE\n")
+            .append("\t\t\t" + String.join("\n\t\t\t", onUpdate.get(sourceKeys.get(i))) + "\n")
+            .append("\t\tEND IF;\n");
+      } else {
+        body.append("\t\t" + String.join("\n\t\t", onUpdate.get(sourceKeys.get(i))) + "\n");
+      }
+      body.append("\tEND IF;\n");
+    }
+    String propagateFunction =
+        String.format("\"%s\".\"%s\"", schemaName, getSearchPropagateName(tableName));
+    jooq.execute(
+        String.format(
+            "CREATE FUNCTION %s() RETURNS trigger AS $$\n"
+                + "begin\n"
+                + "%s"
+                + "\treturn null;\n"
+                + "end\n"
+                + "$$ LANGUAGE plpgsql;",
+            propagateFunction, body));
+    jooq.execute(
+        "ALTER FUNCTION " + propagateFunction + "() OWNER TO {0}",
+        name(getRolePrefix(table) + Privileges.MANAGER.toString()));
+
+    // transition tables require separate triggers per event
+    for (int i = 0; i < sourceKeys.size(); i++) {
+      TableMetadata source = sources.get(sourceKeys.get(i));
+      if (onInsert.containsKey(sourceKeys.get(i))) {
+        jooq.execute(
+            String.format(
+                "CREATE TRIGGER {0} AFTER INSERT ON {1} REFERENCING NEW TABLE AS new_rows "
+                    + "FOR EACH STATEMENT EXECUTE FUNCTION %s('%d')",
+                propagateFunction, i),
+            name(tableName + "_search_insert"),
+            name(source.getSchemaName(), source.getTableName()));
+      }
+      jooq.execute(
+          String.format(
+              "CREATE TRIGGER {0} AFTER UPDATE ON {1} REFERENCING OLD TABLE AS old_rows "
+                  + "NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE FUNCTION %s('%d')",
+              propagateFunction, i),
+          name(tableName + "_search_update"),
+          name(source.getSchemaName(), source.getTableName()));
+    }
+  }
+
+  /** keys of the rows inserted by the statement */
+  private static String insertedKeys(List<String> keys) {
+    List<String> selected = new ArrayList<>();
+    for (String key : keys) {
+      selected.add(String.format("r.\"%s\"", key));
+    }
+    return String.format("SELECT DISTINCT %s FROM new_rows r", String.join(",", selected));
+  }
+
+  /** keys of the rows updated by the statement of which the columns changed */
+  private static String changedKeys(TableMetadata source, List<String> keys, List<String> columns) {
+    List<String> selected = new ArrayList<>();
+    for (String key : keys) {
+      selected.add(String.format("r.\"%s\"", key));
+    }
+    List<String> newValues = new ArrayList<>();
+    List<String> oldValues = new ArrayList<>();
+    for (String c : columns) {
+      newValues.add(String.format("r.\"%s\"", c));
+      oldValues.add(String.format("o.\"%s\"", c));
+    }
+    return String.format(
+        "SELECT DISTINCT %s FROM new_rows r JOIN old_rows o ON %s"
+            + " WHERE ROW(%s) IS DISTINCT FROM ROW(%s)",
+        String.join(",", selected),
+        primaryKeyMatch(source, "o", "r"),
+        String.join(",", newValues),
+        String.join(",", oldValues));
+  }
+
+  /** condition matching rows of 't' to the keys 'k' they reference, so the ref index is used */
+  private static String referenceKeyMatch(Column column) {
+    List<String> conditions = new ArrayList<>();
+    for (Reference r : column.getReferences()) {
+      if (REF_ARRAY.equals(column.getColumnType())) {
+        conditions.add(
+            String.format("t.\"%s\" @> ARRAY[k.\"%s\"]", r.getName(), r.getRefTo()));
+      } else {
+        conditions.add(String.format("t.\"%s\" = k.\"%s\"", r.getName(), r.getRefTo()));
+      }
+    }
+    return String.join(" AND ", conditions);
+  }
+
   static String searchColumnName(String tableName) {
     return tableName + TEXT_SEARCH_COLUMN_NAME;
   }
@@ -255,9 +581,16 @@ class SqlTableMetadataExecutor {
     return tableName + "search_vector_trigger";
   }
 
+  private static String getSearchPropagateName(String tableName) {
+    return tableName + "search_propagate";
+  }
+
   private static void dropSearchTrigger(DSLContext jooq, TableMetadata table) {
     String triggerfunction = getSearchTriggerName(table.getTableName());
     jooq.execute("DROP FUNCTION {0} CASCADE", name(table.getSchema().getName(), triggerfunction));
+    jooq.execute(
+        "DROP FUNCTION IF EXISTS {0} CASCADE",
+        name(table.getSchema().getName(), getSearchPropagateName(table.getTableName())));
   }
 
   private static void createSearchTrigger(DSLContext jooq, TableMetadata table, String tableName) {
@@ -1,9 +1,11 @@
 package org.molgenis.emx2.sql;
 
-import static org.molgenis.emx2.utils.JavaScriptUtils.executeJavascriptOnRow;
+import static org.jooq.impl.DSL.val;
+import static org.molgenis.emx2.utils.JavaScriptUtils.executeJavascriptOnRows;
 import static org.molgenis.emx2.utils.JavaScriptUtils.executeJavascriptOnValue;
 
 import java.util.*;
+import org.molgenis.emx2.BinaryFileWrapper;
 import org.molgenis.emx2.Column;
 import org.molgenis.emx2.ColumnType;
 import org.molgenis.emx2.MolgenisException;
@@ -21,6 +23,36 @@ public class SqlTypeUtils extends TypeUtils {
   }
 
   static Map<String, Object> getValuesAsMap(Row row, Collection<Column> columns) {
+    return getValuesAsMaps(List.of(row), columns).get(0);
+  }
+
+  /** same as getValuesAsMap, but executes each computed script for all rows at once */
+  static List<Map<String, Object>> getValuesAsMaps(List<Row> rows, Collection<Column> columns) {
+    Map<String, List<String>> computed = new HashMap<>();
+    for (Column c : columns) {
+      if (c.getComputed() != null) {
+        List<Row> toCompute = new ArrayList<>();
+        for (Row row : rows) {
+          if (!row.getValueMap().containsKey(c.getComputed())) {
+            toCompute.add(row);
+          }
+        }
+        computed.put(c.getName(), executeJavascriptOnRows(c.getComputed(), toCompute));
+      }
+    }
+    List<Map<String, Object>> result = new ArrayList<>(rows.size());
+    Map<String, Integer> computedIndex = new HashMap<>();
+    for (Row row : rows) {
+      result.add(getValuesAsMap(row, columns, computed, computedIndex));
+    }
+    return result;
+  }
+
+  private static Map<String, Object> getValuesAsMap(
+      Row row,
+      Collection<Column> columns,
+      Map<String, List<String>> computed,
+      Map<String, Integer> computedIndex) {
     try {
       Map<String, Object> values = new LinkedHashMap<>();
       for (Column c : columns) {
@@ -32,7 +64,8 @@ public class SqlTypeUtils extends TypeUtils {
           if (row.getValueMap().containsKey(c.getComputed())) {
             value = row.getValueMap().get(c.getComputed());
           } else {
-            value = executeJavascriptOnRow(c.getComputed(), row);
+            int index = computedIndex.merge(c.getName(), 1, Integer::sum) - 1;
+            value = computed.get(c.getName()).get(index);
           }
         } else {
           value = getTypedValue(row, c);
@@ -69,6 +102,11 @@ public class SqlTypeUtils extends TypeUtils {
     String name = c.getName();
     switch (c.getPrimitiveColumnType()) {
       case FILE:
+        Object file = row.getValueMap().get(name);
+        if (file instanceof BinaryFileWrapper) {
+          // streamed into the database when the statement is executed
+          return val((BinaryFileWrapper) file, SqlBinaryStreamBinding.TYPE);
+        }
         return row.getBinary(name);
       case UUID:
         return row.getUuid(name);
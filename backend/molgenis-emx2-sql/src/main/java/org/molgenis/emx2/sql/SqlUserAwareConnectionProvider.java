@@ -4,52 +4,117 @@ import static org.jooq.impl.DSL.name;
 import static org.molgenis.emx2.sql.Constants.MG_USER_PREFIX;
 
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import javax.sql.DataSource;
 import org.jooq.SQLDialect;
 import org.jooq.exception.DataAccessException;
 import org.jooq.impl.DSL;
 import org.jooq.impl.DataSourceConnectionProvider;
+import org.molgenis.emx2.MolgenisException;
 
+/**
+ * Acquires connections with session authorization set to the active user, and resets it on release
+ * so other consumers of the pool, such as task workers, get the login role. The role of each
+ * connection is tracked, so connections used without active user are not switched at all.
+ */
 public class SqlUserAwareConnectionProvider extends DataSourceConnectionProvider {
-  private String activeUser;
+  private static final String DEFAULT_ROLE = "";
+  // role of each pooled connection, keyed on the physical connection because the pool wraps it in
+  // a new proxy on every acquire. Connections without a known role are always switched.
+  private static final Map<Connection, String> connectionRoles =
+      Collections.synchronizedMap(new WeakHashMap<>());
+  private static final AtomicLong roleSwitches = new AtomicLong();
+  private static final AtomicLong roleSwitchesAvoided = new AtomicLong();
+  // active user of the thread acquiring the connection, null means the login role
+  private final Supplier<String> activeUser;
 
   public SqlUserAwareConnectionProvider(DataSource source) {
+    this(source, () -> null);
+  }
+
+  public SqlUserAwareConnectionProvider(DataSource source, Supplier<String> activeUser) {
     super(source);
+    this.activeUser = activeUser;
   }
 
   @Override
   public Connection acquire() {
+    Connection connection = super.acquire();
     try {
-      Connection connection = super.acquire();
-      if (activeUser != null) {
-        DSL.using(connection, SQLDialect.POSTGRES)
-            .execute("SET SESSION AUTHORIZATION {0}", name(MG_USER_PREFIX + activeUser));
-      }
-      return connection;
-    } catch (DataAccessException dae) {
-      throw new SqlMolgenisException("Set active user failed'", dae);
+      switchRole(connection, activeUser.get());
+    } catch (MolgenisException me) {
+      super.release(connection);
+      throw me;
     }
+    return connection;
   }
 
   @Override
   public void release(Connection connection) {
+    resetRole(connection);
+    super.release(connection);
+  }
+
+  /** Resets session authorization before a connection returns to the pool */
+  static void resetRole(Connection connection) {
     try {
-      DSL.using(connection, SQLDialect.POSTGRES).execute("RESET SESSION AUTHORIZATION");
+      switchRole(connection, null);
+    } catch (MolgenisException me) {
+      // role unknown, so it must not be handed out again
+      try {
+        physical(connection).close();
+      } catch (SQLException e) {
+        // already broken
+      }
+    }
+  }
+
+  /** Sets session authorization of the connection to the user, or resets it if user is null. */
+  static void switchRole(Connection connection, String user) {
+    Connection physical = physical(connection);
+    String role = user != null ? MG_USER_PREFIX + user : DEFAULT_ROLE;
+    if (role.equals(connectionRoles.get(physical))) {
+      roleSwitchesAvoided.incrementAndGet();
+      return;
+    }
+    try {
+      if (user != null) {
+        DSL.using(connection, SQLDialect.POSTGRES)
+            .execute("SET SESSION AUTHORIZATION {0}", name(role));
+      } else {
+        DSL.using(connection, SQLDialect.POSTGRES).execute("RESET SESSION AUTHORIZATION");
+      }
+      connectionRoles.put(physical, role);
+      roleSwitches.incrementAndGet();
     } catch (DataAccessException dae) {
-      throw new SqlMolgenisException("release of connection failed ", dae);
+      connectionRoles.remove(physical);
+      throw new SqlMolgenisException("Set active user failed'", dae);
     }
-    super.release(connection);
   }
 
-  public String getActiveUser() {
-    return activeUser;
+  /** For when the role of the connection was changed outside of this provider */
+  static void forgetRole(Connection connection) {
+    connectionRoles.remove(physical(connection));
   }
 
-  public void setActiveUser(String activeUser) {
-    this.activeUser = activeUser;
+  private static Connection physical(Connection connection) {
+    try {
+      return connection.unwrap(Connection.class);
+    } catch (SQLException e) {
+      return connection;
+    }
+  }
+
+  public static long getRoleSwitches() {
+    return roleSwitches.get();
   }
 
-  public void clearActiveUser() {
-    this.activeUser = null;
+  public static long getRoleSwitchesAvoided() {
+    return roleSwitchesAvoided.get();
   }
 }
@@ -35,7 +35,9 @@ public class TestDatabaseFactory {
 
   public static DSLContext getJooq() {
     if (jooq == null) {
-      jooq = DSL.using(getDataSource(), SQLDialect.POSTGRES);
+      // resets roles the pooled connections might still have from another user
+      jooq =
+          DSL.using(new SqlUserAwareConnectionProvider(getDataSource()), SQLDialect.POSTGRES);
     }
     return jooq;
   }
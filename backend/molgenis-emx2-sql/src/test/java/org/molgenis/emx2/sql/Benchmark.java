@@ -1,7 +1,9 @@
 package org.molgenis.emx2.sql;
 
 import static org.molgenis.emx2.Column.column;
+import static org.molgenis.emx2.ColumnType.INT;
 import static org.molgenis.emx2.ColumnType.REF_ARRAY;
+import static org.molgenis.emx2.SelectColumn.s;
 import static org.molgenis.emx2.TableMetadata.table;
 
 import java.util.ArrayList;
@@ -73,4 +75,95 @@ public class Benchmark {
     // ref_array
 
   }
+
+  public void testDeleteUsingUnnestVersusConditions() {
+    Database database = TestDatabaseFactory.getTestDatabase();
+    Schema schema = database.dropCreateSchema(Benchmark.class.getSimpleName() + "Delete");
+    SqlTable table =
+        (SqlTable)
+            schema.create(
+                table("TableD").add(column("ID").setPkey()).add(column("number").setType(INT)));
+
+    for (int size : new int[] {10000, 100000, 1000000}) {
+      List<Row> rows = new ArrayList<>();
+      for (int i = 0; i < size; i++) {
+        rows.add(new Row().set("ID", "row" + i).set("number", i));
+      }
+
+      table.copyIn(rows);
+      StopWatch.start("delete using unnest");
+      database.tx(db -> table.deleteBatchUsingUnnest(rows));
+      StopWatch.print("deleted using unnest", size);
+
+      // same batch size as SqlTable.delete, otherwise the query string gets too big
+      table.copyIn(rows);
+      StopWatch.start("delete using conditions");
+      database.tx(
+          db -> {
+            for (int i = 0; i < size; i += 100000) {
+              table.deleteBatchUsingConditions(rows.subList(i, Math.min(size, i + 100000)));
+            }
+          });
+      StopWatch.print("deleted using conditions", size);
+    }
+  }
+
+  public void testInsertComputed() {
+    Database database = TestDatabaseFactory.getTestDatabase();
+    Schema schema = database.dropCreateSchema(Benchmark.class.getSimpleName() + "Computed");
+    Table table =
+        schema.create(
+            table("TableC")
+                .add(column("ID").setType(INT).setPkey())
+                .add(column("name"))
+                .add(column("label").setComputed("name + ' (' + ID + ')'"))
+                .add(column("number").setType(INT).setValidation("if (value < 0) 'negative'")));
+
+    int size = 100000;
+    for (int round = 0; round < 3; round++) {
+      // first rounds warm up the engine
+      List<Row> rows = new ArrayList<>();
+      for (int i = 0; i < size; i++) {
+        int id = round * size + i;
+        rows.add(new Row().set("ID", id).set("name", "row" + id).set("number", i));
+      }
+      StopWatch.start("insert computed, round " + round);
+      table.insert(rows);
+      StopWatch.print("inserted computed", size);
+    }
+  }
+
+  public void testKeysetVersusOffset() {
+    Database database = TestDatabaseFactory.getTestDatabase();
+    Schema schema = database.dropCreateSchema(Benchmark.class.getSimpleName() + "Keyset");
+    SqlTable table =
+        (SqlTable)
+            schema.create(
+                table("TableK").add(column("ID").setType(INT).setPkey()).add(column("name")));
+
+    int size = 5000000;
+    int batch = 1000000;
+    StopWatch.start("insert for keyset");
+    for (int i = 0; i < size; i += batch) {
+      List<Row> rows = new ArrayList<>();
+      for (int j = i; j < i + batch; j++) {
+        rows.add(new Row().set("ID", j).set("name", "row" + j));
+      }
+      table.copyIn(rows);
+    }
+    StopWatch.print("inserted", size);
+
+    int pageSize = 100;
+    for (int depth : new int[] {0, 10000, 100000, 1000000, 4000000}) {
+      StopWatch.start("page at " + depth + " using offset");
+      table.select(s("ID"), s("name")).orderBy("ID").offset(depth).limit(pageSize).retrieveRows();
+      StopWatch.print("retrieved page at " + depth + " using offset", pageSize);
+
+      // cursor of the last row of the previous page
+      String cursor = "[\"" + (depth - 1) + "\"]";
+      StopWatch.start("page at " + depth + " using keyset");
+      table.select(s("ID"), s("name")).orderBy("ID").after(cursor).limit(pageSize).retrieveRows();
+      StopWatch.print("retrieved page at " + depth + " using keyset", pageSize);
+    }
+  }
 }
@@ -2,10 +2,14 @@ package org.molgenis.emx2.sql;
 
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.fail;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.molgenis.emx2.Column.column;
-import static org.molgenis.emx2.ColumnType.INT;
-import static org.molgenis.emx2.ColumnType.REF;
+import static org.molgenis.emx2.ColumnType.*;
+import static org.molgenis.emx2.Constants.MG_UPDATEDON;
+import static org.molgenis.emx2.FilterBean.f;
+import static org.molgenis.emx2.Operator.EQUALS;
 import static org.molgenis.emx2.TableMetadata.table;
 
 import java.sql.SQLException;
@@ -77,6 +81,60 @@ public class TestBatchRequestsForSpeed {
         "Retrieved", schema.getTable("TestBatchRequestsForSpeed").retrieveRows().size());
   }
 
+  @Test
+  public void testUpdateBatchWithInheritance() {
+    Schema schema = db.dropCreateSchema("testUpdateBatch");
+    schema.create(
+        table(
+            "Animal",
+            column("name").setPkey(),
+            column("tags").setType(STRING_ARRAY),
+            column("weight").setType(DECIMAL)));
+    Table cat =
+        schema.create(
+            table("Cat").setInherit("Animal").add(column("lives").setType(INT).setRequired(true)));
+
+    int size = 2000;
+    List<Row> rows = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      rows.add(new Row().setString("name", "cat" + i).setInt("lives", 9));
+    }
+    cat.insert(rows);
+
+    for (Row r : rows) {
+      r.setStringArray("tags", new String[] {"a,b", r.getString("name")});
+      r.setDecimal("weight", 1.5);
+      r.setInt("lives", 8);
+    }
+    // duplicate key within the same batch of BATCH_SIZE rows, last one wins
+    rows.add(
+        SqlTable.BATCH_SIZE / 2,
+        new Row()
+            .setString("name", "cat0")
+            .setStringArray("tags", new String[] {"x"})
+            .setDecimal("weight", 2.0)
+            .setInt("lives", 7));
+    assertEquals(size + 1, cat.update(rows));
+
+    Row cat0 = cat.where(f("name", EQUALS, "cat0")).retrieveRows().get(0);
+    assertEquals((Integer) 7, cat0.getInteger("lives"));
+    assertArrayEquals(new String[] {"x"}, cat0.getStringArray("tags"));
+    assertEquals(2.0, cat0.getDecimal("weight"), 0.0);
+    assertNotNull(cat0.getDateTime(MG_UPDATEDON));
+
+    Row cat1 = cat.where(f("name", EQUALS, "cat1")).retrieveRows().get(0);
+    assertEquals((Integer) 8, cat1.getInteger("lives"));
+    assertEquals(1.5, cat1.getDecimal("weight"), 0.0);
+    assertArrayEquals(new String[] {"a,b", "cat1"}, cat1.getStringArray("tags"));
+
+    try {
+      cat.update(new Row().setString("name", "cat1").setInt("lives", null));
+      fail("required check should still apply");
+    } catch (MolgenisException e) {
+      // correct
+    }
+  }
+
   @Test
   public void testCreate() {
 
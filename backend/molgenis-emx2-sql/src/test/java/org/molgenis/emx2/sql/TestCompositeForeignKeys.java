@@ -28,6 +28,45 @@ public class TestCompositeForeignKeys {
 
   }
 
+  @Test
+  public void testDeleteUsingCompositeRefKey() {
+    Schema schema =
+        database.dropCreateSchema(TestCompositeForeignKeys.class.getSimpleName() + "Delete");
+
+    schema.create(table("Parent", column("firstName").setPkey(), column("lastName").setPkey()));
+    schema.create(
+        table(
+            "Child",
+            column("parent", REF).setRefTable("Parent").setPkey(),
+            column("number", INT).setPkey()));
+
+    schema
+        .getTable("Parent")
+        .insert(new Row().setString("firstName", "Donald").setString("lastName", "Duck"));
+    Table c = schema.getTable("Child");
+    for (int i = 1; i <= 3; i++) {
+      c.insert(
+          new Row()
+              .setString("parent.firstName", "Donald")
+              .setString("parent.lastName", "Duck")
+              .setInt("number", i));
+    }
+
+    c.delete(
+        new Row()
+            .setString("parent.firstName", "Donald")
+            .setString("parent.lastName", "Duck")
+            .setInt("number", 1),
+        new Row()
+            .setString("parent.firstName", "Donald")
+            .setString("parent.lastName", "Duck")
+            .setInt("number", 3));
+
+    List<Row> rows = c.retrieveRows();
+    assertEquals(1, rows.size());
+    assertEquals((Integer) 2, rows.get(0).getInteger("number"));
+  }
+
   @Test
   public void testCompositeRef() {
     Schema schema =
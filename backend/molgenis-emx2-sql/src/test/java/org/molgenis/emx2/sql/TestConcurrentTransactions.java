@@ -0,0 +1,144 @@
+package org.molgenis.emx2.sql;
+
+import static org.junit.Assert.*;
+import static org.molgenis.emx2.Column.column;
+import static org.molgenis.emx2.ColumnType.INT;
+import static org.molgenis.emx2.TableMetadata.table;
+import static org.molgenis.emx2.sql.SqlDatabase.ADMIN;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.molgenis.emx2.*;
+
+/** Many threads sharing one database instance, each with their own transaction */
+public class TestConcurrentTransactions {
+  private static final int THREADS = 8;
+  private static final int ROUNDS = 10;
+  private static Database db;
+  private static Schema schema;
+
+  @BeforeClass
+  public static void setUp() {
+    db = TestDatabaseFactory.getTestDatabase();
+    schema = db.dropCreateSchema(TestConcurrentTransactions.class.getSimpleName());
+    schema.create(table("Rows", column("id").setType(INT).setPkey(), column("thread")));
+  }
+
+  @Test
+  public void testTransactionsAreIsolated() throws Exception {
+    CyclicBarrier barrier = new CyclicBarrier(THREADS);
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    List<Future<?>> results = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      final int thread = t;
+      // even threads commit, odd threads roll back
+      final boolean commit = thread % 2 == 0;
+      results.add(
+          executor.submit(
+              () -> {
+                for (int round = 0; round < ROUNDS; round++) {
+                  final int committedBefore = round * THREADS / 2;
+                  final int id = round * THREADS + thread;
+                  try {
+                    db.tx(
+                        d -> {
+                          assertTrue(d.inTx());
+                          Table rows = d.getSchema(schema.getName()).getTable("Rows");
+                          rows.insert(new Row("id", id, "thread", "thread" + thread));
+                          if (!commit) {
+                            // only affects the connection of this transaction
+                            d.setActiveUser(ADMIN);
+                          }
+                          await(barrier);
+
+                          // all threads have an uncommitted row now, we only see our own
+                          assertEquals(committedBefore + 1, rows.retrieveRows().size());
+                          assertEquals(commit ? null : ADMIN, d.getActiveUser());
+                          await(barrier);
+
+                          if (!commit) {
+                            throw new MolgenisException("rollback of thread " + thread);
+                          }
+                        });
+                  } catch (MolgenisException e) {
+                    if (commit) throw e;
+                  }
+                }
+                return null;
+              }));
+    }
+    for (Future<?> result : results) {
+      // rethrows the assertion errors of the threads
+      result.get(5, TimeUnit.MINUTES);
+    }
+    executor.shutdown();
+
+    assertFalse(db.inTx());
+    assertNull(db.getActiveUser());
+    assertEquals(ROUNDS * THREADS / 2, schema.getTable("Rows").retrieveRows().size());
+  }
+
+  @Test
+  public void testTwoUsersOutsideTransactions() throws Exception {
+    String viewer = "TestConcurrentTransactionsViewer";
+    String stranger = "TestConcurrentTransactionsStranger";
+    db.addUser(viewer);
+    db.addUser(stranger);
+    schema.addMember(viewer, Privileges.VIEWER.toString());
+
+    CyclicBarrier barrier = new CyclicBarrier(2);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    List<Future<?>> results = new ArrayList<>();
+    for (String user : List.of(viewer, stranger)) {
+      results.add(
+          executor.submit(
+              () -> {
+                // both threads switch user on the same instance, without transaction
+                db.setActiveUser(user);
+                for (int round = 0; round < ROUNDS; round++) {
+                  await(barrier);
+                  assertEquals(user, db.getActiveUser());
+                  assertEquals(
+                      Constants.MG_USER_PREFIX + user,
+                      ((SqlDatabase) db)
+                          .getJooq()
+                          .fetchOne("SELECT current_user")
+                          .get(0, String.class));
+                  Schema visible = db.getSchema(schema.getName());
+                  if (user.equals(viewer)) {
+                    assertNotNull(visible);
+                    visible.getTable("Rows").retrieveRows();
+                  } else {
+                    assertNull(visible);
+                  }
+                  // elevation of one thread doesn't leak into the other
+                  assertFalse(schema.getInheritedRolesForUser(viewer).isEmpty());
+                  assertEquals(user, db.getActiveUser());
+                }
+                ((SqlDatabase) db).resetActiveUser();
+                return null;
+              }));
+    }
+    for (Future<?> result : results) {
+      // rethrows the assertion errors of the threads
+      result.get(5, TimeUnit.MINUTES);
+    }
+    executor.shutdown();
+    assertNull(db.getActiveUser());
+  }
+
+  private static void await(CyclicBarrier barrier) {
+    try {
+      // timeout so a failing thread doesn't leave the others waiting forever
+      barrier.await(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MolgenisException("interrupted", e);
+    } catch (BrokenBarrierException | TimeoutException e) {
+      throw new MolgenisException("other thread failed", e);
+    }
+  }
+}
@@ -1,18 +1,23 @@
 package org.molgenis.emx2.sql;
 
-import static org.junit.Assert.assertEquals;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
 import static org.molgenis.emx2.Column.column;
+import static org.molgenis.emx2.Constants.MG_INSERTEDON;
+import static org.molgenis.emx2.Constants.MG_TABLECLASS;
+import static org.molgenis.emx2.FilterBean.f;
+import static org.molgenis.emx2.Operator.EQUALS;
 import static org.molgenis.emx2.Row.row;
+import static org.molgenis.emx2.SelectColumn.s;
 import static org.molgenis.emx2.TableMetadata.table;
 
+import java.io.ByteArrayOutputStream;
 import java.io.StringWriter;
+import java.time.LocalDate;
 import java.util.List;
 import org.junit.BeforeClass;
 import org.junit.Test;
-import org.molgenis.emx2.ColumnType;
-import org.molgenis.emx2.Database;
-import org.molgenis.emx2.Row;
-import org.molgenis.emx2.Schema;
+import org.molgenis.emx2.*;
 
 public class TestCopy {
 
@@ -49,6 +54,8 @@ public class TestCopy {
 
     schema.create(table("test2", column("A").setPkey()));
     table = (SqlTable) schema.getTable("test2");
+    // insert tagged these rows with mg_tableclass of 'test', which copyIn respects
+    rows.forEach(r -> r.getValueMap().remove(MG_TABLECLASS));
     table.copyIn(rows);
     writer = new StringWriter();
     table.copyOut(writer);
@@ -57,6 +64,75 @@ public class TestCopy {
     assertEquals(2, schema.getTable("test2").retrieveRows().size());
   }
 
+  @Test
+  public void testCopyInQuotingAndInheritance() {
+    schema.create(
+        table(
+            "Person",
+            column("name").setPkey(),
+            column("nicknames").setType(ColumnType.STRING_ARRAY),
+            column("birthDate").setType(ColumnType.DATE)));
+    schema.create(
+        table("Employee").setInherit("Person").add(column("salary").setType(ColumnType.INT)));
+
+    Table employee = schema.getTable("Employee");
+    int count =
+        employee.copyIn(
+            List.of(
+                row("name", "a,\"quoted\"", "nicknames", List.of("x\"y", "z\\w"), "salary", 1),
+                new Row()
+                    .setString("name", "b")
+                    .setDate("birthDate", LocalDate.of(2000, 1, 1))
+                    .setInt("salary", 2)));
+    assertEquals(2, count);
+
+    // parent and audit columns are loaded too
+    Row a =
+        schema.getTable("Person").where(f("name", EQUALS, "a,\"quoted\"")).retrieveRows().get(0);
+    assertArrayEquals(new String[] {"x\"y", "z\\w"}, a.getStringArray("nicknames"));
+    assertEquals("TestCopy.Employee", a.getString(MG_TABLECLASS));
+    assertNotNull(a.getDateTime(MG_INSERTEDON));
+    assertNull(a.getDate("birthDate"));
+    assertEquals(2, employee.retrieveRows().size());
+
+    // copy only inserts, so existing keys fail
+    try {
+      employee.copyIn(List.of(row("name", "b", "salary", 3)));
+      fail("copy of existing key should fail");
+    } catch (MolgenisException e) {
+      // correct
+    }
+  }
+
+  @Test
+  public void testRetrieveCSV() {
+    schema.create(
+        table(
+            "CsvOut",
+            column("name").setPkey(),
+            column("tags").setType(ColumnType.STRING_ARRAY),
+            column("active").setType(ColumnType.BOOL),
+            column("count").setType(ColumnType.INT)));
+    Table table = schema.getTable("CsvOut");
+    table.insert(
+        row("name", "a \"quoted\" name", "tags", List.of("x", "y,z"), "active", true, "count", 1),
+        new Row().setString("name", "b"));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    table
+        .select(s("name"), s("tags"), s("active"), s("count"))
+        .orderBy("name")
+        .retrieveCSV(out, ',');
+    assertEquals(
+        "name,tags,active,count\n\"a \"\"quoted\"\" name\",\"x,\"\"y,z\"\"\",true,1\nb,,,\n",
+        out.toString(UTF_8));
+
+    // filters and separator are applied
+    out = new ByteArrayOutputStream();
+    table.select(s("name"), s("count")).where(f("name", EQUALS, "b")).retrieveCSV(out, '\t');
+    assertEquals("name\tcount\nb\t\n", out.toString(UTF_8));
+  }
+
   //  @Test
   //  public void test2() {
   //    schema.create(table("speed1", column("A")));
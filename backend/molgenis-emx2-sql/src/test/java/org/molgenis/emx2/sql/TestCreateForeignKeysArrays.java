@@ -5,6 +5,8 @@ import static org.molgenis.emx2.Column.column;
 import static org.molgenis.emx2.ColumnType.INT;
 import static org.molgenis.emx2.ColumnType.REF_ARRAY;
 import static org.molgenis.emx2.TableMetadata.table;
+import static org.molgenis.emx2.sql.Constants.REF_ARRAY_CHECKS;
+import static org.molgenis.emx2.sql.Constants.REF_ARRAY_CHECKS_PER_STATEMENT;
 
 import java.util.Arrays;
 import org.junit.BeforeClass;
@@ -73,9 +75,67 @@ public class TestCreateForeignKeysArrays {
         new String[] {"{\"key\": \"value1\"}", "{\"key\": \"value2\"}", "{\"key\": \"value3\"}"});
   }
 
+  @Test
+  public void testStringRefCheckedPerStatement() {
+    executeTest(ColumnType.STRING, new String[] {"aap", "noot", "mies"}, true);
+  }
+
+  @Test
+  public void testIntRefCheckedPerStatement() {
+    executeTest(INT, new Integer[] {5, 6, 7}, true);
+  }
+
+  @Test
+  public void testChangeToCheckPerStatement() {
+    Schema schema = db.dropCreateSchema("TestRefArrayChangeChecks");
+    Table aTable = schema.create(table("A").add(column("id").setPkey()));
+    Table bTable =
+        schema.create(
+            table("B")
+                .add(column("id").setPkey())
+                .add(column("refToA").setType(REF_ARRAY).setRefTable("A")));
+    aTable.insert(new Row().set("id", "a1"), new Row().set("id", "a2"));
+    bTable.insert(new Row().set("id", "b1").set("refToA", "a1"));
+
+    // constraints of existing columns are replaced
+    schema.getMetadata().setSetting(REF_ARRAY_CHECKS, REF_ARRAY_CHECKS_PER_STATEMENT);
+    try {
+      bTable.insert(new Row().set("id", "b2").set("refToA", "a2,a3"));
+      fail("insert should fail because value is missing");
+    } catch (Exception e) {
+      System.out.println("insert exception correct because value a3 is missing: \n" + e);
+    }
+    try {
+      aTable.delete(new Row().set("id", "a1"));
+      fail("delete should fail");
+    } catch (Exception e) {
+      System.out.println("delete exception correct because of a1: \n" + e);
+    }
+    // unreferenced can be deleted
+    aTable.delete(new Row().set("id", "a2"));
+
+    // and back
+    schema.getMetadata().removeSetting(REF_ARRAY_CHECKS);
+    try {
+      bTable.insert(new Row().set("id", "b2").set("refToA", "a2"));
+      fail("insert should fail because value is missing");
+    } catch (Exception e) {
+      System.out.println("insert exception correct because value a2 is missing: \n" + e);
+    }
+  }
+
   private void executeTest(ColumnType columnType, Object[] testValues) {
+    executeTest(columnType, testValues, false);
+  }
+
+  private void executeTest(ColumnType columnType, Object[] testValues, boolean perStatement) {
 
-    Schema schema = db.dropCreateSchema("TestRefArray" + columnType.toString().toUpperCase());
+    Schema schema =
+        db.dropCreateSchema(
+            "TestRefArray" + columnType.toString().toUpperCase() + (perStatement ? "Stmt" : ""));
+    if (perStatement) {
+      schema.getMetadata().setSetting(REF_ARRAY_CHECKS, REF_ARRAY_CHECKS_PER_STATEMENT);
+    }
 
     String aKey = "A" + columnType + "Key";
     Table aTable = schema.create(table("A").add(column(aKey).setType(columnType).setPkey()));
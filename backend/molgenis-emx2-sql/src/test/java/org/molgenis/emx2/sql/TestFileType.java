@@ -6,7 +6,13 @@ import static org.molgenis.emx2.ColumnType.FILE;
 import static org.molgenis.emx2.SelectColumn.s;
 import static org.molgenis.emx2.TableMetadata.table;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.molgenis.emx2.*;
@@ -37,6 +43,71 @@ public class TestFileType {
     assertTrue(result.contains("37458"));
   }
 
+  @Test
+  public void testStreamedFile() throws IOException {
+    Table t = schema.create(table("test2", column("id").setPkey(), column("doc").setType(FILE)));
+    byte[] contents = new byte[2 * 1024 * 1024 + 3];
+    for (int i = 0; i < contents.length; i++) {
+      contents[i] = (byte) (i % 7);
+    }
+    BinaryFileWrapper streamed =
+        new BinaryFileWrapper(
+            "application/octet-stream",
+            "doc.bin",
+            contents.length,
+            () -> new ByteArrayInputStream(contents));
+    assertTrue(streamed.isStreamed());
+    Row row = new Row().set("id", 1).setBinary("doc", streamed);
+    t.insert(row);
+
+    // stream is closed after the insert
+    AtomicBoolean closed = new AtomicBoolean(false);
+    t.insert(
+        new Row()
+            .set("id", 2)
+            .setBinary(
+                "doc",
+                new BinaryFileWrapper(
+                    "application/octet-stream",
+                    "doc.bin",
+                    contents.length,
+                    () ->
+                        new ByteArrayInputStream(contents) {
+                          @Override
+                          public void close() {
+                            closed.set(true);
+                          }
+                        })));
+    assertTrue(closed.get());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    t.readFile("doc", row.getString("doc"), 0, Long.MAX_VALUE, out);
+    assertArrayEquals(contents, out.toByteArray());
+
+    // partial
+    out = new ByteArrayOutputStream();
+    t.readFile("doc", row.getString("doc"), 1024 * 1024 - 2, 4, out);
+    assertArrayEquals(
+        Arrays.copyOfRange(contents, 1024 * 1024 - 2, 1024 * 1024 + 2), out.toByteArray());
+
+    // no transaction is held while writing, and a file replaced while reading fails the read
+    String fileId = row.getString("doc");
+    OutputStream replacing =
+        new ByteArrayOutputStream() {
+          @Override
+          public void write(byte[] bytes) {
+            assertFalse(db.inTx());
+            t.update(new Row("id", 1, "doc", getFile()));
+          }
+        };
+    try {
+      t.readFile("doc", fileId, 0, Long.MAX_VALUE, replacing);
+      fail("reading a replaced file should fail");
+    } catch (MolgenisException e) {
+      assertTrue(e.getMessage().contains("was changed while reading it"));
+    }
+  }
+
   @Test
   public void testBinaryFileWrapper() {
     BinaryFileWrapper w = new BinaryFileWrapper(getFile());
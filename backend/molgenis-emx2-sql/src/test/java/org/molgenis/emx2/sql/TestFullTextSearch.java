@@ -3,12 +3,18 @@ package org.molgenis.emx2.sql;
 import static org.junit.Assert.assertEquals;
 import static org.molgenis.emx2.Column.column;
 import static org.molgenis.emx2.ColumnType.INT;
+import static org.molgenis.emx2.ColumnType.REF;
+import static org.molgenis.emx2.ColumnType.REF_ARRAY;
 import static org.molgenis.emx2.ColumnType.TEXT;
+import static org.molgenis.emx2.Constants.SEARCH_RANK;
 import static org.molgenis.emx2.FilterBean.f;
 import static org.molgenis.emx2.FilterBean.or;
+import static org.molgenis.emx2.SelectColumn.s;
 import static org.molgenis.emx2.TableMetadata.table;
 
 import java.util.List;
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -74,6 +80,102 @@ public class TestFullTextSearch {
     // search accross join of xref
   }
 
+  @Test
+  public void testSearchRank() {
+    Schema schema = db.dropCreateSchema(TestFullTextSearch.class.getSimpleName() + "Rank");
+    Table table =
+        schema.create(table("Diseases").add(column("name").setPkey()).add(column("description")));
+    table.insert(
+        new Row().setString("name", "d1").setString("description", "cancerous growth"),
+        new Row().setString("name", "d2").setString("description", "breast cancer"),
+        new Row().setString("name", "d3").setString("description", "flu"));
+
+    List<Row> rows =
+        table.query().search("cancer").orderBy(SEARCH_RANK, Order.DESC).retrieveRows();
+    assertEquals(2, rows.size());
+    assertEquals("d2", rows.get(0).getString("name"));
+
+    String json =
+        schema
+            .query("Diseases", s("name"))
+            .search("cancer")
+            .orderBy(SEARCH_RANK, Order.DESC)
+            .retrieveJSON();
+    Assert.assertTrue(json.indexOf("d2") < json.indexOf("d1"));
+    Assert.assertFalse(json.contains("d3"));
+
+    // without search terms there is nothing to rank, so ignored
+    assertEquals(3, table.query().orderBy(SEARCH_RANK).retrieveRows().size());
+  }
+
+  @Test
+  public void testSearchReferencedLabelsAndInheritance() {
+    Schema schema = db.dropCreateSchema(TestFullTextSearch.class.getSimpleName() + "Refs");
+    schema.create(
+        table("Genes").add(column("id").setPkey()).add(column("symbol")).add(column("function")));
+    schema.create(
+        table("Variants")
+            .add(column("id").setPkey())
+            .add(column("gene").setType(REF).setRefTable("Genes").setRefLabel("${symbol}"))
+            .add(
+                column("genes").setType(REF_ARRAY).setRefTable("Genes").setRefLabel("${symbol}")));
+    schema.create(table("Samples").setInherit("Variants").add(column("tissue")));
+    schema
+        .getTable("Genes")
+        .insert(new Row().set("id", "g1").set("symbol", "BRCA1").set("function", "suppressor"));
+    schema.getTable("Variants").insert(new Row().set("id", "v1").set("gene", "g1"));
+    schema
+        .getTable("Samples")
+        .insert(new Row().set("id", "s1").set("genes", "g1").set("tissue", "liver"));
+
+    // labels of referenced rows are searchable, other columns of these rows are not
+    assertEquals(2, schema.getTable("Variants").query().search("BRCA1").retrieveRows().size());
+    assertEquals(0, schema.getTable("Variants").query().search("suppressor").retrieveRows().size());
+
+    // changes of labels are propagated
+    schema.getTable("Genes").update(new Row().set("id", "g1").set("symbol", "TP53"));
+    assertEquals(0, schema.getTable("Variants").query().search("BRCA1").retrieveRows().size());
+    assertEquals(2, schema.getTable("Variants").query().search("TP53").retrieveRows().size());
+
+    // subclass search column includes the text of its superclass, also after changes
+    schema.getTable("Genes").insert(new Row().set("id", "g2").set("symbol", "KRAS"));
+    schema.getTable("Variants").update(new Row().set("id", "s1").set("gene", "g2"));
+    assertEquals(1, schema.getTable("Samples").query().search("liver KRAS").retrieveRows().size());
+    assertEquals(0, schema.getTable("Samples").query().search("v1").retrieveRows().size());
+  }
+
+  @Test
+  public void testSearchMigration() {
+    Schema schema = db.dropCreateSchema(TestFullTextSearch.class.getSimpleName() + "Migration");
+    schema.create(table("Genes").add(column("id").setPkey()).add(column("symbol")));
+    schema.create(
+        table("Variants")
+            .add(column("id").setPkey())
+            .add(column("gene").setType(REF).setRefTable("Genes").setRefLabel("${symbol}")));
+    schema.getTable("Genes").insert(new Row().set("id", "g1").set("symbol", "BRCA1"));
+    schema.getTable("Variants").insert(new Row().set("id", "v1").set("gene", "g1"));
+
+    // mimic a schema of an older version, without propagation and with stale search columns
+    db.tx(
+        d -> {
+          DSLContext jooq = ((SqlDatabase) d).getJooq();
+          jooq.execute(
+              "DROP FUNCTION {0} CASCADE", DSL.name(schema.getName(), "Variantssearch_propagate"));
+          jooq.execute("SET LOCAL session_replication_role = replica");
+          jooq.execute(
+              "UPDATE {0} SET {1} = NULL",
+              DSL.name(schema.getName(), "Variants"),
+              DSL.name("Variants_TEXT_SEARCH_COLUMN"));
+        });
+    assertEquals(0, schema.getTable("Variants").query().search("BRCA1").retrieveRows().size());
+
+    // as migration on startup does for all schemas
+    ((SqlDatabase) db).rebuildSearch(List.of(schema.getName()));
+    assertEquals(1, schema.getTable("Variants").query().search("BRCA1").retrieveRows().size());
+    schema.getTable("Genes").update(new Row().set("id", "g1").set("symbol", "TP53"));
+    assertEquals(1, schema.getTable("Variants").query().search("TP53").retrieveRows().size());
+  }
+
   @Test
   public void nestedSearch() {
     Schema schema = db.dropCreateSchema(TestFullTextSearch.class.getSimpleName() + "nested");
@@ -184,7 +184,10 @@ public class TestMergeAlter {
                     "testRenameTableRefOld",
                     column("ID").setKey(1),
                     column("Name"),
-                    column("Ref").setType(REF_ARRAY).setRefTable("testRenameTable")));
+                    column("Ref")
+                        .setType(REF_ARRAY)
+                        .setRefTable("testRenameTable")
+                        .setRefLabel("${Name}")));
 
     // test via migrate so we have full stack
     assertNull(schema.getTable("testRenameTableRefOld"));
@@ -195,8 +198,9 @@ public class TestMergeAlter {
     DSLContext jooq = ((SqlSchemaMetadata) schema.getMetadata()).getJooq();
     jooq.resultQuery(
         "SELECT trigger_name from information_schema.triggers  WHERE trigger_name LIKE '%testRenameTableRefOld%'");
+    // includes the triggers propagating label changes of testRenameTable
     assertEquals(
-        6,
+        8,
         jooq
             .resultQuery(
                 "SELECT trigger_name from information_schema.triggers  WHERE trigger_name LIKE '%testRenameTableRefOld%'")
@@ -222,8 +226,9 @@ public class TestMergeAlter {
                 "SELECT trigger_name from information_schema.triggers  WHERE trigger_name LIKE '%testRenameTableRefOld%'")
             .stream()
             .count());
+    // includes the triggers propagating label changes of testRenameTable
     assertEquals(
-        6,
+        8,
         jooq
             .resultQuery(
                 "SELECT trigger_name from information_schema.triggers  WHERE trigger_name LIKE '%testRenameTableRefNew%'")
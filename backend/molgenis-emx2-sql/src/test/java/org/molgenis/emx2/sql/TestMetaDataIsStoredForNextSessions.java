@@ -1,7 +1,13 @@
 package org.molgenis.emx2.sql;
 
 import static junit.framework.TestCase.fail;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.molgenis.emx2.Column.column;
+import static org.molgenis.emx2.TableMetadata.table;
 
+import com.zaxxer.hikari.HikariDataSource;
+import org.jooq.impl.DSL;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.molgenis.emx2.Database;
@@ -54,4 +60,69 @@ public class TestMetaDataIsStoredForNextSessions {
       fail(e.getMessage());
     }
   }
+
+  @Test
+  public void testOtherInstanceIsNotified() throws InterruptedException {
+    Schema schema = database.dropCreateSchema(SCHEMA_NAME + "4");
+    schema.create(table("First", column("id").setPkey()));
+    Long version =
+        MetadataUtils.loadSchemaVersion(((SqlDatabase) database).getJooq(), SCHEMA_NAME + "4");
+
+    // other instance, e.g. other session or other server, caches the schema
+    Database other = new SqlDatabase(TestDatabaseFactory.getDataSource(), false);
+    assertEquals(1, other.getSchema(SCHEMA_NAME + "4").getTableNames().size());
+
+    schema.create(table("Second", column("id").setPkey()));
+    assertTrue(
+        MetadataUtils.loadSchemaVersion(((SqlDatabase) database).getJooq(), SCHEMA_NAME + "4")
+            > version);
+
+    // notification arrives asynchronously
+    for (int i = 0; i < 50; i++) {
+      if (other.getSchema(SCHEMA_NAME + "4").getTableNames().size() == 2) break;
+      Thread.sleep(100);
+    }
+    assertEquals(2, other.getSchema(SCHEMA_NAME + "4").getTableNames().size());
+  }
+
+  @Test
+  public void testListenerUsesOwnConnectionAndStopsOnClose() throws InterruptedException {
+    HikariDataSource pool = (HikariDataSource) TestDatabaseFactory.getDataSource();
+    HikariDataSource source = new HikariDataSource();
+    source.setJdbcUrl(pool.getJdbcUrl());
+    source.setUsername(pool.getUsername());
+    source.setPassword(pool.getPassword());
+    source.setMaximumPoolSize(1);
+    source.setConnectionTimeout(2000);
+    try {
+      int listening = countListeners();
+      SqlDatabase other = new SqlDatabase(source, false);
+      waitForListeners(listening + 1);
+
+      // the only pooled connection is still available, otherwise this times out
+      assertEquals(
+          Integer.valueOf(1), other.getJooq().fetchOne("SELECT 1").get(0, Integer.class));
+
+      other.close();
+      waitForListeners(listening);
+    } finally {
+      source.close();
+    }
+  }
+
+  private static int countListeners() {
+    return ((SqlDatabase) database)
+        .getJooq()
+        .fetchOne(
+            "SELECT count(*) FROM pg_stat_activity WHERE query = {0}",
+            DSL.inline("LISTEN " + MetadataCache.CHANNEL))
+        .get(0, Integer.class);
+  }
+
+  private static void waitForListeners(int expected) throws InterruptedException {
+    for (int i = 0; i < 50 && countListeners() != expected; i++) {
+      Thread.sleep(100);
+    }
+    assertEquals(expected, countListeners());
+  }
 }
@@ -4,12 +4,19 @@ import static org.junit.Assert.assertEquals;
 import static org.molgenis.emx2.Column.column;
 import static org.molgenis.emx2.ColumnType.INT;
 import static org.molgenis.emx2.ColumnType.REF;
+import static org.molgenis.emx2.Constants.CURSOR;
 import static org.molgenis.emx2.FilterBean.f;
 import static org.molgenis.emx2.Operator.EQUALS;
 import static org.molgenis.emx2.SelectColumn.s;
 import static org.molgenis.emx2.TableMetadata.table;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.molgenis.emx2.*;
@@ -146,4 +153,78 @@ public class TestQuery {
     assertEquals(1, rows.size());
     assertEquals((Integer) 2, rows.get(0).getInteger("Mother-ID"));
   }
+
+  @Test
+  public void testRetrieveRowStream() {
+    Query q =
+        schema
+            .getTable(PERSON)
+            .select(s("ID"), s("First_Name"), s("Father", s("First_Name")))
+            .where(f("Last_Name", EQUALS, "Duck"))
+            .orderBy("ID")
+            .fetchSize(2); // smaller than result so multiple fetches are needed
+
+    // same result as retrieveRows
+    List<Row> expected = q.retrieveRows();
+    try (Stream<Row> rows = q.retrieveRowStream()) {
+      assertEquals(
+          expected.stream().map(Row::toString).collect(Collectors.toList()),
+          rows.map(Row::toString).collect(Collectors.toList()));
+    }
+
+    // also works within a transaction
+    database.tx(
+        db -> {
+          try (Stream<Row> rows = q.retrieveRowStream()) {
+            assertEquals(5, rows.count());
+          }
+        });
+
+    // connection is released after close, so we can still query
+    assertEquals(5, q.retrieveRows().size());
+  }
+
+  @Test
+  public void testKeysetPagination() throws JsonProcessingException {
+    // father is null for donald and katrien, so they come last ascending and first descending
+    assertEquals(List.of(3, 4, 5, 1, 2), pageWithCursor("Father", Order.ASC));
+    assertEquals(List.of(1, 2, 3, 4, 5), pageWithCursor("Father", Order.DESC));
+    // only the primary key, i.e. using a row comparison
+    assertEquals(List.of(5, 4, 3, 2, 1), pageWithCursor("ID", Order.DESC));
+
+    String json =
+        schema
+            .getTable(PERSON)
+            .select(s("ID"), s(CURSOR))
+            .orderBy("ID")
+            .after("[\"2\"]")
+            .limit(2)
+            .retrieveJSON();
+    Map<String, List<Map<String, Object>>> result = new ObjectMapper().readValue(json, Map.class);
+    List<Map<String, Object>> page = result.get(PERSON);
+    assertEquals(
+        List.of(3, 4), page.stream().map(row -> row.get("ID")).collect(Collectors.toList()));
+    // the cursor of the last row continues the paging
+    assertEquals("[\"4\"]", page.get(1).get(CURSOR));
+  }
+
+  private List<Integer> pageWithCursor(String orderBy, Order order) {
+    List<Integer> ids = new ArrayList<>();
+    String cursor = null;
+    do {
+      Query q =
+          schema
+              .getTable(PERSON)
+              .select(s("ID"), s("Father"), s(CURSOR))
+              .orderBy(orderBy, order)
+              .limit(2);
+      if (cursor != null) {
+        q.after(cursor);
+      }
+      List<Row> rows = q.retrieveRows();
+      rows.forEach(row -> ids.add(row.getInteger("ID")));
+      cursor = rows.isEmpty() ? null : rows.get(rows.size() - 1).getString(CURSOR);
+    } while (cursor != null);
+    return ids;
+  }
 }
@@ -3,8 +3,15 @@ package org.molgenis.emx2.sql;
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.*;
 import static org.molgenis.emx2.TableMetadata.table;
+import static org.molgenis.emx2.sql.Constants.MG_USER_PREFIX;
 
+import com.zaxxer.hikari.HikariDataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.List;
+import javax.sql.DataSource;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.molgenis.emx2.*;
@@ -103,4 +110,47 @@ public class TestUsersAndPermissions {
       database.removeUser("katrien");
     }
   }
+
+  @Test
+  public void testRoleIsResetForOtherPoolConsumers() throws SQLException {
+    HikariDataSource pool = (HikariDataSource) TestDatabaseFactory.getDataSource();
+    try (HikariDataSource source = new HikariDataSource()) {
+      // one connection, so the raw consumer gets the connection the user query used
+      source.setJdbcUrl(pool.getJdbcUrl());
+      source.setUsername(pool.getUsername());
+      source.setPassword(pool.getPassword());
+      source.setMaximumPoolSize(1);
+      SqlDatabase other = new SqlDatabase(source, false);
+      try {
+        database.addUser("dagobert");
+        other.setActiveUser("dagobert");
+        assertEquals(
+            MG_USER_PREFIX + "dagobert",
+            other.getJooq().fetchOne("SELECT current_user").get(0, String.class));
+
+        // e.g. task workers use the pool directly and expect the login role
+        assertEquals(pool.getUsername(), currentUser(source));
+        other.tx(db -> assertEquals("dagobert", db.getActiveUser()));
+        assertEquals(pool.getUsername(), currentUser(source));
+
+        // without active user the role is not switched at all
+        other.clearActiveUser();
+        long avoided = SqlUserAwareConnectionProvider.getRoleSwitchesAvoided();
+        other.getJooq().fetchOne("SELECT 1");
+        assertTrue(SqlUserAwareConnectionProvider.getRoleSwitchesAvoided() > avoided);
+      } finally {
+        other.close();
+        database.removeUser("dagobert");
+      }
+    }
+  }
+
+  private static String currentUser(DataSource source) throws SQLException {
+    try (Connection connection = source.getConnection();
+        Statement statement = connection.createStatement();
+        ResultSet result = statement.executeQuery("SELECT current_user")) {
+      result.next();
+      return result.getString(1);
+    }
+  }
 }
@@ -7,9 +7,9 @@ import static spark.Spark.*;
 import java.io.*;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.List;
 import org.molgenis.emx2.*;
 import org.molgenis.emx2.io.emx2.Emx2;
+import org.molgenis.emx2.io.emx2.Emx2Tables;
 import org.molgenis.emx2.io.readers.CsvTableReader;
 import org.molgenis.emx2.io.readers.CsvTableWriter;
 import spark.Request;
@@ -71,13 +71,16 @@ public class CsvApi {
 
   private static String tableRetrieve(Request request, Response response) throws IOException {
     Table table = MolgenisWebservice.getTable(request);
-    List<Row> rows = table.retrieveRows();
-    StringWriter writer = new StringWriter();
-    CsvTableWriter.write(rows, writer, getSeperator(request));
     response.type(ACCEPT_CSV);
     response.header("Content-Disposition", "attachment; filename=\"" + table.getName() + ".csv\"");
     response.status(200);
-    return writer.toString();
+    // stream from database straight into the response
+    try (OutputStream outputStream = response.raw().getOutputStream()) {
+      table
+          .select(Emx2Tables.getDownloadColumns(table))
+          .retrieveCSV(outputStream, getSeperator(request));
+    }
+    return "";
   }
 
   private static String tableUpdate(Request request, Response response) {
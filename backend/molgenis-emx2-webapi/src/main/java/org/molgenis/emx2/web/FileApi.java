@@ -47,8 +47,8 @@ public class FileApi {
                 t.getMetadata().getPrimaryKeyFields().stream()
                     .map(f -> s(f.getName()))
                     .toArray(SelectColumn[]::new))
-            // select file details
-            .select(s(columnName, s("contents"), s("mimetype"), s("extension")))
+            // select file details, contents are streamed below
+            .select(s(columnName, s("id"), s("size"), s("mimetype"), s("extension")))
             .where(f(columnName, f("id", EQUALS, id)))
             .retrieveRows();
     if (result.size() != 1) {
@@ -62,7 +62,37 @@ public class FileApi {
             .collect(Collectors.joining("-"));
     String ext = result.get(0).getString(columnName + "_extension");
     String mimetype = result.get(0).getString(columnName + "_mimetype");
-    byte[] contents = result.get(0).getBinary(columnName + "_contents");
+    Integer size = result.get(0).getInteger(columnName + "_size");
+
+    // each upload gets a new id, so the id identifies the contents
+    String etag = "\"" + id + "\"";
+    response.header("ETag", etag);
+    response.header("Cache-Control", "private, no-cache");
+    if (etag.equals(request.headers("If-None-Match"))) {
+      response.status(304);
+      return "";
+    }
+
+    long offset = 0;
+    long length = size != null ? size : Long.MAX_VALUE;
+    String range = request.headers("Range");
+    String ifRange = request.headers("If-Range");
+    if (size != null) {
+      response.header("Accept-Ranges", "bytes");
+      if (range != null && (ifRange == null || etag.equals(ifRange))) {
+        long[] bytes = parseRange(range, size);
+        if (bytes == null) {
+          response.status(416);
+          response.header("Content-Range", "bytes */" + size);
+          return "";
+        }
+        offset = bytes[0];
+        length = bytes[1] - bytes[0] + 1;
+        response.status(206);
+        response.header("Content-Range", "bytes " + bytes[0] + "-" + bytes[1] + "/" + size);
+      }
+      response.raw().setContentLengthLong(length);
+    }
     response
         .raw()
         .setHeader(
@@ -70,9 +100,37 @@ public class FileApi {
             "attachment; filename=" + t.getName() + "-" + c.getName() + "-" + fileId + "." + ext);
     response.raw().setContentType(mimetype);
     try (OutputStream out = response.raw().getOutputStream()) {
-      out.write(contents); // autoclosing
+      t.readFile(columnName, id, offset, length, out);
       out.flush();
     }
     return "";
   }
+
+  /** returns first and last byte of single range 'bytes=first-last', or null if unsatisfiable */
+  static long[] parseRange(String range, long size) {
+    if (!range.startsWith("bytes=") || range.contains(",")) {
+      return null;
+    }
+    String[] parts = range.substring("bytes=".length()).trim().split("-", -1);
+    try {
+      long first;
+      long last;
+      if (parts.length != 2) {
+        return null;
+      } else if (parts[0].isEmpty()) {
+        // suffix, i.e. the last n bytes
+        first = Math.max(0, size - Long.parseLong(parts[1]));
+        last = size - 1;
+      } else {
+        first = Long.parseLong(parts[0]);
+        last = parts[1].isEmpty() ? size - 1 : Math.min(size - 1, Long.parseLong(parts[1]));
+      }
+      if (first > last || first >= size) {
+        return null;
+      }
+      return new long[] {first, last};
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
 }
@@ -22,6 +22,8 @@ import javax.servlet.MultipartConfigElement;
 import javax.servlet.http.Part;
 import org.molgenis.emx2.MolgenisException;
 import org.molgenis.emx2.graphql.GraphqlApiFactory;
+import org.molgenis.emx2.graphql.GraphqlCustomTypes;
+import org.molgenis.emx2.graphql.GraphqlExecutionContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spark.Request;
@@ -58,7 +60,10 @@ public class GraphqlApi {
       throws IOException {
     MolgenisSession session = sessionManager.getSession(request);
     response.header(CONTENT_TYPE, ACCEPT_JSON);
-    return executeQuery(session.getGraphqlForDatabase(), request);
+    return executeQuery(
+        session.getGraphqlForDatabase(),
+        new GraphqlExecutionContext(session.getDatabase()),
+        request);
   }
 
   public static String handleSchemaRequests(Request request, Response response) throws IOException {
@@ -76,10 +81,15 @@ public class GraphqlApi {
     }
     GraphQL graphqlForSchema = session.getGraphqlForSchema(schemaName);
     response.header(CONTENT_TYPE, ACCEPT_JSON);
-    return executeQuery(graphqlForSchema, request);
+    return executeQuery(
+        graphqlForSchema,
+        new GraphqlExecutionContext(session.getDatabase().getSchema(schemaName)),
+        request);
   }
 
-  private static String executeQuery(GraphQL g, Request request) throws IOException {
+  /** context has the schema or database of the session, because graphql might be shared */
+  private static String executeQuery(
+      GraphQL g, GraphqlExecutionContext context, Request request) throws IOException {
     String query = getQueryFromRequest(request);
     Map<String, Object> variables = getVariablesFromRequest(request);
 
@@ -95,14 +105,13 @@ public class GraphqlApi {
     }
 
     // tests show overhead of this step is about 20ms (jooq takes the rest)
-    ExecutionResult executionResult = null;
+    ExecutionInput.Builder input = ExecutionInput.newExecutionInput(query).context(context);
     if (variables != null) {
-      executionResult = g.execute(ExecutionInput.newExecutionInput(query).variables(variables));
-    } else {
-      executionResult = g.execute(query);
+      input.variables(variables);
     }
+    ExecutionResult executionResult = g.execute(input);
 
-    String result = GraphqlApiFactory.convertExecutionResultToJson(executionResult);
+    String result = GraphqlApiFactory.convertExecutionResultToJson(executionResult, context);
 
     for (GraphQLError err : executionResult.getErrors()) {
       if (logger.isErrorEnabled()) {
@@ -125,9 +134,11 @@ public class GraphqlApi {
       if (request.headers("Content-Type").startsWith("multipart/form-data")) {
         File tempFile = File.createTempFile(MolgenisWebservice.TEMPFILES_DELETE_ON_EXIT, ".tmp");
         tempFile.deleteOnExit();
+        // parts larger than the threshold are buffered on disk, and streamed from there
         request.attribute(
             "org.eclipse.jetty.multipartConfig",
-            new MultipartConfigElement(tempFile.getAbsolutePath()));
+            new MultipartConfigElement(
+                tempFile.getAbsolutePath(), -1, -1, GraphqlCustomTypes.UPLOAD_THRESHOLD));
         query = request.queryParams(QUERY);
       } else {
         ObjectNode node = new ObjectMapper().readValue(request.body(), ObjectNode.class);
@@ -0,0 +1,106 @@
+package org.molgenis.emx2.web;
+
+import static org.molgenis.emx2.sql.SqlDatabase.ADMIN;
+
+import graphql.GraphQL;
+import java.util.*;
+import org.molgenis.emx2.*;
+import org.molgenis.emx2.graphql.GraphqlApiFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Graphql per schema, shared between all sessions. Key is schema name, metadata version and roles
+ * of the user, so users with equal roles share one instance. Requests must pass their own schema
+ * as execution context, see GraphqlApiFactory.getSchema. Least recently used are evicted.
+ */
+public class GraphqlSchemaCache {
+  private static final Logger logger = LoggerFactory.getLogger(GraphqlSchemaCache.class);
+  private static final int MAX_SIZE = 100;
+
+  private final Map<List<Object>, CacheEntry> cache =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, CacheEntry> eldest) {
+          return size() > MAX_SIZE;
+        }
+      };
+  // metadata version per schema, increased on change
+  private final Map<String, Long> versions = new HashMap<>();
+  // increased on each change, to not cache instances that were created during a change
+  private long generation = 0;
+
+  public GraphQL get(Schema schema) {
+    List<String> roles = new ArrayList<>(schema.getInheritedRolesForActiveUser());
+    if (ADMIN.equals(schema.getDatabase().getActiveUser())) {
+      // admin gets additional fields
+      roles.add(ADMIN);
+    }
+    Collections.sort(roles);
+    long startGeneration;
+    List<Object> key;
+    synchronized (this) {
+      key = List.of(schema.getName(), versions.getOrDefault(schema.getName(), 0L), roles);
+      CacheEntry entry = cache.get(key);
+      if (entry != null) {
+        logger.info("reuse graphql schema '{}' for roles {}", schema.getName(), roles);
+        return entry.graphql;
+      }
+      startGeneration = generation;
+    }
+    // create outside the lock, might take a while
+    GraphQL graphql = new GraphqlApiFactory().createGraphqlForSchema(schema);
+    Set<String> schemaNames = new HashSet<>();
+    addSchemaNamesRecursively(schema.getDatabase(), schema.getMetadata(), schemaNames);
+    synchronized (this) {
+      if (startGeneration == generation) {
+        cache.put(key, new CacheEntry(graphql, schemaNames));
+      }
+    }
+    return graphql;
+  }
+
+  /** Remove the graphql of this schema and of schemas that import its tables */
+  public synchronized void invalidate(String schemaName) {
+    generation++;
+    Iterator<Map.Entry<List<Object>, CacheEntry>> it = cache.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<List<Object>, CacheEntry> entry = it.next();
+      if (entry.getValue().schemaNames.contains(schemaName)) {
+        String name = (String) entry.getKey().get(0);
+        versions.merge(name, 1L, Long::sum);
+        it.remove();
+      }
+    }
+    versions.merge(schemaName, 1L, Long::sum);
+    logger.info("invalidated graphql for schema '{}'", schemaName);
+  }
+
+  private static void addSchemaNamesRecursively(
+      Database database, SchemaMetadata schema, Set<String> schemaNames) {
+    schemaNames.add(schema.getName());
+    for (TableMetadata table : schema.getTables()) {
+      for (Column column : table.getColumns()) {
+        if (column.isReference() && !schemaNames.contains(column.getRefSchema())) {
+          Schema refSchema = database.getSchema(column.getRefSchema());
+          if (refSchema != null) {
+            addSchemaNamesRecursively(database, refSchema.getMetadata(), schemaNames);
+          } else {
+            schemaNames.add(column.getRefSchema());
+          }
+        }
+      }
+    }
+  }
+
+  private static class CacheEntry {
+    private final GraphQL graphql;
+    // schemas this graphql depends on
+    private final Set<String> schemaNames;
+
+    private CacheEntry(GraphQL graphql, Set<String> schemaNames) {
+      this.graphql = graphql;
+      this.schemaNames = schemaNames;
+    }
+  }
+}
@@ -19,9 +19,11 @@ public class MolgenisSession {
   private GraphQL graphqlForDatabase;
   private DateTime createTime;
   private Map<String, GraphQL> graphqlPerSchema = new LinkedHashMap<>();
+  private GraphqlSchemaCache graphqlSchemaCache;
 
-  public MolgenisSession(Database database) {
+  public MolgenisSession(Database database, GraphqlSchemaCache graphqlSchemaCache) {
     this.database = database;
+    this.graphqlSchemaCache = graphqlSchemaCache;
     this.sessionUser = database.getActiveUser();
     this.createTime = DateTime.now();
   }
@@ -43,8 +45,9 @@ public class MolgenisSession {
             "Schema not found: Schema with name '"
                 + schemaName
                 + "' does not exist or permission denied");
-      graphqlPerSchema.put(schemaName, new GraphqlApiFactory().createGraphqlForSchema(schema));
-      logger.info("created graphql schema '{}' for user '{}'", schemaName, getSessionUser());
+      // shared with other sessions, so execute with this session's schema as context
+      graphqlPerSchema.put(schemaName, graphqlSchemaCache.get(schema));
+      logger.info("got graphql schema '{}' for user '{}'", schemaName, getSessionUser());
     }
     logger.info("return graphql schema '{}' for user '{}'", schemaName, getSessionUser());
     return graphqlPerSchema.get(schemaName);
@@ -7,7 +7,6 @@ import java.util.Map;
 import javax.sql.DataSource;
 import org.joda.time.DateTime;
 import org.joda.time.Minutes;
-import org.molgenis.emx2.Database;
 import org.molgenis.emx2.MolgenisException;
 import org.molgenis.emx2.sql.SqlDatabase;
 import org.slf4j.Logger;
@@ -23,6 +22,7 @@ public class MolgenisSessionManager {
   // key is the user, might lead to trouble
   private Map<String, MolgenisSession> sessions = new LinkedHashMap<>();
   private DataSource dataSource;
+  private GraphqlSchemaCache graphqlSchemaCache = new GraphqlSchemaCache();
 
   public MolgenisSessionManager(DataSource dataSource) {
     this.dataSource = dataSource;
@@ -56,42 +56,48 @@ public class MolgenisSessionManager {
             ? "anonymous"
             : request.headers(MOLGENIS_TOKEN).replaceAll("[\n|\r|\t]", "_");
 
-    return sessions.computeIfAbsent(
-        user,
-        t -> {
-          Database database = new SqlDatabase(dataSource, false);
-          if (!database.hasUser(user)) {
-            throw new MolgenisException("Authentication failed: User " + user + " not known");
-          }
-          database.setActiveUser(user);
-          database.setListener(new MolgenisSessionManagerDatabaseListener(this, database));
-          logger.info("Initializing session for user: {}", database.getActiveUser());
-          MolgenisSession session = new MolgenisSession(database);
-          logger.info("Initializing session complete for user: {}", database.getActiveUser());
-          return session;
-        });
+    return sessions.computeIfAbsent(user, this::createSession);
   }
 
-  void updateSession(Request request, Response response) {
+  private MolgenisSession createSession(String user) {
+    SqlDatabase database = new SqlDatabase(dataSource, false);
+    if (!database.hasUser(user)) {
+      throw new MolgenisException("Authentication failed: User " + user + " not known");
+    }
+    // default for all requests of this session, sign in or out only changes the requesting thread
+    database.setDefaultUser(user);
+    database.setListener(new MolgenisSessionManagerDatabaseListener(this, database));
+    logger.info("Initializing session for user: {}", database.getActiveUser());
+    MolgenisSession session = new MolgenisSession(database, graphqlSchemaCache);
+    logger.info("Initializing session complete for user: {}", database.getActiveUser());
+    return session;
+  }
+
+  synchronized void updateSession(Request request, Response response) {
     MolgenisSession session = getSession(request);
+    SqlDatabase database = (SqlDatabase) session.getDatabase();
+    // user as changed by this request, e.g. by sign in, other requests of the session keep theirs
+    String activeUser = database.getActiveUser();
+    database.resetActiveUser();
 
     // check if we need to put in session because user has logged in
-    if (session.getDatabase().getActiveUser() != null && request.session() == null) {
+    if (activeUser != null && request.session() == null) {
       request.session(true);
       request.session().attribute(SESSION_ATTRIBUTE, session);
-      logger.info("Saved session for user: {}", session.getDatabase().getActiveUser());
+      logger.info("Saved session for user: {}", activeUser);
     }
 
     // check if session state and session user map still in sync
-    if (!session.getSessionUser().equals(session.getDatabase().getActiveUser())) {
+    if (!session.getSessionUser().equals(activeUser)) {
       // remove old sessions
       sessions.remove(session.getSessionUser());
       request.session(false);
       logger.info("Destroyed session because user {} logged out", session.getSessionUser());
 
       // only create new session is user != null
-      if (session.getDatabase().getActiveUser() != null) {
-        MolgenisSession newSession = new MolgenisSession(session.getDatabase());
+      if (activeUser != null) {
+        // own database instance, the old one might still serve other sessions, e.g. anonymous
+        MolgenisSession newSession = createSession(activeUser);
         request.session(true);
         request.session().attribute(SESSION_ATTRIBUTE, newSession);
         sessions.put(newSession.getSessionUser(), newSession);
@@ -108,4 +114,10 @@ public class MolgenisSessionManager {
       session.clearCache();
     }
   }
+
+  /** Clears session caches, but only the shared graphql of the changed schema */
+  void clearCaches(String schemaName) {
+    graphqlSchemaCache.invalidate(schemaName);
+    clearAllCaches();
+  }
 }
@@ -1,5 +1,7 @@
 package org.molgenis.emx2.web;
 
+import java.util.HashSet;
+import java.util.Set;
 import org.molgenis.emx2.Database;
 import org.molgenis.emx2.DatabaseListener;
 import org.slf4j.Logger;
@@ -11,7 +13,9 @@ public class MolgenisSessionManagerDatabaseListener implements DatabaseListener
       LoggerFactory.getLogger(MolgenisSessionManagerDatabaseListener.class);
   private Database database;
   private MolgenisSessionManager sessionManager;
-  private boolean onEndTransactionClear = false;
+  // transactions are per thread, so are the schemas to clear on commit
+  private final ThreadLocal<Set<String>> onEndTransactionClear =
+      ThreadLocal.withInitial(HashSet::new);
 
   public MolgenisSessionManagerDatabaseListener(
       MolgenisSessionManager sessionManager, Database database) {
@@ -29,7 +33,7 @@ public class MolgenisSessionManagerDatabaseListener implements DatabaseListener
     // schema change might affect all users,
     // todo make smarter is to inefficient to reload all caches
     logger.info("clear caches on schemaRemove");
-    sessionManager.clearAllCaches();
+    sessionManager.clearCaches(schemaName);
   }
 
   @Override
@@ -37,18 +41,19 @@ public class MolgenisSessionManagerDatabaseListener implements DatabaseListener
     // schema change might affect all users,
     // todo make smarter is to inefficient to reload all caches
     if (!database.inTx()) {
-      sessionManager.clearAllCaches();
+      sessionManager.clearCaches(schemaName);
       logger.info("clear caches on schemaChanged");
     } else {
-      onEndTransactionClear = true;
+      onEndTransactionClear.get().add(schemaName);
     }
   }
 
   @Override
   public void afterCommit() {
-    if (onEndTransactionClear) {
-      sessionManager.clearAllCaches();
-      onEndTransactionClear = false;
+    Set<String> schemaNames = onEndTransactionClear.get();
+    if (!schemaNames.isEmpty()) {
+      schemaNames.forEach(sessionManager::clearCaches);
+      onEndTransactionClear.remove();
       logger.info("clear caches on schemaChanged (waited for commit)");
     }
   }
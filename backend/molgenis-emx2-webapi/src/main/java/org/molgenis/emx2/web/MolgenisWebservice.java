@@ -73,7 +73,7 @@ public class MolgenisWebservice {
     ExcelApi.create();
     FileApi.create();
     JsonYamlApi.create();
-    TaskApi.create();
+    TaskApi.create(ds);
     GraphqlApi.createGraphQLservice(sessionManager);
     LinkedDataFragmentsApi.create(sessionManager);
     BootstrapThemeService.create();
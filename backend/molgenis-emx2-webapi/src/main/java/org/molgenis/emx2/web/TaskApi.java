@@ -1,25 +1,47 @@
 package org.molgenis.emx2.web;
 
+import static org.molgenis.emx2.json.JsonExceptionMapper.molgenisExceptionToJson;
+import static org.molgenis.emx2.tasks.StepStatus.RUNNING;
+import static org.molgenis.emx2.tasks.StepStatus.WAITING;
+import static org.molgenis.emx2.web.Constants.ACCEPT_JSON;
 import static org.molgenis.emx2.web.MolgenisWebservice.getSchema;
 import static spark.Spark.delete;
 import static spark.Spark.get;
 
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import javax.sql.DataSource;
 import org.molgenis.emx2.MolgenisException;
+import org.molgenis.emx2.tasks.StepStatus;
 import org.molgenis.emx2.tasks.Task;
 import org.molgenis.emx2.tasks.TaskService;
-import org.molgenis.emx2.tasks.TaskServiceInMemory;
+import org.molgenis.emx2.tasks.TaskServiceInDatabase;
 import spark.Request;
 import spark.Response;
 
 // TODO make the tasks private to schema; then you need schema edit or manager to view them
 public class TaskApi {
+  private static final long POLL_MILLIS = 1000;
+  private static final long KEEP_ALIVE_MILLIS = 15000;
+  // each stream holds a server thread until its task is done
+  private static final int MAX_STREAMS = 32;
+  private static final Semaphore streams = new Semaphore(MAX_STREAMS);
 
-  private static TaskService taskService = new TaskServiceInMemory();
+  private static TaskService taskService;
+
+  public static void create(DataSource dataSource) {
+    // tasks are kept in the database, so they can be viewed and cancelled from all servers
+    taskService = new TaskServiceInDatabase(dataSource);
 
-  public static void create() {
     get("/:schema/api/tasks", TaskApi::listTasks);
     get("/:schema/api/tasks/clear", TaskApi::clearTasks);
     get("/:schema/api/task/:id", TaskApi::getTask);
+    // pushes progress, instead of clients polling the task
+    get("/:schema/api/task/:id/stream", TaskApi::streamTask);
 
     // convenient delete
     delete("/:schema/api/task/:id", TaskApi::deleteTask);
@@ -50,8 +72,10 @@ public class TaskApi {
       String clearUrl = "/" + request.params("schema") + "/api/tasks/clear";
       String result = String.format("{clearUrl:'%s', tasks:[", clearUrl);
 
-      for (String id : taskService.getJobIds()) {
-        Task task = taskService.getTask(id);
+      // one query, so tasks removed meanwhile are not a problem
+      for (Map.Entry<String, Task> entry : taskService.getTasks().entrySet()) {
+        String id = entry.getKey();
+        Task task = entry.getValue();
         String getUrl = "/" + request.params("schema") + "/api/task/" + id;
         String deleteUrl = getUrl + "/delete";
         result +=
@@ -68,11 +92,85 @@ public class TaskApi {
 
   private static String getTask(Request request, Response response) {
     if (getSchema(request) != null) {
-      return taskService.getTask(request.params("id")).toString();
+      String id = request.params("id");
+      Task task = taskService.getTask(id);
+      if (task == null) {
+        return taskNotFound(id, response);
+      }
+      return task.toString();
     }
     throw new MolgenisException("Schema doesn't exist or permission denied");
   }
 
+  private static String taskNotFound(String id, Response response) {
+    response.status(404);
+    response.type(ACCEPT_JSON);
+    return molgenisExceptionToJson(new MolgenisException("Task with id '" + id + "' not found"));
+  }
+
+  /**
+   * Sends the task as server-sent events each time it changes, until it is done. Changes made while
+   * an event is sent are coalesced into the next event, so a slow client gets fewer events instead
+   * of a backlog. Tasks running on another server are checked once per POLL_MILLIS. At most
+   * MAX_STREAMS tasks are streamed at the same time, other clients get 503 and can poll instead.
+   */
+  private static String streamTask(Request request, Response response)
+      throws IOException, InterruptedException {
+    if (getSchema(request) == null) {
+      throw new MolgenisException("Schema doesn't exist or permission denied");
+    }
+    String id = request.params("id");
+    if (taskService.getTask(id) == null) {
+      return taskNotFound(id, response);
+    }
+    if (!streams.tryAcquire()) {
+      response.status(503);
+      response.header("Retry-After", "1");
+      response.type(ACCEPT_JSON);
+      return molgenisExceptionToJson(
+          new MolgenisException("Too many task streams, poll /api/task/" + id + " instead"));
+    }
+    try {
+      response.type("text/event-stream");
+      response.header("Cache-Control", "no-cache");
+      // so proxies don't buffer the events
+      response.header("X-Accel-Buffering", "no");
+      try (Writer writer =
+          new OutputStreamWriter(response.raw().getOutputStream(), StandardCharsets.UTF_8)) {
+        String sent = null;
+        long version = 0;
+        long lastWrite = System.currentTimeMillis();
+        while (true) {
+          Task task = taskService.getTask(id);
+          if (task == null) {
+            // removed
+            return "";
+          }
+          // status before json, so the last event sent has the end state
+          StepStatus status = task.getStatus();
+          String json = task.toString();
+          if (!json.equals(sent)) {
+            writer.write("event: progress\ndata: " + json + "\n\n");
+            writer.flush();
+            sent = json;
+            lastWrite = System.currentTimeMillis();
+          } else if (System.currentTimeMillis() - lastWrite > KEEP_ALIVE_MILLIS) {
+            // comment, also to find out if the client is still there
+            writer.write(": keep-alive\n\n");
+            writer.flush();
+            lastWrite = System.currentTimeMillis();
+          }
+          if (!WAITING.equals(status) && !RUNNING.equals(status)) {
+            return "";
+          }
+          version = task.awaitChange(version, POLL_MILLIS);
+        }
+      }
+    } finally {
+      streams.release();
+    }
+  }
+
   public static String submit(Task task) {
     return taskService.submit(task);
   }
@@ -11,10 +11,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.util.Comparator;
-import java.util.stream.Stream;
 import javax.servlet.MultipartConfigElement;
 import javax.servlet.ServletException;
 import org.molgenis.emx2.MolgenisException;
@@ -42,26 +39,18 @@ public class ZipApi {
   }
 
   static String getZip(Request request, Response response) throws IOException {
-
-    Path tempDir = Files.createTempDirectory(MolgenisWebservice.TEMPFILES_DELETE_ON_EXIT);
-    tempDir.toFile().deleteOnExit();
+    Schema schema = getSchema(request);
+    // headers first, the zip is streamed while being created
+    response.type("application/zip");
+    response.header(
+        "Content-Disposition",
+        "attachment; filename="
+            + schema.getMetadata().getName()
+            + System.currentTimeMillis()
+            + ".zip");
     try (OutputStream outputStream = response.raw().getOutputStream()) {
-      Schema schema = getSchema(request);
-      Path zipFile = tempDir.resolve("download.zip");
-      MolgenisIO.toZipFile(zipFile, schema);
-      outputStream.write(Files.readAllBytes(zipFile));
-      response.type("application/zip");
-      response.header(
-          "Content-Disposition",
-          "attachment; filename="
-              + schema.getMetadata().getName()
-              + System.currentTimeMillis()
-              + ".zip");
+      MolgenisIO.toZipStream(outputStream, schema);
       return "Export success";
-    } finally {
-      try (Stream<Path> files = Files.walk(tempDir)) {
-        files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
-      }
     }
   }
 
@@ -83,11 +72,20 @@ public class ZipApi {
       String fileName = request.raw().getPart("file").getSubmittedFileName();
 
       if (fileName.endsWith(".zip")) {
+        // fastLoad uses bulk copy, only works if data doesn't overlap with existing rows
+        boolean fastLoad = request.queryParams("fastLoad") != null;
+        ImportCsvZipTask task = new ImportCsvZipTask(tempFile.toPath(), schema, fastLoad);
+        // parallelism reads the next tables of the zip while the current one is loaded
+        if (request.queryParams("parallelism") != null) {
+          task.setParallelism(Integer.parseInt(request.queryParams("parallelism")));
+        }
+        // validateFirst checks all rows before writing, at the cost of reading the file twice
+        task.setValidateFirst(request.queryParams("validateFirst") != null);
         if (request.queryParams("async") != null) {
-          String id = TaskApi.submit(new ImportCsvZipTask(tempFile.toPath(), schema));
+          String id = TaskApi.submit(task);
           return new TaskReference(id, schema).toString();
         } else {
-          MolgenisIO.fromZipFile(tempFile.toPath(), schema);
+          task.run();
         }
       } else if (fileName.endsWith(".xlsx")) {
         MolgenisIO.importFromExcelFile(tempFile.toPath(), schema);
@@ -110,26 +108,18 @@ public class ZipApi {
   static String getZipTable(Request request, Response response) throws IOException {
     Table table = getTable(request);
     if (table == null) throw new MolgenisException("Table " + request.params(TABLE) + " unknown");
-    Path tempDir = Files.createTempDirectory(MolgenisWebservice.TEMPFILES_DELETE_ON_EXIT);
-    tempDir.toFile().deleteOnExit();
+    response.type("application/zip");
+    response.header(
+        "Content-Disposition",
+        "attachment; filename="
+            + table.getSchema().getMetadata().getName()
+            + "_"
+            + table.getName()
+            + System.currentTimeMillis()
+            + ".zip");
     try (OutputStream outputStream = response.raw().getOutputStream()) {
-      Path zipFile = tempDir.resolve("download.zip");
-      MolgenisIO.toZipFile(zipFile, table);
-      outputStream.write(Files.readAllBytes(zipFile));
-      response.type("application/zip");
-      response.header(
-          "Content-Disposition",
-          "attachment; filename="
-              + table.getSchema().getMetadata().getName()
-              + "_"
-              + table.getName()
-              + System.currentTimeMillis()
-              + ".zip");
+      MolgenisIO.toZipStream(outputStream, table);
       return "Export success";
-    } finally {
-      try (Stream<Path> files = Files.walk(tempDir)) {
-        files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
-      }
     }
   }
 }
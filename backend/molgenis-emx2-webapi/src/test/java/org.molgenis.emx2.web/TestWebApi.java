@@ -3,6 +3,8 @@ package org.molgenis.emx2.web;
 import static io.restassured.RestAssured.given;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.molgenis.emx2.Column.column;
+import static org.molgenis.emx2.TableMetadata.table;
 import static org.molgenis.emx2.web.Constants.*;
 import static org.molgenis.emx2.web.MolgenisSessionManager.MOLGENIS_TOKEN;
 
@@ -10,15 +12,19 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import graphql.Assert;
 import io.restassured.RestAssured;
 import java.io.*;
+import java.util.Arrays;
 import java.util.Map;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
+import org.molgenis.emx2.BinaryFileWrapper;
+import org.molgenis.emx2.ColumnType;
 import org.molgenis.emx2.Database;
 import org.molgenis.emx2.MolgenisException;
 import org.molgenis.emx2.Privileges;
+import org.molgenis.emx2.Row;
 import org.molgenis.emx2.Schema;
 import org.molgenis.emx2.examples.PetStoreExample;
 import org.molgenis.emx2.sql.TestDatabaseFactory;
@@ -148,6 +154,34 @@ public class TestWebApi {
     db.dropSchema("pet store excel");
   }
 
+  @Test
+  public void test3StreamTask() throws IOException {
+    byte[] excelContents =
+        given().accept(ACCEPT_EXCEL).when().get("/pet store/api/excel").asByteArray();
+    File excelFile = createTempFile(excelContents, ".xlsx");
+    db.dropCreateSchema("pet store stream");
+
+    String message =
+        given()
+            .multiPart(excelFile)
+            .when()
+            .post("/pet store stream/api/excel?async=true")
+            .asString();
+    String url = (String) new ObjectMapper().readValue(message, Map.class).get("url");
+
+    // stream of progress events ends when task is complete
+    String events = given().when().get(url + "/stream").asString();
+    assertTrue(events.startsWith("event: progress\ndata: {"));
+    String last = events.substring(events.lastIndexOf("data: "));
+    assertTrue(last.contains("\"status\":\"COMPLETED\""));
+
+    // unknown task
+    given().when().get("/pet store/api/task/unknown").then().statusCode(404);
+    given().when().get("/pet store/api/task/unknown/stream").then().statusCode(404);
+
+    db.dropSchema("pet store stream");
+  }
+
   private File createTempFile(byte[] zipContents, String extension) throws IOException {
     File tempFile = File.createTempFile("some", extension);
     tempFile.deleteOnExit();
@@ -163,14 +197,14 @@ public class TestWebApi {
 
     String path = "/pet store/api/csv/Tag";
 
-    String exp1 = "name\r\nred\r\ngreen\r\n";
+    String exp1 = "name\nred\ngreen\n";
     String result = given().accept(ACCEPT_CSV).when().get(path).asString();
     assertEquals(exp1, result);
 
     String update = "name\r\nyellow\r\n";
     given().body(update).when().post(path).then().statusCode(200);
 
-    String exp2 = "name\r\nred\r\ngreen\r\nyellow\r\n";
+    String exp2 = "name\nred\ngreen\nyellow\n";
     result = given().accept(ACCEPT_CSV).when().get(path).asString();
     assertEquals(exp2, result);
 
@@ -231,6 +265,52 @@ public class TestWebApi {
     Assert.assertTrue(css.contains("pink"));
   }
 
+  @Test
+  public void testFileDownloadWithRangeAndEtag() {
+    Schema schema = db.dropCreateSchema("file download");
+    schema.create(
+        table("Files", column("name").setPkey(), column("file").setType(ColumnType.FILE)));
+    byte[] contents = new byte[3 * 1024 * 1024 + 5];
+    for (int i = 0; i < contents.length; i++) {
+      contents[i] = (byte) i;
+    }
+    Row row =
+        new Row()
+            .set("name", "a")
+            .setBinary("file", new BinaryFileWrapper("text/plain", "a.txt", contents));
+    schema.getTable("Files").insert(row);
+    String url = "/file download/api/file/Files/file/" + row.getString("file");
+
+    // whole file, larger than one chunk
+    io.restassured.response.Response response = given().when().get(url);
+    assertEquals(200, response.statusCode());
+    assertTrue(Arrays.equals(contents, response.asByteArray()));
+    String etag = response.header("ETag");
+
+    // range
+    response = given().header("Range", "bytes=1048570-1048579").when().get(url);
+    assertEquals(206, response.statusCode());
+    assertEquals("bytes 1048570-1048579/" + contents.length, response.header("Content-Range"));
+    assertTrue(
+        Arrays.equals(Arrays.copyOfRange(contents, 1048570, 1048580), response.asByteArray()));
+
+    // suffix range
+    response = given().header("Range", "bytes=-3").when().get(url);
+    assertEquals(206, response.statusCode());
+    assertTrue(
+        Arrays.equals(
+            Arrays.copyOfRange(contents, contents.length - 3, contents.length),
+            response.asByteArray()));
+
+    // unsatisfiable range
+    given().header("Range", "bytes=99999999-").when().get(url).then().statusCode(416);
+
+    // not modified
+    given().header("If-None-Match", etag).when().get(url).then().statusCode(304);
+
+    db.dropSchema("file download");
+  }
+
   @AfterClass
   public static void after() {
     MolgenisWebservice.stop();
@@ -1,13 +1,18 @@
 package org.molgenis.emx2;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLConnection;
 import java.nio.file.Files;
 
 public class BinaryFileWrapper implements Binary {
-  // we use either file or byte[] for the contents
+  // we use either file, byte[] or stream for the contents
   File file;
   byte[] contents;
+  StreamSupplier stream;
+  long size;
   // these we calculate on construction
   String mimetype;
   String extension = "";
@@ -24,6 +29,15 @@ public class BinaryFileWrapper implements Binary {
     this.extension = deriveExtension(fileName);
   }
 
+  /** contents are streamed from 'stream' when stored, instead of being read into memory */
+  public BinaryFileWrapper(
+      String contentType, String fileName, long size, StreamSupplier stream) {
+    this.stream = stream;
+    this.size = size;
+    this.mimetype = contentType;
+    this.extension = deriveExtension(fileName);
+  }
+
   private String deriveExtension(String fileName) {
     if (fileName == null) {
       return "";
@@ -55,7 +69,7 @@ public class BinaryFileWrapper implements Binary {
     if (file != null) {
       return file.length();
     }
-    return 0;
+    return size;
   }
 
   @Override
@@ -70,6 +84,35 @@ public class BinaryFileWrapper implements Binary {
         throw new MolgenisException("file error", e);
       }
     }
+    if (stream != null) {
+      try (InputStream in = stream.open()) {
+        return in.readAllBytes();
+      } catch (Exception e) {
+        throw new MolgenisException("file error", e);
+      }
+    }
     return new byte[0];
   }
+
+  public InputStream getInputStream() throws IOException {
+    if (contents != null) {
+      return new ByteArrayInputStream(contents);
+    }
+    if (file != null) {
+      return Files.newInputStream(file.toPath());
+    }
+    if (stream != null) {
+      return stream.open();
+    }
+    return new ByteArrayInputStream(new byte[0]);
+  }
+
+  /** true if contents are not in memory, so should be streamed rather than retrieved */
+  public boolean isStreamed() {
+    return contents == null;
+  }
+
+  public interface StreamSupplier {
+    InputStream open() throws IOException;
+  }
 }
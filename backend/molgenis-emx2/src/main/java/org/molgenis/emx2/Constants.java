@@ -29,6 +29,10 @@ public class Constants {
   public static final String MG_UPDATEDON = "mg_updatedOn";
 
   public static final String TEXT_SEARCH_COLUMN_NAME = "_TEXT_SEARCH_COLUMN";
+  // use in orderBy to sort search results by relevance
+  public static final String SEARCH_RANK = "_search_rank";
+  // select to get, per row, the cursor to use in 'after' for the next page
+  public static final String CURSOR = "_cursor";
   public static final String SETTINGS_TABLE = "molgenis_settings";
   public static final String SETTINGS_NAME = "key";
   public static final String SETTINGS_VALUE = "value";
@@ -37,6 +41,8 @@ public class Constants {
   public static final String MOLGENIS_POSTGRES_USER = "MOLGENIS_POSTGRES_USER";
   public static final String MOLGENIS_POSTGRES_PASS = "MOLGENIS_POSTGRES_PASS";
   public static final String MOLGENIS_HTTP_PORT = "MOLGENIS_HTTP_PORT";
+  // uploads larger than this many bytes are streamed into the database instead of read in memory
+  public static final String MOLGENIS_UPLOAD_THRESHOLD = "MOLGENIS_UPLOAD_THRESHOLD";
   protected static final Operator[] EXISTS_OPERATIONS = {};
   protected static final Operator[] ORDINAL_OPERATORS = {EQUALS, NOT_EQUALS, BETWEEN, NOT_BETWEEN};
   protected static final Operator[] STRING_OPERATORS = {
@@ -1,7 +1,9 @@
 package org.molgenis.emx2;
 
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 public interface Query {
 
@@ -15,16 +17,33 @@ public interface Query {
 
   Query offset(int offset);
 
+  /**
+   * only retrieve rows that come after the row of this cursor in the order of the query, which,
+   * unlike offset, doesn't need to skip over the rows before it
+   */
+  Query after(String cursor);
+
   Query orderBy(Map<String, Order> values);
 
   Query orderBy(String column);
 
   Query orderBy(String column, Order order);
 
+  Query fetchSize(int fetchSize);
+
   List<Row> retrieveRows();
 
+  /**
+   * streams rows from a database cursor, so memory use doesn't depend on number of rows. Stream
+   * must be closed after use, e.g. using try-with-resources
+   */
+  Stream<Row> retrieveRowStream();
+
   String retrieveJSON();
 
+  /** streams the selected rows as csv, including header, to the outputStream */
+  void retrieveCSV(OutputStream outputStream, Character separator);
+
   Filter getFilter();
 
   SelectColumn getSelect();
@@ -32,4 +51,6 @@ public interface Query {
   String[] getSearchTerms();
 
   Map<String, Order> getOrderBy();
+
+  int getFetchSize();
 }
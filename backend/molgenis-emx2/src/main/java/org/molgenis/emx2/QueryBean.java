@@ -2,6 +2,7 @@ package org.molgenis.emx2;
 
 import static org.molgenis.emx2.Operator.AND;
 
+import java.io.OutputStream;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -11,6 +12,7 @@ public class QueryBean implements Query {
   private SelectColumn select;
   private Filter filter;
   private String[] searchTerms = new String[0];
+  private int fetchSize = 1000;
 
   public QueryBean() {
     this.select = new SelectColumn(null);
@@ -39,11 +41,21 @@ public class QueryBean implements Query {
     throw new UnsupportedOperationException();
   }
 
+  @Override
+  public Stream<Row> retrieveRowStream() {
+    throw new UnsupportedOperationException();
+  }
+
   @Override
   public String retrieveJSON() {
     throw new UnsupportedOperationException();
   }
 
+  @Override
+  public void retrieveCSV(OutputStream outputStream, Character separator) {
+    throw new UnsupportedOperationException();
+  }
+
   @Override
   public Query search(String... terms) {
     if (this.searchTerms == null || this.searchTerms.length == 0) {
@@ -67,6 +79,12 @@ public class QueryBean implements Query {
     return this;
   }
 
+  @Override
+  public Query after(String cursor) {
+    this.select.setAfter(cursor);
+    return this;
+  }
+
   @Override
   public Filter getFilter() {
     return filter;
@@ -105,4 +123,15 @@ public class QueryBean implements Query {
   public Map<String, Order> getOrderBy() {
     return this.select.getOrderBy();
   }
+
+  @Override
+  public Query fetchSize(int fetchSize) {
+    this.fetchSize = fetchSize;
+    return this;
+  }
+
+  @Override
+  public int getFetchSize() {
+    return fetchSize;
+  }
 }
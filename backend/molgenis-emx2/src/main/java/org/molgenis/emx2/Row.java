@@ -172,7 +172,8 @@ public class Row {
     this.values.put(name + "_extension", value.getExtension());
     this.values.put(name + "_mimetype", value.getMimeType());
     this.values.put(name + "_size", value.getSize());
-    this.values.put(name + "_contents", value.getContents());
+    // keep large contents out of memory until stored
+    this.values.put(name + "_contents", value.isStreamed() ? value : value.getContents());
     return this;
   }
 
@@ -5,8 +5,9 @@ import org.molgenis.emx2.utils.TableSort;
 
 public class SchemaMetadata {
 
-  protected Map<String, TableMetadata> tables = new LinkedHashMap<>();
-  protected Map<String, Setting> settings = new LinkedHashMap<>();
+  // volatile, reloads of cached metadata swap in new maps
+  protected volatile Map<String, TableMetadata> tables = new LinkedHashMap<>();
+  protected volatile Map<String, Setting> settings = new LinkedHashMap<>();
   private String name;
   // optional
   private Database database;
@@ -9,6 +9,7 @@ public class SelectColumn {
   private Map<String, SelectColumn> children = new LinkedHashMap<>();
   private int limit = 0;
   private int offset = 0;
+  private String after;
   private Map<String, Order> orderBy = new LinkedHashMap<>();
 
   public SelectColumn(String column) {
@@ -78,6 +79,15 @@ public class SelectColumn {
     return offset;
   }
 
+  /** cursor of the row after which to continue, as returned in the cursor column */
+  public void setAfter(String after) {
+    this.after = after;
+  }
+
+  public String getAfter() {
+    return after;
+  }
+
   public void setOrderBy(Map<String, Order> values) {
     this.orderBy.putAll(values);
   }
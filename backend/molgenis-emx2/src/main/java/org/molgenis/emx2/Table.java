@@ -1,5 +1,6 @@
 package org.molgenis.emx2;
 
+import java.io.OutputStream;
 import java.util.List;
 
 public interface Table {
@@ -22,6 +23,8 @@ public interface Table {
 
   int save(Iterable<Row> rows);
 
+  int copyIn(Iterable<Row> rows); // bulk insert of new rows only, no update on conflict
+
   int delete(Row... row);
 
   int delete(Iterable<Row> rows);
@@ -41,4 +44,10 @@ public interface Table {
   Query agg();
 
   List<Row> retrieveRows();
+
+  /**
+   * Writes 'length' bytes of the contents of file 'fileId' in FILE column 'columnName' to 'out',
+   * starting at 'offset'. Reads in chunks, so large files don't have to fit in memory.
+   */
+  void readFile(String columnName, String fileId, long offset, long length, OutputStream out);
 }
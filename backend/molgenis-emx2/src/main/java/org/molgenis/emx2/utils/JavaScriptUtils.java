@@ -1,16 +1,35 @@
 package org.molgenis.emx2.utils;
 
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import javax.script.*;
+import java.util.concurrent.ConcurrentHashMap;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.HostAccess;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyObject;
 import org.molgenis.emx2.MolgenisException;
 import org.molgenis.emx2.Row;
 
+/**
+ * Executes computed and validation scripts. Each script is compiled once into a Source that is
+ * parsed and optimized in an Engine shared by all threads. Contexts are not thread safe, so each
+ * thread gets its own.
+ */
 public class JavaScriptUtils {
+  private static final String JS = "js";
+  private static final String ROW = "row";
+  private static final String VALUE = "value";
 
-  private static ScriptEngine engine = new ScriptEngineManager().getEngineByName("graal.js");
-  private static Bindings valueBindings = engine.createBindings();
-  private static Map<String, CompiledScript> cache = new LinkedHashMap<>();
+  private static final Engine engine = Engine.create();
+  private static final Map<String, Source> sources = new ConcurrentHashMap<>();
+  private static final ThreadLocal<Context> contexts =
+      ThreadLocal.withInitial(
+          () ->
+              Context.newBuilder(JS).engine(engine).allowHostAccess(HostAccess.ALL).build());
 
   private JavaScriptUtils() {
     // hide constructor
@@ -18,45 +37,61 @@ public class JavaScriptUtils {
 
   public static String executeJavascriptOnValue(String script, Object value) {
     try {
-      valueBindings.put("value", value);
-      return execute(script, valueBindings);
-    } catch (ScriptException e) {
+      Value bindings = contexts.get().getBindings(JS);
+      bindings.putMember(VALUE, value);
+      return toString(contexts.get().eval(getSource(script, false)));
+    } catch (Exception e) {
       throw new MolgenisException("Validation system failed", e);
     }
   }
 
   public static String executeJavascriptOnMap(String script, Map<String, Object> map) {
     try {
-      // ScriptEngine engine = new NashornScriptEngineFactory().getScriptEngine("--language=es6");
-      Bindings bindings = engine.createBindings();
-      for (Map.Entry<String, Object> col : map.entrySet()) {
-        bindings.put(col.getKey(), col.getValue());
-      }
-      return engine.eval(script, bindings).toString();
+      return execute(getSource(script, true), map);
     } catch (Exception e) {
       throw new MolgenisException("Compute value failed on script [" + script + "]", e);
     }
   }
 
   public static String executeJavascriptOnRow(String script, Row row) {
-    try {
-      // ScriptEngine engine = new NashornScriptEngineFactory().getScriptEngine("--language=es6");
-      Bindings bindings = engine.createBindings();
-      for (Map.Entry<String, Object> col : row.getValueMap().entrySet()) {
-        bindings.put(col.getKey().replace("-", "$"), col.getValue());
+    return executeJavascriptOnRows(script, List.of(row)).get(0);
+  }
+
+  /** executes script for each row, returns results in same order */
+  public static List<String> executeJavascriptOnRows(String script, List<Row> rows) {
+    Source source = getSource(script, true);
+    List<String> result = new ArrayList<>(rows.size());
+    for (Row row : rows) {
+      try {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> col : row.getValueMap().entrySet()) {
+          values.put(col.getKey().replace("-", "$"), col.getValue());
+        }
+        result.add(execute(source, values));
+      } catch (Exception e) {
+        throw new MolgenisException(
+            "Compute value failed on script [" + script + "] for row " + row, e);
       }
-      return engine.eval(script, bindings).toString();
-    } catch (Exception e) {
-      throw new MolgenisException("Compute value failed on script [" + script + "]", e);
     }
+    return result;
   }
 
-  private static String execute(String script, Bindings bindings) throws ScriptException {
-    if (cache.get(script) == null) {
-      cache.put(script, ((Compilable) engine).compile(script));
-    }
-    Object result = cache.get(script).eval(bindings);
-    if (result != null) return result.toString();
-    else return null;
+  private static String execute(Source source, Map<String, Object> values) {
+    Context context = contexts.get();
+    context.getBindings(JS).putMember(ROW, ProxyObject.fromMap(values));
+    return toString(context.eval(source));
+  }
+
+  private static Source getSource(String script, boolean onRow) {
+    // values of row are in scope as variables, without being left behind as globals
+    return sources.computeIfAbsent(
+        (onRow ? ROW : VALUE) + ":" + script,
+        key -> Source.create(JS, onRow ? "with (" + ROW + ") {\n" + script + "\n}" : script));
+  }
+
+  private static String toString(Value result) {
+    if (result == null || result.isNull()) return null;
+    if (result.isString()) return result.asString();
+    return result.toString();
   }
 }
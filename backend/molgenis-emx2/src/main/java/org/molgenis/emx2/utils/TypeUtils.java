@@ -21,6 +21,7 @@ import java.util.stream.Stream;
 import org.jooq.DataType;
 import org.jooq.JSONB;
 import org.jooq.impl.SQLDataType;
+import org.molgenis.emx2.BinaryFileWrapper;
 import org.molgenis.emx2.ColumnType;
 import org.molgenis.emx2.MolgenisException;
 
@@ -100,6 +101,7 @@ public class TypeUtils {
 
   public static byte[] toBinary(Object v) {
     if (v == null) return null; // NOSONAR
+    if (v instanceof BinaryFileWrapper) return ((BinaryFileWrapper) v).getContents();
     return (byte[]) v;
   }
 
@@ -0,0 +1,66 @@
+package org.molgenis.emx2;
+
+import static org.junit.Assert.*;
+import static org.molgenis.emx2.utils.JavaScriptUtils.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+public class TestJavaScriptUtils {
+
+  @Test
+  public void testComputeOnRows() {
+    List<Row> rows = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      rows.add(new Row().set("id", i).set("first-name", "name" + i));
+    }
+    List<String> result = executeJavascriptOnRows("first$name + '_' + (id * 2)", rows);
+    assertEquals(10, result.size());
+    assertEquals("name3_6", result.get(3));
+
+    // values of previous row must not leak into the next
+    assertEquals("undefined", executeJavascriptOnRow("typeof id", new Row().set("other", 1)));
+
+    // script may declare variables, also when executed again
+    assertEquals("2", executeJavascriptOnRow("let a = id + 1; a", new Row().set("id", 1)));
+    assertEquals("3", executeJavascriptOnRow("let a = id + 1; a", new Row().set("id", 2)));
+
+    assertNull(executeJavascriptOnValue("if (value < 0) 'should be positive'", 1));
+    assertEquals(
+        "should be positive", executeJavascriptOnValue("if (value < 0) 'should be positive'", -1));
+
+    try {
+      executeJavascriptOnRow("id +", new Row().set("id", 1));
+      fail("syntax error should fail");
+    } catch (MolgenisException e) {
+      // correct
+    }
+  }
+
+  @Test
+  public void testComputeInParallel() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<List<String>>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+          rows.add(new Row().set("id", t * 1000 + i));
+        }
+        futures.add(executor.submit(() -> executeJavascriptOnRows("'row' + id", rows)));
+      }
+      for (int t = 0; t < 4; t++) {
+        List<String> result = futures.get(t).get();
+        for (int i = 0; i < 1000; i++) {
+          assertEquals("row" + (t * 1000 + i), result.get(i));
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}